@@ -0,0 +1,123 @@
+package com.example.regimaps;
+
+import android.content.Context;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+import androidx.room.Room;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Rendiment de les insercions i consultes dels DAO sobre una base de dades en memòria amb el
+ * mateix esquema, índex espacial i triggers que la de l'aplicació.
+ * S'ha d'executar amb -PtestBuildType=benchmark perquè els resultats no surtin d'una app depurable.
+ */
+@RunWith(AndroidJUnit4.class)
+public class DaoBenchmark {
+
+    // Elements inserits per iteració als bancs d'inserció.
+    private static final int BATCH = 1000;
+    // Elements de la base de dades sobre la qual es fan les consultes.
+    private static final int QUERY_POINTS = 50_000;
+    private static final int QUERY_SHAPES = 2_000;
+
+    @Rule
+    public BenchmarkRule benchmarkRule = new BenchmarkRule();
+
+    private AppDatabase db;
+    private SyntheticData data;
+
+    @Before
+    public void setUp() {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        db = Room.inMemoryDatabaseBuilder(context, AppDatabase.class)
+                .addCallback(AppDatabase.SPATIAL_INDEX_CALLBACK)
+                .build();
+        data = new SyntheticData();
+    }
+
+    @After
+    public void tearDown() {
+        db.close();
+    }
+
+    @Test
+    public void insertPoints() {
+        List<SavedPointEntity> points = points(BATCH);
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            db.savedPointDao().insertAll(points);
+            state.pauseTiming();
+            db.savedPointDao().deleteAll();
+            state.resumeTiming();
+        }
+    }
+
+    @Test
+    public void insertPolygons() {
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            state.pauseTiming();
+            List<SavedPolygonEntity> shapes = shapes(BATCH / 10);
+            state.resumeTiming();
+            SpatialIndex.insertPolygons(db, shapes);
+            state.pauseTiming();
+            db.savedPolygonDao().deleteAll();
+            state.resumeTiming();
+        }
+    }
+
+    @Test
+    public void queryPointsInViewport() {
+        db.savedPointDao().insertAll(points(QUERY_POINTS));
+        double lat = SyntheticData.CENTER_LAT;
+        double lng = SyntheticData.CENTER_LNG;
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            db.savedPointDao().getPointsInBounds(lat - 0.02, lng - 0.03, lat + 0.02, lng + 0.03);
+        }
+    }
+
+    @Test
+    public void queryPolygonsInViewport() {
+        SpatialIndex.insertPolygons(db, shapes(QUERY_SHAPES));
+        double lat = SyntheticData.CENTER_LAT;
+        double lng = SyntheticData.CENTER_LNG;
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            db.savedPolygonDao().getPolygonsIntersecting(lat - 0.05, lng - 0.07, lat + 0.05, lng + 0.07);
+        }
+    }
+
+    private List<SavedPointEntity> points(int count) {
+        double[] coords = data.points(count);
+        List<SavedPointEntity> points = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            points.add(new SavedPointEntity(coords[2 * i], coords[2 * i + 1], data.name(i), "", data.code(i), ""));
+        }
+        return points;
+    }
+
+    // Polígons i línies de 200 vèrtexs, alternats.
+    private List<SavedPolygonEntity> shapes(int count) {
+        List<SavedPolygonEntity> shapes = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            SavedPolygonEntity shape = new SavedPolygonEntity();
+            shape.tipus = i % 2 == 0 ? "poligon" : "linia";
+            shape.name = data.name(i);
+            shape.geometry = Geometry.fromCoordinates(i % 2 == 0 ? data.ring(200, 0.002) : data.walk(200, 0.0005));
+            shapes.add(shape);
+        }
+        return shapes;
+    }
+}
@@ -0,0 +1,155 @@
+package com.example.regimaps;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import androidx.room.testing.MigrationTestHelper;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+/**
+ * Migració d'una base de dades de la versió 3 amb dades fins a la versió actual.
+ *
+ * La versió 3 es va publicar sense exportar l'esquema, així que la base de dades inicial es crea
+ * amb les sentències de llavors; MigrationTestHelper aplica les migracions i compara el resultat
+ * amb l'esquema exportat de la versió actual (app/schemas). Després es comproven les dades
+ * convertides i les taules que Room no coneix: l'índex R*Tree, els nivells de detall i l'FTS.
+ */
+@RunWith(AndroidJUnit4.class)
+public class DatabaseMigrationTest {
+
+    private static final String DB_NAME = "migration-test";
+    // Vèrtexs del polígon gran: prou per tenir nivells de detall (GeometrySimplifier.MIN_VERTICES).
+    private static final int LARGE_RING_VERTICES = 200;
+
+    @Rule
+    public MigrationTestHelper helper = new MigrationTestHelper(
+            InstrumentationRegistry.getInstrumentation(), AppDatabase.class);
+
+    private Context context;
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        context.deleteDatabase(DB_NAME);
+    }
+
+    @Test
+    public void migrate3ToCurrent_keepsDataAndBuildsDerivedTables() throws IOException {
+        createVersion3();
+
+        SupportSQLiteDatabase db = helper.runMigrationsAndValidate(DB_NAME, 9, false, DatabaseMigrations.ALL);
+
+        // Files originals.
+        assertEquals(3, count(db, "SELECT COUNT(*) FROM saved_points"));
+        assertEquals(2, count(db, "SELECT COUNT(*) FROM saved_polygons"));
+        try (Cursor cursor = db.query("SELECT name, code, photoPath FROM saved_points WHERE id = 2")) {
+            assertTrue(cursor.moveToFirst());
+            assertEquals("Font del Gat", cursor.getString(0));
+            assertEquals("FG02", cursor.getString(1));
+            assertEquals("", cursor.getString(2));
+        }
+
+        // Geometria convertida de text a BLOB i mesures precalculades.
+        try (Cursor cursor = db.query("SELECT geometry, vertex_count, min_lat, max_lat FROM saved_polygons "
+                + "WHERE id = 1")) {
+            assertTrue(cursor.moveToFirst());
+            double[] coords = GeometryCodec.decode(cursor.getBlob(0));
+            assertEquals(LARGE_RING_VERTICES * 2, coords.length);
+            assertEquals(41.0, coords[0], 1e-6);
+            assertEquals(LARGE_RING_VERTICES, cursor.getInt(1));
+            assertTrue(cursor.getDouble(2) < 41.0 && cursor.getDouble(3) > 41.0);
+        }
+        try (Cursor cursor = db.query("SELECT vertex_count, perimeter FROM saved_polygons WHERE id = 2")) {
+            assertTrue(cursor.moveToFirst());
+            assertEquals(3, cursor.getInt(0));
+            assertTrue(cursor.getDouble(1) > 0);
+        }
+
+        // Índex espacial dels punts i dels polígons.
+        assertEquals(3, count(db, "SELECT COUNT(*) FROM " + SpatialIndex.POINTS_RTREE));
+        assertEquals(2, count(db, "SELECT COUNT(*) FROM " + SpatialIndex.POLYGONS_RTREE));
+        assertEquals(1, count(db, "SELECT COUNT(*) FROM " + SpatialIndex.POINTS_RTREE
+                + " WHERE min_lat <= 41.4 AND max_lat >= 41.4 AND min_lng <= 2.15 AND max_lng >= 2.15"));
+
+        // Nivells de detall: només el polígon gran en té, i cada nivell té menys vèrtexs que l'original.
+        assertTrue(count(db, "SELECT COUNT(*) FROM " + PolygonLod.TABLE + " WHERE polygon_id = 1") > 0);
+        assertEquals(0, count(db, "SELECT COUNT(*) FROM " + PolygonLod.TABLE + " WHERE polygon_id = 2"));
+        try (Cursor cursor = db.query("SELECT geometry FROM " + PolygonLod.TABLE + " WHERE polygon_id = 1")) {
+            while (cursor.moveToNext()) {
+                assertTrue(GeometryCodec.vertexCount(cursor.getBlob(0)) < LARGE_RING_VERTICES);
+            }
+        }
+
+        // Cerca a text complet sobre els noms i codis existents.
+        assertEquals(2, count(db, "SELECT COUNT(*) FROM saved_points_fts WHERE saved_points_fts MATCH 'font*'"));
+        assertEquals(1, count(db, "SELECT COUNT(*) FROM saved_points_fts WHERE saved_points_fts MATCH 'FG02'"));
+        assertEquals(1, count(db, "SELECT COUNT(*) FROM saved_polygons_fts WHERE saved_polygons_fts MATCH 'camí'"));
+
+        // Els triggers mantenen les taules derivades després de la migració.
+        db.execSQL("DELETE FROM saved_polygons WHERE id = 1");
+        assertEquals(0, count(db, "SELECT COUNT(*) FROM " + PolygonLod.TABLE));
+        assertEquals(1, count(db, "SELECT COUNT(*) FROM " + SpatialIndex.POLYGONS_RTREE));
+    }
+
+    // Crea la base de dades amb l'esquema de la versió 3 i unes quantes files.
+    private void createVersion3() {
+        SQLiteDatabase db = SQLiteDatabase.openOrCreateDatabase(context.getDatabasePath(DB_NAME), null);
+        try {
+            db.execSQL("CREATE TABLE `saved_points` ("
+                    + "`id` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, "
+                    + "`latitude` REAL NOT NULL, "
+                    + "`longitude` REAL NOT NULL, "
+                    + "`name` TEXT, "
+                    + "`date` TEXT, "
+                    + "`code` TEXT, "
+                    + "`photoPath` TEXT DEFAULT '')");
+            db.execSQL("CREATE TABLE `saved_polygons` ("
+                    + "`id` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, "
+                    + "`points` TEXT, "
+                    + "`area` REAL NOT NULL, "
+                    + "`tipus` TEXT, "
+                    + "`distancia` REAL NOT NULL, "
+                    + "`name` TEXT)");
+
+            db.execSQL("INSERT INTO saved_points (latitude, longitude, name, date, code, photoPath) VALUES "
+                    + "(41.40, 2.15, 'Font de la plaça', '01/02/2024', 'FG01', ''), "
+                    + "(41.50, 2.25, 'Font del Gat', '02/02/2024', 'FG02', ''), "
+                    + "(42.00, 3.00, 'Mirador', '03/02/2024', NULL, '')");
+
+            StringBuilder ring = new StringBuilder();
+            for (int i = 0; i < LARGE_RING_VERTICES; i++) {
+                double angle = 2 * Math.PI * i / LARGE_RING_VERTICES;
+                if (i > 0) {
+                    ring.append(';');
+                }
+                ring.append(41.0 + 0.05 * Math.cos(angle)).append(',').append(2.0 + 0.05 * Math.sin(angle));
+            }
+            db.execSQL("INSERT INTO saved_polygons (points, area, tipus, distancia, name) VALUES (?, ?, ?, ?, ?)",
+                    new Object[]{ring.toString(), 7.8e7, "poligon", 0, "Finca gran"});
+            db.execSQL("INSERT INTO saved_polygons (points, area, tipus, distancia, name) VALUES (?, ?, ?, ?, ?)",
+                    new Object[]{"41.1,2.1;41.2,2.2;41.3,2.2", 0, "linia", 25000, "Camí de ronda"});
+            db.setVersion(3);
+        } finally {
+            db.close();
+        }
+    }
+
+    private static long count(SupportSQLiteDatabase db, String sql) {
+        try (Cursor cursor = db.query(sql)) {
+            cursor.moveToFirst();
+            return cursor.getLong(0);
+        }
+    }
+}
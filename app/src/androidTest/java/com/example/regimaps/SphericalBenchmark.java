@@ -0,0 +1,54 @@
+package com.example.regimaps;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import com.google.android.gms.maps.model.LatLng;
+import com.google.maps.android.SphericalUtil;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.List;
+
+/**
+ * Àrea i longitud amb SphericalUtil sobre anells i línies grans, al dispositiu.
+ * S'ha d'executar amb -PtestBuildType=benchmark perquè els resultats no surtin d'una app depurable.
+ */
+@RunWith(AndroidJUnit4.class)
+public class SphericalBenchmark {
+
+    private static final int VERTICES = 100_000;
+
+    @Rule
+    public BenchmarkRule benchmarkRule = new BenchmarkRule();
+
+    private List<LatLng> ring;
+    private List<LatLng> line;
+
+    @Before
+    public void setUp() {
+        SyntheticData data = new SyntheticData();
+        ring = Geometry.fromCoordinates(data.ring(VERTICES, 0.05)).toLatLngs();
+        line = Geometry.fromCoordinates(data.walk(VERTICES, 0.0002)).toLatLngs();
+    }
+
+    @Test
+    public void computeArea() {
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            SphericalUtil.computeArea(ring);
+        }
+    }
+
+    @Test
+    public void computeLength() {
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            SphericalUtil.computeLength(line);
+        }
+    }
+}
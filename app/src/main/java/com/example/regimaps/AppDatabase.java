@@ -1,19 +1,31 @@
 package com.example.regimaps;
 
 import android.content.Context;
+import android.content.pm.ApplicationInfo;
+import android.database.Cursor;
+import android.os.CancellationSignal;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.room.Database;
 import androidx.room.Room;
 import androidx.room.RoomDatabase;
+import androidx.room.TypeConverters;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+import androidx.sqlite.db.SupportSQLiteQuery;
+import androidx.sqlite.db.SupportSQLiteStatement;
 
 /**
  * Classe principal de la base de dades Room per l'aplicació.
  * Defineix les entitats i la versió de la base de dades.
  */
 @Database(
-        entities = {SavedPointEntity.class, SavedPolygonEntity.class},
-        version = 3,
-        exportSchema = false
+        entities = {SavedPointEntity.class, SavedPolygonEntity.class, PolygonLodEntity.class,
+                TrackEntity.class, TrackPointEntity.class, SavedPointFts.class, SavedPolygonFts.class},
+        version = 9,
+        exportSchema = true
 )
+@TypeConverters(GeometryConverters.class)
 public abstract class AppDatabase extends RoomDatabase {
 
     //Retorna l'objecte DAO per gestionar els punts guardats.
@@ -22,6 +34,70 @@ public abstract class AppDatabase extends RoomDatabase {
     //Retorna l'objecte DAO per gestionar els polígons guardats.
     public abstract SavedPolygonDao savedPolygonDao();
 
+    // Retorna l'objecte DAO per als nivells de detall dels polígons.
+    public abstract PolygonLodDao polygonLodDao();
+
+    // Retorna l'objecte DAO per als traços GPS gravats.
+    public abstract TrackDao trackDao();
+
+    // Crea l'índex espacial R*Tree, que no és una entitat de Room, i els triggers que Room no genera
+    // quan es crea o es recrea la base de dades. Els bancs de proves el fan servir per a bases de
+    // dades en memòria.
+    static final RoomDatabase.Callback SPATIAL_INDEX_CALLBACK = new RoomDatabase.Callback() {
+        @Override
+        public void onCreate(@NonNull SupportSQLiteDatabase db) {
+            SpatialIndex.create(db);
+            PolygonLod.createTriggers(db);
+        }
+
+        @Override
+        public void onDestructiveMigration(@NonNull SupportSQLiteDatabase db) {
+            SpatialIndex.recreate(db);
+            PolygonLod.createTriggers(db);
+        }
+    };
+
+    /**
+     * Obre la base de dades (aplicant les migracions pendents) i executa una vegada les consultes
+     * de les primeres pantalles, perquè la primera consulta real no hagi de pagar l'obertura del
+     * fitxer ni la lectura de l'esquema. Les consultes no retornen res: només compilen les
+     * sentències i porten a memòria les pàgines dels índexs. No s'ha de cridar des del fil principal.
+     */
+    void prewarm() {
+        getOpenHelper().getWritableDatabase();
+        savedPointDao().countSavedPoints();
+        savedPolygonDao().countSavedPolygons();
+        savedPointDao().getSavedPointsAfter(Integer.MAX_VALUE, 1);
+        savedPolygonDao().getSavedPolygonsAfter(Integer.MAX_VALUE, 1);
+        savedPointDao().getPointsInBounds(0, 0, 0, 0);
+        savedPolygonDao().getPolygonsIntersecting(0, 0, 0, 0);
+    }
+
+    // Durada, files i bytes de les consultes de tot el procés (vegeu QueryStatsActivity).
+    private static final QueryStats QUERY_STATS = new QueryStats();
+
+    public static QueryStats getQueryStats() {
+        return QUERY_STATS;
+    }
+
+    /**
+     * Totes les consultes dels DAO (incloses les paginades i les @RawQuery) passen per aquí:
+     * el cursor mesura el temps fins que Room el tanca, les files i els bytes llegits.
+     */
+    @NonNull
+    @Override
+    public Cursor query(@NonNull SupportSQLiteQuery query, @Nullable CancellationSignal signal) {
+        long start = System.nanoTime();
+        return new TimedCursor(super.query(query, signal), QUERY_STATS, query.getSql(), start);
+    }
+
+    // Les insercions, actualitzacions i eliminacions dels DAO compilen les sentències aquí.
+    @NonNull
+    @Override
+    public SupportSQLiteStatement compileStatement(@NonNull String sql) {
+        return new TimedStatement(super.compileStatement(sql), QUERY_STATS, sql);
+    }
+
     // Instància per a la base de dades.
     private static volatile AppDatabase INSTANCE;
 
@@ -29,15 +105,24 @@ public abstract class AppDatabase extends RoomDatabase {
         if (INSTANCE == null) {
             synchronized (AppDatabase.class) {
                 if (INSTANCE == null) {
-        // Crea la base de dades amb el nom "app_database" i permet migracions destructives si cal.
+        // Crea la base de dades amb el nom "app_database". A partir de la versió 3 les dades es migren;
+        // les versions anteriors no tenen migració i es recreen.
 
-                    INSTANCE = Room.databaseBuilder(
+                    RoomDatabase.Builder<AppDatabase> builder = Room.databaseBuilder(
                                     context.getApplicationContext(),
                                     AppDatabase.class,
                                     "app_database"
                             )
-                            .fallbackToDestructiveMigration()
-                            .build();
+                            .addMigrations(DatabaseMigrations.ALL)
+                            .fallbackToDestructiveMigrationFrom(1, 2)
+                            .addCallback(SPATIAL_INDEX_CALLBACK);
+                    // En les versions de depuració es compten també les sentències que no passen pels
+                    // DAO (transaccions, migracions...). Room copia els arguments de cada sentència, així
+                    // que no s'activa a les versions publicades.
+                    if ((context.getApplicationInfo().flags & ApplicationInfo.FLAG_DEBUGGABLE) != 0) {
+                        builder.setQueryCallback((sql, args) -> QUERY_STATS.recordStatement(sql), Runnable::run);
+                    }
+                    INSTANCE = builder.build();
                 }
             }
         }
@@ -0,0 +1,68 @@
+package com.example.regimaps;
+
+import android.os.Process;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Fils de treball compartits per tota l'aplicació, en lloc que cada activitat en creï (i no en
+ * tanqui) un de propi:
+ *
+ * - io(): base de dades, fitxers i xarxa. Uns quants fils, perquè una exportació llarga no
+ *   bloquegi una eliminació ràpida.
+ * - compute(): càlculs de geometria, un fil per nucli i amb prioritat baixa.
+ * - main(): resultats cap al fil principal, descartats si l'activitat ja s'ha destruït.
+ */
+public final class AppExecutors {
+
+    // Fils del carril d'entrada/sortida. SQLite serialitza les escriptures, així que més fils no
+    // acceleren la base de dades; n'hi ha prou perquè les lectures no esperin una escriptura llarga.
+    static final int IO_THREADS = 4;
+
+    private static volatile AppExecutors INSTANCE;
+
+    private final LaneExecutor io;
+    private final LaneExecutor compute;
+    private final MainThreadDispatcher main;
+
+    private AppExecutors() {
+        io = new LaneExecutor("io", IO_THREADS,
+                threadFactory("regimaps-io", Process.THREAD_PRIORITY_BACKGROUND + Process.THREAD_PRIORITY_MORE_FAVORABLE));
+        compute = new LaneExecutor("compute", Math.max(1, Runtime.getRuntime().availableProcessors()),
+                threadFactory("regimaps-compute", Process.THREAD_PRIORITY_BACKGROUND));
+        main = new MainThreadDispatcher();
+    }
+
+    public static AppExecutors get() {
+        if (INSTANCE == null) {
+            synchronized (AppExecutors.class) {
+                if (INSTANCE == null) {
+                    INSTANCE = new AppExecutors();
+                }
+            }
+        }
+        return INSTANCE;
+    }
+
+    public LaneExecutor io() {
+        return io;
+    }
+
+    public LaneExecutor compute() {
+        return compute;
+    }
+
+    public MainThreadDispatcher main() {
+        return main;
+    }
+
+    // Crea fils amb nom (per als informes de rendiment) i la prioritat de Linux donada.
+    private static ThreadFactory threadFactory(String prefix, int priority) {
+        AtomicInteger count = new AtomicInteger();
+        return task -> new Thread(() -> {
+            Process.setThreadPriority(priority);
+            task.run();
+        }, prefix + "-" + count.incrementAndGet());
+    }
+}
@@ -2,83 +2,314 @@ package com.example.regimaps;
 
 import android.content.ContextWrapper;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.text.Editable;
+import android.text.TextWatcher;
 import android.os.Environment;
 import android.util.Log;
-import android.widget.ArrayAdapter;
-import android.widget.ListView;
 import android.Manifest;
 import android.content.pm.PackageManager;
+import android.widget.TextView;
 import android.widget.Toast;
 import androidx.core.app.ActivityCompat;
 import androidx.core.content.ContextCompat;
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.appcompat.view.ActionMode;
+import androidx.lifecycle.LiveData;
+import androidx.paging.LoadState;
+import androidx.paging.Pager;
+import androidx.paging.PagingConfig;
+import androidx.paging.PagingData;
+import androidx.paging.PagingLiveData;
+import androidx.paging.PagingSource;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.DividerItemDecoration;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
 
-import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.text.DecimalFormat;
-import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import kotlin.Unit;
 import android.app.AlertDialog;
 import android.text.InputType;
+import android.view.Menu;
+import android.view.View;
+import android.view.MenuItem;
 import android.widget.EditText;
+import android.widget.ProgressBar;
 
 /**
  * Classe base abstracta per activitats que mostren una llista d'elements.
  * Proporciona funcionalitats comunes com la gestió de la base de dades,
  * l'exportació a KML i la gestió de permisos.
+ * La llista es carrega per pàgines des de Room (PagingSource), de manera que la memòria
+ * no depèn del nombre d'elements guardats i Room la refresca sola quan canvien les dades.
+ * El nombre d'elements (al títol i al missatge de llista buida) també s'observa amb LiveData.
+ * Si el layout té un camp de cerca (R.id.searchInput), la llista es filtra mentre s'escriu amb
+ * l'índex de text complet, esperant que l'usuari faci una pausa abans de consultar.
  */
 public abstract class BaseListActivity<T> extends AppCompatActivity {
+    // Nombre d'elements de cada pàgina carregada de la base de dades.
+    private static final int PAGE_SIZE = 50;
+    // Nombre d'elements que es llegeixen de la base de dades a cada pas de l'exportació.
+    private static final int EXPORT_PAGE_SIZE = 500;
+    // Mida del buffer d'escriptura del fitxer KML.
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+    // Temps sense escriure que s'espera abans de cercar (en mil·lisegons).
+    private static final long SEARCH_DEBOUNCE_MS = 250;
+
     // Components de la UI i dades bàsiques.
-    protected ListView listView;
+    protected RecyclerView listView;
+    private TextView emptyView;
+    private CharSequence baseTitle;
     protected AppDatabase db;
-    protected ExecutorService executorService;
-    protected ArrayAdapter<String> adapter;
-    protected List<T> items = new ArrayList<>();
+    protected Executor ioExecutor;
+    protected EntityPagingAdapter<T> adapter;
     protected String kmlFileName = "map_data.kml";
+    // Expressió MATCH de la cerca actual, o null si es mostren tots els elements.
+    private String searchQuery;
+    // Nombre total d'elements de la taula (null fins que Room el calcula).
+    private Integer totalCount;
+    private final Handler searchHandler = new Handler(Looper.getMainLooper());
+    private final Runnable searchRunnable = this::applySearch;
+    private EditText searchInput;
+    // Barra d'accions de la selecció múltiple (null si no hi ha res seleccionat).
+    private ActionMode selectionMode;
+    // Si ja s'ha mostrat el primer contingut de la llista (per a la mesura de l'arrencada).
+    private boolean firstContentShown;
+    // Indicador de cancel·lació de l'exportació en curs (null si no se n'ha començat cap) i el seu diàleg.
+    private AtomicBoolean exportCancelled;
+    private AlertDialog exportDialog;
+    private static final int MENU_DELETE_SELECTED = 1;
     private static final int REQUEST_WRITE_EXTERNAL_STORAGE = 1;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+        StartupTrace.begin(StartupTrace.LIST_FIRST_ITEM);
         setContentView(getLayoutResource());
 
         listView = findViewById(getListViewId());
+        emptyView = findViewById(R.id.emptyView);
+        baseTitle = getTitle();
         db = AppDatabase.getDatabase(this);
-        executorService = Executors.newSingleThreadExecutor();
+        // En ordre d'arribada: una exportació no s'avança a un esborrat anterior.
+        ioExecutor = AppExecutors.get().io().newSerialExecutor();
+
+        setupList();
+        setupSearch();
+    }
 
-        setupListViewClickListener();
-        loadItems();
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        // L'exportació en curs s'atura (i deixa el fitxer com estava) i els resultats pendents es descarten.
+        if (exportCancelled != null) {
+            exportCancelled.set(true);
+        }
+        // El diàleg es tanca aquí: el dismiss de la tasca de l'exportació ja no arribarà a executar-se.
+        if (exportDialog != null) {
+            exportDialog.dismiss();
+        }
+        AppExecutors.get().main().cancel(this);
+        searchHandler.removeCallbacks(searchRunnable);
+        if (!firstContentShown) {
+            StartupTrace.end(StartupTrace.LIST_FIRST_ITEM);
+        }
     }
 
     //Retorna el recurs de layout que ha d'utilitzar l'activitat.
     protected abstract int getLayoutResource();
-    // Retorna l'identificador del ListView.
+    // Retorna l'identificador del RecyclerView.
     protected abstract int getListViewId();
-    //Carrega els elements que s'han de mostrar a la llista.
-    protected abstract void loadItems();
-    //Dona format a la llista d'elements per mostrar-la a la UI.
-    protected abstract List<String> formatData(List<T> items);
+    // Crea la font de dades paginada de Room. Es crida de nou cada cop que les dades canvien.
+    protected abstract PagingSource<Integer, T> createPagingSource();
+    // Crea la font paginada dels elements que coincideixen amb una expressió MATCH de FTS4.
+    protected abstract PagingSource<Integer, T> createSearchPagingSource(String matchQuery);
+    // Comparador per saber si dos elements són el mateix i si el seu contingut ha canviat.
+    protected abstract DiffUtil.ItemCallback<T> getDiffCallback();
+    //Dona format a un element per mostrar-lo a la UI.
+    protected abstract String formatItem(T item);
+    // Retorna el nombre total d'elements (en segon pla).
+    protected abstract int countItems();
+    // Retorna el nombre d'elements com a LiveData, que Room actualitza quan la taula canvia.
+    protected abstract LiveData<Integer> observeItemCount();
+    // Retorna fins a 'limit' elements amb id més gran que 'afterId', ordenats per id (en segon pla).
+    protected abstract List<T> loadItemsAfter(int afterId, int limit);
+    // Retorna l'id d'un element, per paginar per clau.
+    protected abstract int getItemId(T item);
     //Mostra el diàleg d'opcions per a l'element seleccionat.
-    protected abstract void showOptionsDialog(int position);
-    //Configura el listener per gestionar els clics a la llista.
-    private void setupListViewClickListener() {
-        listView.setOnItemClickListener((parent, view, position, id) -> showOptionsDialog(position));
+    protected abstract void showOptionsDialog(T item);
+    // Elimina els elements amb els ids donats en una sola transacció (en segon pla).
+    protected abstract void deleteItemsByIds(List<Integer> ids);
+
+    // Configura el RecyclerView, l'adaptador paginat i l'observació de les pàgines.
+    private void setupList() {
+        adapter = new EntityPagingAdapter<>(getDiffCallback(), this::formatItem, this::showOptionsDialog,
+                this::getItemId, this::onSelectionChanged);
+        listView.setLayoutManager(new LinearLayoutManager(this));
+        listView.addItemDecoration(new DividerItemDecoration(this, DividerItemDecoration.VERTICAL));
+        listView.setAdapter(adapter);
+        adapter.registerAdapterDataObserver(new RecyclerView.AdapterDataObserver() {
+            @Override
+            public void onItemRangeInserted(int positionStart, int itemCount) {
+                onFirstContentShown();
+            }
+        });
+
+        Pager<Integer, T> pager = new Pager<>(new PagingConfig(PAGE_SIZE),
+                () -> searchQuery != null ? createSearchPagingSource(searchQuery) : createPagingSource());
+        LiveData<PagingData<T>> pages = PagingLiveData.cachedIn(PagingLiveData.getLiveData(pager), getLifecycle());
+        pages.observe(this, pagingData -> adapter.submitData(getLifecycle(), pagingData));
+
+        // Sense cerca, el comptador és el total de la taula. Amb cerca, és el nombre de resultats: quan acaba
+        // la càrrega, l'adaptador en té tants elements (la resta de pàgines hi són com a placeholders).
+        observeItemCount().observe(this, count -> {
+            totalCount = count;
+            if (searchQuery == null) {
+                showCount(count);
+            }
+        });
+        adapter.addLoadStateListener(states -> {
+            if (searchQuery != null && states.getRefresh() instanceof LoadState.NotLoading) {
+                showCount(adapter.getItemCount());
+            }
+            return Unit.INSTANCE;
+        });
+    }
+
+    // Mostra el nombre d'elements al títol, i el missatge de llista buida si no n'hi ha cap.
+    private void showCount(int count) {
+        setTitle(baseTitle + " (" + count + ")");
+        if (count == 0) {
+            onFirstContentShown();
+        }
+        if (emptyView != null) {
+            emptyView.setVisibility(count == 0 ? View.VISIBLE : View.GONE);
+        }
     }
-    //Actualitza la llista d'elements i refresca l'adaptador de la UI.
-    protected void updateList(List<T> newItems) {
-        items = newItems;
-        runOnUiThread(() -> {
-            adapter = new ArrayAdapter<>(this, android.R.layout.simple_list_item_1, formatData(items));
-            listView.setAdapter(adapter);
+
+    // La llista mostra el primer element, o ja se sap que és buida: acaba la mesura de l'arrencada.
+    private void onFirstContentShown() {
+        if (!firstContentShown) {
+            firstContentShown = true;
+            StartupTrace.end(StartupTrace.LIST_FIRST_ITEM);
+            reportFullyDrawn();
+        }
+    }
+
+    // Cerca mentre s'escriu: cada canvi reinicia l'espera, i només es consulta quan l'usuari s'atura.
+    private void setupSearch() {
+        searchInput = findViewById(R.id.searchInput);
+        if (searchInput == null) {
+            return;
+        }
+        searchInput.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {}
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {}
+
+            @Override
+            public void afterTextChanged(Editable s) {
+                searchHandler.removeCallbacks(searchRunnable);
+                searchHandler.postDelayed(searchRunnable, SEARCH_DEBOUNCE_MS);
+            }
         });
     }
 
+    // Aplica el text del camp de cerca: invalida la font actual perquè el Pager en creï una de nova.
+    private void applySearch() {
+        String query = FtsQuery.prefixMatch(searchInput.getText().toString());
+        if (query == null ? searchQuery == null : query.equals(searchQuery)) {
+            return;
+        }
+        searchQuery = query;
+        if (query == null && totalCount != null) {
+            showCount(totalCount);
+        }
+        adapter.refresh();
+        listView.scrollToPosition(0);
+    }
+
+    // Mostra o amaga la barra d'accions de la selecció múltiple segons el nombre d'elements seleccionats.
+    private void onSelectionChanged(int count) {
+        if (count == 0) {
+            if (selectionMode != null) {
+                selectionMode.finish();
+            }
+            return;
+        }
+        if (selectionMode == null) {
+            selectionMode = startSupportActionMode(selectionCallback);
+        }
+        if (selectionMode != null) {
+            selectionMode.setTitle(count + " seleccionats");
+        }
+    }
+
+    // Accions disponibles sobre els elements seleccionats.
+    private final ActionMode.Callback selectionCallback = new ActionMode.Callback() {
+        @Override
+        public boolean onCreateActionMode(ActionMode mode, Menu menu) {
+            menu.add(Menu.NONE, MENU_DELETE_SELECTED, Menu.NONE, "Eliminar")
+                    .setShowAsAction(MenuItem.SHOW_AS_ACTION_ALWAYS);
+            return true;
+        }
+
+        @Override
+        public boolean onPrepareActionMode(ActionMode mode, Menu menu) {
+            return false;
+        }
+
+        @Override
+        public boolean onActionItemClicked(ActionMode mode, MenuItem item) {
+            if (item.getItemId() == MENU_DELETE_SELECTED) {
+                confirmDeleteSelected();
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public void onDestroyActionMode(ActionMode mode) {
+            selectionMode = null;
+            adapter.clearSelection();
+        }
+    };
+
+    /**
+     * Demana confirmació i elimina tots els elements seleccionats amb una sola transacció.
+     */
+    private void confirmDeleteSelected() {
+        List<Integer> ids = adapter.getSelectedIds();
+        new AlertDialog.Builder(this)
+                .setTitle("Eliminar")
+                .setMessage("Vols eliminar " + ids.size() + " elements?")
+                .setPositiveButton("Eliminar", (dialog, which) -> {
+                    ioExecutor.execute(() -> deleteItemsByIds(ids));
+                    if (selectionMode != null) {
+                        selectionMode.finish();
+                    }
+                })
+                .setNegativeButton("Cancel·la", (dialog, which) -> dialog.cancel())
+                .show();
+    }
+
     //  Funció per demanar el permís d'escriptura a l'emmagatzematge extern si no està concedit.
     protected void requestWriteExternalStoragePermission() {
         if (ContextCompat.checkSelfPermission(this, Manifest.permission.WRITE_EXTERNAL_STORAGE) != PackageManager.PERMISSION_GRANTED) {
@@ -98,19 +329,19 @@ public abstract class BaseListActivity<T> extends AppCompatActivity {
         }
     }
     /**
-     * Mostra un diàleg per exportar la llista d'elements a un fitxer KML.
+     * Mostra un diàleg per exportar tots els elements a un fitxer KML.
      * Permet crear un fitxer nou o afegir a un fitxer existent.
      */
-    protected void exportToKML(List<T> items) {
+    protected void exportToKML() {
         AlertDialog.Builder builder = new AlertDialog.Builder(this);
         builder.setTitle("Exportar a KML");
         builder.setItems(new CharSequence[]{"Crear fitxer nou", "Afegir a fitxer existent"}, (dialog, which) -> {
             if (which == 0) {
                 // Crear fitxer nou
-                showFileNameDialog(items, false);
+                showFileNameDialog(false);
             } else {
                 // Afegir a fitxer existent
-                showKmlFilesDialog(items);
+                showKmlFilesDialog();
             }
         });
         builder.show();
@@ -118,7 +349,7 @@ public abstract class BaseListActivity<T> extends AppCompatActivity {
     /**
      * Mostra un diàleg per introduir el nom del fitxer KML.
      */
-    private void showFileNameDialog(List<T> items, boolean append) {
+    private void showFileNameDialog(boolean append) {
         AlertDialog.Builder builder = new AlertDialog.Builder(this);
         builder.setTitle("Nom del fitxer KML");
 
@@ -131,7 +362,7 @@ public abstract class BaseListActivity<T> extends AppCompatActivity {
             if (!fileName.endsWith(".kml")) {
                 fileName += ".kml";
             }
-            exportToKMLFile(items, fileName, append);
+            startKmlExport(fileName, append);
         });
         builder.setNegativeButton("Cancel·la", (dialog, which) -> dialog.cancel());
 
@@ -140,7 +371,7 @@ public abstract class BaseListActivity<T> extends AppCompatActivity {
     /**
      * Mostra un diàleg per seleccionar un fitxer KML existent.
      */
-    private void showKmlFilesDialog(List<T> items) {
+    private void showKmlFilesDialog() {
         ContextWrapper cw = new ContextWrapper(getApplicationContext());
         File documentsDir = cw.getExternalFilesDir(Environment.DIRECTORY_DOCUMENTS);
 
@@ -152,7 +383,7 @@ public abstract class BaseListActivity<T> extends AppCompatActivity {
         File[] kmlFiles = documentsDir.listFiles((dir, name) -> name.endsWith(".kml"));
         if (kmlFiles == null || kmlFiles.length == 0) {
             Toast.makeText(this, "No hi ha fitxers KML disponibles. Es crearà un de nou.", Toast.LENGTH_SHORT).show();
-            showFileNameDialog(items, false); // Procedir com si fos un fitxer nou
+            showFileNameDialog(false); // Procedir com si fos un fitxer nou
             return;
         }
 
@@ -164,16 +395,16 @@ public abstract class BaseListActivity<T> extends AppCompatActivity {
         AlertDialog.Builder builder = new AlertDialog.Builder(this);
         builder.setTitle("Selecciona un fitxer KML");
         builder.setItems(fileNames, (dialog, which) -> {
-            exportToKMLFile(items, fileNames[which], true);
+            startKmlExport(fileNames[which], true);
         });
         builder.setNegativeButton("Cancel·la", (dialog, which) -> dialog.cancel());
         builder.show();
     }
     /**
-     * Exporta els elements a un fitxer KML, gestionant la creació o l'addició segons el paràmetre 'append'.
-     * Inclou una comprovació bàsica de duplicats.
+     * Exporta els elements en segon pla, creant el fitxer o afegint-hi segons el paràmetre 'append'.
+     * Mostra un diàleg amb el progrés que permet cancel·lar l'exportació.
      */
-    private void exportToKMLFile(List<T> items, String fileName, boolean append) {
+    private void startKmlExport(String fileName, boolean append) {
         ContextWrapper cw = new ContextWrapper(getApplicationContext());
         File documentsDir = cw.getExternalFilesDir(Environment.DIRECTORY_DOCUMENTS);
 
@@ -181,105 +412,174 @@ public abstract class BaseListActivity<T> extends AppCompatActivity {
             Toast.makeText(this, "No s'ha pogut accedir al directori de documents", Toast.LENGTH_SHORT).show();
             return;
         }
-
         File file = new File(documentsDir, fileName);
-        String closingTags = "</Document>\n</kml>";
-
-        try {
-            if (!append) {
-                // Crea un fitxer nou amb la capçalera i el contingut.
-                String allPlacemarkContent = generateKMLContent(items); // Genera tots els placemarks
-                try (FileOutputStream outputStream = new FileOutputStream(file, false)) {
-                    outputStream.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n".getBytes("UTF-8"));
-                    outputStream.write("<kml xmlns=\"http://www.opengis.net/kml/2.2\">\n".getBytes("UTF-8"));
-                    outputStream.write("<Document>\n".getBytes("UTF-8"));
-                    outputStream.write(("<name>" + getKMLDocumentName() + "</name>\n").getBytes("UTF-8"));
-                    outputStream.write(allPlacemarkContent.getBytes("UTF-8"));
-                    outputStream.write("</Document>\n".getBytes("UTF-8"));
-                    outputStream.write("</kml>\n".getBytes("UTF-8"));
-                }
-            } else {
-                // Comprova duplicats i afegeix només els nous elements.
-                StringBuilder existingContentBuilder = new StringBuilder();
-                if (file.exists()) {
-                    try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"))) {
-                        String line;
-                        while ((line = reader.readLine()) != null) {
-                            existingContentBuilder.append(line).append("\n");
-                        }
-                    }
-                }
-                String existingContent = existingContentBuilder.toString();
-
-                List<T> itemsToAppend = new ArrayList<>();
-                DecimalFormat df = new DecimalFormat("#.##");
-
-                for (T item : items) {
-                    boolean isDuplicate = false;
-                    String itemKey = null;
-                    if (item instanceof SavedPointEntity) {
-                        SavedPointEntity point = (SavedPointEntity) item;
-                        itemKey = point.name + "_" + point.longitude + "," + point.latitude;
-                    } else if (item instanceof SavedPolygonEntity) {
-                        SavedPolygonEntity polygon = (SavedPolygonEntity) item;
-                        String info = polygon.tipus.equals("poligon") ?
-                                "Àrea: " + df.format(polygon.area) + " m²" :
-                                "Distància: " + df.format(polygon.distancia) + " m";
-                        itemKey = (polygon.name != null && !polygon.name.isEmpty() ? polygon.name : polygon.tipus)
-                                + "_" + info + "_" + getPolygonCoordinateStringForKml(polygon.points);
-                    }
-                    // Comprovació bàsica de duplicats pel nom
-                    if (itemKey != null && existingContent.contains("<name>" +
-                            (item instanceof SavedPointEntity ? ((SavedPointEntity)item).name :
-                                    ((SavedPolygonEntity)item).name != null && !((SavedPolygonEntity)item).name.isEmpty() ?
-                                            ((SavedPolygonEntity)item).name : ((SavedPolygonEntity)item).tipus) + "</name>")) {
-                        String generatedSnippet = generateKMLContent(java.util.Collections.singletonList(item));
-                        if (existingContent.contains(generatedSnippet.trim())) {
-                            isDuplicate = true;
-                        }
-                    }
-                    if (!isDuplicate) {
-                        itemsToAppend.add(item);
-                    }
-                }
-                String newPlacemarkContent = generateKMLContent(itemsToAppend);
-                int insertPosition = existingContent.lastIndexOf(closingTags);
-
-                if (insertPosition != -1) {
-                    String contentBeforeClosing = existingContent.substring(0, insertPosition);
-                    String updatedContent = contentBeforeClosing + newPlacemarkContent + closingTags;
-                    try (FileOutputStream outputStream = new FileOutputStream(file, false)) {
-                        outputStream.write(updatedContent.getBytes("UTF-8"));
-                    }
+
+        ProgressBar progressBar = new ProgressBar(this, null, android.R.attr.progressBarStyleHorizontal);
+        progressBar.setIndeterminate(true);
+        int padding = (int) (24 * getResources().getDisplayMetrics().density);
+        progressBar.setPadding(padding, padding, padding, padding);
+        AtomicBoolean cancelled = new AtomicBoolean(false);
+        exportCancelled = cancelled;
+        AlertDialog progressDialog = new AlertDialog.Builder(this)
+                .setTitle("Exportant a KML")
+                .setView(progressBar)
+                .setCancelable(false)
+                .setNegativeButton("Cancel·la", (dialog, which) -> cancelled.set(true))
+                .show();
+        exportDialog = progressDialog;
+
+        ExportProgressListener progress = (done, total) -> AppExecutors.get().main().post(this, () -> {
+            progressBar.setIndeterminate(false);
+            progressBar.setMax(total);
+            progressBar.setProgress(done);
+        });
+
+        ioExecutor.execute(() -> {
+            try {
+                if (append) {
+                    appendToKMLFile(file, progress, cancelled);
                 } else {
-                    try (FileOutputStream outputStream = new FileOutputStream(file, true)) {
-                        outputStream.write(newPlacemarkContent.getBytes("UTF-8"));
-                        outputStream.write(closingTags.getBytes("UTF-8"));
-                    }
+                    writeKMLFile(file, progress, cancelled);
                 }
+                AppExecutors.get().main().post(this, () -> {
+                    progressDialog.dismiss();
+                    if (cancelled.get()) {
+                        Toast.makeText(this, "Exportació cancel·lada", Toast.LENGTH_SHORT).show();
+                    } else {
+                        Toast.makeText(this, "Exportat a " + file.getAbsolutePath(), Toast.LENGTH_LONG).show();
+                    }
+                });
+            } catch (IOException e) {
+                Log.e("ExportKML", "Error exportant: " + e.getMessage(), e);
+                AppExecutors.get().main().post(this, () -> {
+                    progressDialog.dismiss();
+                    Toast.makeText(this, "Error exportant: " + e.getMessage(), Toast.LENGTH_SHORT).show();
+                });
+            } catch (Exception e) {
+                Log.e("ExportKML", "Error inesperat: " + e.getMessage(), e);
+                AppExecutors.get().main().post(this, () -> {
+                    progressDialog.dismiss();
+                    Toast.makeText(this, "Error inesperat durant l'exportació", Toast.LENGTH_SHORT).show();
+                });
+            }
+        });
+    }
+
+    // Rep el progrés de l'exportació (elements escrits i total).
+    private interface ExportProgressListener {
+        void onProgress(int done, int total);
+    }
+
+    /**
+     * Escriu un fitxer KML nou recorrent la taula per pàgines ordenades per id.
+     * Cada pàgina s'escriu directament al fitxer, així que la memòria no depèn del nombre d'elements.
+     * S'escriu primer a un fitxer temporal perquè una cancel·lació o un error no deixin el fitxer a mitges.
+     * També es desa l'índex de placemarks ({@link KmlAppendIndex}) per poder-hi afegir elements després.
+     */
+    private void writeKMLFile(File file, ExportProgressListener progress, AtomicBoolean cancelled) throws IOException {
+        File tmpFile = new File(file.getPath() + ".tmp");
+        KmlAppendIndex index = KmlAppendIndex.empty(file);
+        try (Writer out = openKmlOutput(tmpFile, false)) {
+            KmlWriter writer = new KmlWriter(out);
+            writer.writeHeader(getKMLDocumentName());
+            writePlacemarks(out, index, false, progress, cancelled);
+            writer.writeFooter();
+        }
+        if (cancelled.get()) {
+            tmpFile.delete();
+            return;
+        }
+        if (!tmpFile.renameTo(file)) {
+            throw new IOException("No s'ha pogut escriure " + file.getName());
+        }
+        index.save(file.length());
+    }
+    /**
+     * Afegeix els elements a un fitxer KML existent, saltant els que ja hi són.
+     * Els duplicats es detecten amb l'índex de hashes del fitxer, sense llegir-lo sencer, i els
+     * placemarks nous s'escriuen just abans de l'etiqueta de tancament, que es busca des del final.
+     * El cost depèn dels elements a exportar, no de la mida del fitxer existent.
+     */
+    private void appendToKMLFile(File file, ExportProgressListener progress, AtomicBoolean cancelled) throws IOException {
+        if (!file.exists()) {
+            writeKMLFile(file, progress, cancelled);
+            return;
+        }
+        KmlAppendIndex index = KmlAppendIndex.load(file);
+
+        // Es treu el tancament del document i es guarda per poder-lo restaurar si cal.
+        long insertPosition;
+        byte[] tail;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            insertPosition = KmlAppendIndex.findClosingTagOffset(raf);
+            if (insertPosition < 0) {
+                insertPosition = raf.length();
+            }
+            tail = new byte[(int) (raf.length() - insertPosition)];
+            raf.seek(insertPosition);
+            raf.readFully(tail);
+            raf.setLength(insertPosition);
+        }
+
+        try (Writer out = openKmlOutput(file, true)) {
+            writePlacemarks(out, index, true, progress, cancelled);
+            if (!cancelled.get()) {
+                out.write(KmlWriter.CLOSING_TAGS);
             }
-            Toast.makeText(this, "Exportat a " + file.getAbsolutePath(), Toast.LENGTH_LONG).show();
-        } catch (IOException e) {
-            Log.e("ExportKML", "Error exportant: " + e.getMessage(), e);
-            Toast.makeText(this, "Error exportant: " + e.getMessage(), Toast.LENGTH_SHORT).show();
-        } catch (Exception e) {
-            Log.e("ExportKML", "Error inesperat: " + e.getMessage(), e);
-            Toast.makeText(this, "Error inesperat durant l'exportació", Toast.LENGTH_SHORT).show();
+        } catch (IOException | RuntimeException e) {
+            restoreTail(file, insertPosition, tail);
+            throw e;
         }
+        if (cancelled.get()) {
+            // Es deixa el fitxer com estava abans d'afegir-hi res.
+            restoreTail(file, insertPosition, tail);
+            return;
+        }
+        index.save(file.length());
     }
     /**
-     * Converteix una cadena de punts en el format de coordenades KML.
+     * Escriu els placemarks de tots els elements, llegint la taula per pàgines ordenades per id.
+     * Cada placemark es genera primer en un buffer per calcular-ne el hash i registrar-lo a l'índex;
+     * si 'skipDuplicates' és true, els que ja hi eren no s'escriuen.
      */
-    private String getPolygonCoordinateStringForKml(String pointsString) {
-        StringBuilder sb = new StringBuilder();
-        String[] coords = pointsString.split(";");
-        for (String coord : coords) {
-            String[] parts = coord.split(",");
-            if (parts.length == 2) {
-                sb.append(parts[1]).append(",").append(parts[0]).append(" ");
+    private void writePlacemarks(Writer out, KmlAppendIndex index, boolean skipDuplicates,
+                                 ExportProgressListener progress, AtomicBoolean cancelled) throws IOException {
+        int total = countItems();
+        StringWriter placemark = new StringWriter();
+        KmlWriter placemarkWriter = new KmlWriter(placemark);
+        int done = 0;
+        int lastId = Integer.MIN_VALUE;
+        while (!cancelled.get()) {
+            List<T> page = loadItemsAfter(lastId, EXPORT_PAGE_SIZE);
+            if (page.isEmpty()) {
+                break;
             }
+            for (T item : page) {
+                StringBuffer text = placemark.getBuffer();
+                text.setLength(0);
+                writePlacemark(placemarkWriter, item);
+                boolean isNew = index.add(KmlAppendIndex.hash(text));
+                if (isNew || !skipDuplicates) {
+                    out.write(text.toString());
+                }
+            }
+            lastId = getItemId(page.get(page.size() - 1));
+            done += page.size();
+            progress.onProgress(done, Math.max(total, done));
+        }
+    }
+    // Obre un Writer UTF-8 amb buffer sobre el fitxer, per escriure'l de nou o afegint-hi al final.
+    private Writer openKmlOutput(File file, boolean append) throws IOException {
+        return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, append), StandardCharsets.UTF_8),
+                WRITE_BUFFER_SIZE);
+    }
+    // Retalla el fitxer a la posició donada i hi torna a escriure el final original.
+    private void restoreTail(File file, long position, byte[] tail) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(position);
+            raf.seek(position);
+            raf.write(tail);
         }
-        return sb.toString().trim();
     }
     /**
      * Retorna el nom del document KML.
@@ -289,58 +589,23 @@ public abstract class BaseListActivity<T> extends AppCompatActivity {
         return "Dades del Mapa";
     }
     /**
-     * Genera el contingut KML per a una llista d'elements.
+     * Escriu el placemark d'un element (punt, línia o polígon).
      */
-    protected String generateKMLContent(List<T> itemsToExport) {
-        StringBuilder kml = new StringBuilder();
-        DecimalFormat df = new DecimalFormat("#.##");
-
-        for (T item : itemsToExport) {
-            if (item instanceof SavedPointEntity) {
-                SavedPointEntity point = (SavedPointEntity) item;
-                kml.append("<Placemark>\n");
-                kml.append("<name>").append(point.name).append("</name>\n");
-                kml.append("<description>").append("Data: ").append(point.date).append(", Codi: ").append(point.code).append("</description>\n");
-                kml.append("<Point>\n");
-                kml.append("<coordinates>").append(point.longitude).append(",").append(point.latitude).append("</coordinates>\n");
-                kml.append("</Point>\n");
-                kml.append("</Placemark>\n");
-            } else if (item instanceof SavedPolygonEntity) {
-                SavedPolygonEntity polygon = (SavedPolygonEntity) item;
-                kml.append("<Placemark>\n");
-                kml.append("<name>").append(polygon.name != null && !polygon.name.isEmpty() ? polygon.name : polygon.tipus).append("</name>\n");
-                kml.append("<description>");
-                if (polygon.tipus.equals("poligon")) {
-                    kml.append("Àrea: ").append(df.format(polygon.area)).append(" m²");
-                } else {
-                    kml.append("Distància: ").append(df.format(polygon.distancia)).append(" m");
-                }
-                kml.append("</description>\n");
-
-
-                String[] coords = polygon.points.split(";");
-                if (polygon.tipus.equals("poligon")) {
-                    kml.append("<Polygon><outerBoundaryIs><LinearRing><coordinates>\n");
-                    for (String coord : coords) {
-                        String[] parts = coord.split(",");
-                        if (parts.length == 2) {
-                            kml.append(parts[1]).append(",").append(parts[0]).append(" ");
-                        }
-                    }
-                    kml.append("\n</coordinates></LinearRing></outerBoundaryIs></Polygon>\n");
-                } else {
-                    kml.append("<LineString><coordinates>\n");
-                    for (String coord : coords) {
-                        String[] parts = coord.split(",");
-                        if (parts.length == 2) {
-                            kml.append(parts[1]).append(",").append(parts[0]).append(" ");
-                        }
-                    }
-                    kml.append("\n</coordinates></LineString>\n");
-                }
-                kml.append("</Placemark>\n");
-            }
+    protected void writePlacemark(KmlWriter writer, T item) throws IOException {
+        if (item instanceof SavedPointEntity) {
+            SavedPointEntity point = (SavedPointEntity) item;
+            writer.writePoint(point.name, "Data: " + point.date + ", Codi: " + point.code,
+                    point.latitude, point.longitude);
+        } else if (item instanceof SavedPolygonEntity) {
+            SavedPolygonEntity polygon = (SavedPolygonEntity) item;
+            DecimalFormat df = new DecimalFormat("#.##");
+            String name = polygon.name != null && !polygon.name.isEmpty() ? polygon.name : polygon.tipus;
+            boolean isPolygon = polygon.tipus.equals("poligon");
+            String description = isPolygon
+                    ? "Àrea: " + df.format(polygon.area) + " m²"
+                    : "Distància: " + df.format(polygon.distancia) + " m";
+            double[] coords = polygon.geometry != null ? polygon.geometry.getCoordinates() : new double[0];
+            writer.writeShape(name, description, isPolygon, coords);
         }
-        return kml.toString();
     }
-}
\ No newline at end of file
+}
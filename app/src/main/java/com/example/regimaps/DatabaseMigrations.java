@@ -0,0 +1,241 @@
+package com.example.regimaps;
+
+import android.database.Cursor;
+
+import androidx.annotation.NonNull;
+import androidx.room.migration.Migration;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+import androidx.sqlite.db.SupportSQLiteStatement;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Migracions de l'esquema de la base de dades.
+ * Cada migració transforma les dades existents enlloc d'esborrar-les.
+ */
+public final class DatabaseMigrations {
+
+    // Nombre de files que es processen a cada lot durant les migracions amb conversió de dades.
+    static final int BATCH_SIZE = 500;
+
+    private DatabaseMigrations() {}
+
+    /**
+     * Versió 3 -> 4: la columna de text "points" ("lat,lng;...") es substitueix per la
+     * columna binària "geometry". Les files es converteixen per lots ordenats per id,
+     * de manera que la memòria utilitzada no depèn de la mida de la taula.
+     */
+    static final Migration MIGRATION_3_4 = new Migration(3, 4) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("CREATE TABLE IF NOT EXISTS `saved_polygons_new` ("
+                    + "`id` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, "
+                    + "`geometry` BLOB, "
+                    + "`area` REAL NOT NULL, "
+                    + "`tipus` TEXT, "
+                    + "`distancia` REAL NOT NULL, "
+                    + "`name` TEXT)");
+
+            try (SupportSQLiteStatement insert = db.compileStatement(
+                    "INSERT INTO `saved_polygons_new` (`id`, `geometry`, `area`, `tipus`, `distancia`, `name`) "
+                            + "VALUES (?, ?, ?, ?, ?, ?)")) {
+                long lastId = Long.MIN_VALUE;
+                while (true) {
+                    int rows = 0;
+                    try (Cursor cursor = db.query(
+                            "SELECT `id`, `points`, `area`, `tipus`, `distancia`, `name` FROM `saved_polygons` "
+                                    + "WHERE `id` > ? ORDER BY `id` LIMIT " + BATCH_SIZE,
+                            new Object[]{lastId})) {
+                        while (cursor.moveToNext()) {
+                            lastId = cursor.getLong(0);
+                            double[] coords = GeometryCodec.parseLegacyPoints(cursor.getString(1));
+                            insert.clearBindings();
+                            insert.bindLong(1, lastId);
+                            insert.bindBlob(2, GeometryCodec.encode(coords));
+                            insert.bindDouble(3, cursor.getDouble(2));
+                            bindStringOrNull(insert, 4, cursor, 3);
+                            insert.bindDouble(5, cursor.getDouble(4));
+                            bindStringOrNull(insert, 6, cursor, 5);
+                            insert.executeInsert();
+                            rows++;
+                        }
+                    }
+                    if (rows < BATCH_SIZE) {
+                        break;
+                    }
+                }
+            } catch (IOException e) {
+                // Només ho pot llançar el close() de la sentència.
+                throw new UncheckedIOException(e);
+            }
+
+            db.execSQL("DROP TABLE `saved_polygons`");
+            db.execSQL("ALTER TABLE `saved_polygons_new` RENAME TO `saved_polygons`");
+        }
+    };
+
+    /**
+     * Versió 4 -> 5: crea l'índex espacial R*Tree i l'omple amb els punts existents.
+     * L'índex dels polígons es crea a la migració 7 -> 8, quan ja hi ha les columnes del rectangle
+     * envolupant que el mantenen.
+     */
+    static final Migration MIGRATION_4_5 = new Migration(4, 5) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            SpatialIndex.createPointIndex(db);
+            SpatialIndex.rebuildPoints(db);
+        }
+    };
+
+    /**
+     * Versió 5 -> 6: crea la taula de nivells de detall dels polígons i la calcula per a les dades existents.
+     */
+    static final Migration MIGRATION_5_6 = new Migration(5, 6) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("CREATE TABLE IF NOT EXISTS `saved_polygon_lods` ("
+                    + "`polygon_id` INTEGER NOT NULL, "
+                    + "`level` INTEGER NOT NULL, "
+                    + "`geometry` BLOB, "
+                    + "PRIMARY KEY(`polygon_id`, `level`))");
+            PolygonLod.createTriggers(db);
+            PolygonLod.rebuild(db);
+        }
+    };
+
+    /**
+     * Versió 6 -> 7: crea les taules dels traços GPS gravats.
+     */
+    static final Migration MIGRATION_6_7 = new Migration(6, 7) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("CREATE TABLE IF NOT EXISTS `tracks` ("
+                    + "`id` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, "
+                    + "`start_time` INTEGER NOT NULL, "
+                    + "`end_time` INTEGER NOT NULL, "
+                    + "`point_count` INTEGER NOT NULL)");
+            db.execSQL("CREATE TABLE IF NOT EXISTS `track_points` ("
+                    + "`track_id` INTEGER NOT NULL, "
+                    + "`seq` INTEGER NOT NULL, "
+                    + "`latitude` REAL NOT NULL, "
+                    + "`longitude` REAL NOT NULL, "
+                    + "`time` INTEGER NOT NULL, "
+                    + "`accuracy` REAL NOT NULL, "
+                    + "PRIMARY KEY(`track_id`, `seq`))");
+        }
+    };
+
+    /**
+     * Versió 7 -> 8: afegeix a saved_polygons les mesures precalculades (rectangle envolupant,
+     * centroide, perímetre i nombre de vèrtexs), les calcula per lots per a les files existents i
+     * passa a mantenir l'índex espacial dels polígons amb triggers sobre aquestes columnes.
+     */
+    static final Migration MIGRATION_7_8 = new Migration(7, 8) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            String[] columns = {"min_lat", "max_lat", "min_lng", "max_lng", "centroid_lat", "centroid_lng", "perimeter"};
+            for (String column : columns) {
+                db.execSQL("ALTER TABLE `saved_polygons` ADD COLUMN `" + column + "` REAL NOT NULL DEFAULT 0");
+            }
+            db.execSQL("ALTER TABLE `saved_polygons` ADD COLUMN `vertex_count` INTEGER NOT NULL DEFAULT 0");
+
+            try (SupportSQLiteStatement update = db.compileStatement(
+                    "UPDATE `saved_polygons` SET `min_lat` = ?, `max_lat` = ?, `min_lng` = ?, `max_lng` = ?, "
+                            + "`centroid_lat` = ?, `centroid_lng` = ?, `perimeter` = ?, `vertex_count` = ? "
+                            + "WHERE `id` = ?")) {
+                long lastId = Long.MIN_VALUE;
+                while (true) {
+                    int rows = 0;
+                    try (Cursor cursor = db.query("SELECT `id`, `geometry`, `tipus` FROM `saved_polygons` "
+                            + "WHERE `id` > ? ORDER BY `id` LIMIT " + BATCH_SIZE, new Object[]{lastId})) {
+                        while (cursor.moveToNext()) {
+                            lastId = cursor.getLong(0);
+                            byte[] blob = cursor.isNull(1) ? null : cursor.getBlob(1);
+                            ShapeMetrics metrics = ShapeMetrics.of(Geometry.fromEncoded(blob).getCoordinates(),
+                                    "poligon".equals(cursor.getString(2)));
+                            update.bindDouble(1, metrics.minLat);
+                            update.bindDouble(2, metrics.maxLat);
+                            update.bindDouble(3, metrics.minLng);
+                            update.bindDouble(4, metrics.maxLng);
+                            update.bindDouble(5, metrics.centroidLat);
+                            update.bindDouble(6, metrics.centroidLng);
+                            update.bindDouble(7, metrics.perimeter);
+                            update.bindLong(8, metrics.vertexCount);
+                            update.bindLong(9, lastId);
+                            update.executeUpdateDelete();
+                            rows++;
+                        }
+                    }
+                    if (rows < BATCH_SIZE) {
+                        break;
+                    }
+                }
+            } catch (IOException e) {
+                // Només ho pot llançar el close() de la sentència.
+                throw new UncheckedIOException(e);
+            }
+
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index_saved_polygons_min_lat_max_lat` "
+                    + "ON `saved_polygons` (`min_lat`, `max_lat`)");
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index_saved_polygons_min_lng_max_lng` "
+                    + "ON `saved_polygons` (`min_lng`, `max_lng`)");
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index_saved_polygons_perimeter` ON `saved_polygons` (`perimeter`)");
+
+            SpatialIndex.createPolygonIndex(db);
+            SpatialIndex.rebuildPolygons(db);
+        }
+    };
+
+    /**
+     * Versió 8 -> 9: crea els índexs de text complet (FTS4) dels noms i codis, amb els mateixos
+     * triggers que genera Room per a les taules de contingut extern, i els omple.
+     */
+    static final Migration MIGRATION_8_9 = new Migration(8, 9) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            createContentFts(db, "saved_points_fts", "saved_points", "name", "code");
+            createContentFts(db, "saved_polygons_fts", "saved_polygons", "name");
+        }
+    };
+
+    // Totes les migracions, en ordre. Les fan servir AppDatabase i la prova de migració.
+    static final Migration[] ALL = {MIGRATION_3_4, MIGRATION_4_5, MIGRATION_5_6, MIGRATION_6_7,
+            MIGRATION_7_8, MIGRATION_8_9};
+
+    // Crea una taula FTS4 de contingut extern tal com la crea Room, amb els triggers que la mantenen,
+    // i la indexa a partir de les dades existents.
+    private static void createContentFts(SupportSQLiteDatabase db, String ftsTable, String contentTable,
+                                         String... columns) {
+        StringBuilder definitions = new StringBuilder();
+        StringBuilder names = new StringBuilder("`docid`");
+        StringBuilder values = new StringBuilder("NEW.`rowid`");
+        for (String column : columns) {
+            definitions.append('`').append(column).append("` TEXT, ");
+            names.append(", `").append(column).append('`');
+            values.append(", NEW.`").append(column).append('`');
+        }
+        db.execSQL("CREATE VIRTUAL TABLE IF NOT EXISTS `" + ftsTable + "` USING FTS4("
+                + definitions + "tokenize=unicode61, content=`" + contentTable + "`)");
+        for (String operation : new String[]{"UPDATE", "DELETE"}) {
+            db.execSQL("CREATE TRIGGER IF NOT EXISTS room_fts_content_sync_" + ftsTable + "_BEFORE_" + operation
+                    + " BEFORE " + operation + " ON `" + contentTable + "` BEGIN DELETE FROM `" + ftsTable
+                    + "` WHERE `docid`=OLD.`rowid`; END");
+        }
+        for (String operation : new String[]{"UPDATE", "INSERT"}) {
+            db.execSQL("CREATE TRIGGER IF NOT EXISTS room_fts_content_sync_" + ftsTable + "_AFTER_" + operation
+                    + " AFTER " + operation + " ON `" + contentTable + "` BEGIN INSERT INTO `" + ftsTable
+                    + "`(" + names + ") VALUES (" + values + "); END");
+        }
+        db.execSQL("INSERT INTO `" + ftsTable + "`(`" + ftsTable + "`) VALUES ('rebuild')");
+    }
+
+    // Copia un valor de text del cursor a la sentència, respectant els valors nuls.
+    private static void bindStringOrNull(SupportSQLiteStatement statement, int index, Cursor cursor, int column) {
+        if (cursor.isNull(column)) {
+            statement.bindNull(index);
+        } else {
+            statement.bindString(index, cursor.getString(column));
+        }
+    }
+}
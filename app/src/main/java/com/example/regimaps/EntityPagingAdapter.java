@@ -0,0 +1,131 @@
+package com.example.regimaps;
+
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.TextView;
+
+import androidx.annotation.NonNull;
+import androidx.paging.PagingDataAdapter;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.RecyclerView;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Adaptador paginat genèric per a les llistes d'entitats guardades.
+ * Mostra cada element en una línia de text i avisa quan es clica.
+ * Un clic llarg activa la selecció múltiple: mentre hi ha elements seleccionats, els clics
+ * marquen o desmarquen elements en lloc d'obrir-los.
+ */
+public class EntityPagingAdapter<T> extends PagingDataAdapter<T, EntityPagingAdapter.ViewHolder> {
+
+    // Converteix un element en el text que es mostra a la llista.
+    public interface Formatter<T> {
+        String format(T item);
+    }
+
+    // Rep els clics sobre els elements de la llista.
+    public interface OnItemClickListener<T> {
+        void onItemClick(T item);
+    }
+
+    // Retorna l'id d'un element, per recordar la selecció encara que la pàgina es recarregui.
+    public interface IdGetter<T> {
+        int getId(T item);
+    }
+
+    // Rep els canvis en el nombre d'elements seleccionats.
+    public interface SelectionListener {
+        void onSelectionChanged(int count);
+    }
+
+    private final Formatter<T> formatter;
+    private final OnItemClickListener<T> clickListener;
+    private final IdGetter<T> idGetter;
+    private final SelectionListener selectionListener;
+    private final Set<Integer> selectedIds = new HashSet<>();
+
+    public EntityPagingAdapter(DiffUtil.ItemCallback<T> diffCallback, Formatter<T> formatter,
+                               OnItemClickListener<T> clickListener, IdGetter<T> idGetter,
+                               SelectionListener selectionListener) {
+        super(diffCallback);
+        this.formatter = formatter;
+        this.clickListener = clickListener;
+        this.idGetter = idGetter;
+        this.selectionListener = selectionListener;
+    }
+
+    // Retorna els ids dels elements seleccionats.
+    public List<Integer> getSelectedIds() {
+        return new ArrayList<>(selectedIds);
+    }
+
+    // Desmarca tots els elements.
+    public void clearSelection() {
+        if (selectedIds.isEmpty()) {
+            return;
+        }
+        selectedIds.clear();
+        notifyItemRangeChanged(0, getItemCount());
+        selectionListener.onSelectionChanged(0);
+    }
+
+    @NonNull
+    @Override
+    public ViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        View view = LayoutInflater.from(parent.getContext())
+                .inflate(android.R.layout.simple_list_item_activated_1, parent, false);
+        return new ViewHolder(view);
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull ViewHolder holder, int position) {
+        T item = getItem(position);
+        if (item == null) {
+            // Element encara no carregat
+            holder.text.setText("");
+            holder.itemView.setActivated(false);
+            holder.itemView.setOnClickListener(null);
+            holder.itemView.setOnLongClickListener(null);
+            return;
+        }
+        holder.text.setText(formatter.format(item));
+        holder.itemView.setActivated(selectedIds.contains(idGetter.getId(item)));
+        holder.itemView.setOnClickListener(v -> {
+            if (selectedIds.isEmpty()) {
+                clickListener.onItemClick(item);
+            } else {
+                toggleSelection(item, holder.getBindingAdapterPosition());
+            }
+        });
+        holder.itemView.setOnLongClickListener(v -> {
+            toggleSelection(item, holder.getBindingAdapterPosition());
+            return true;
+        });
+    }
+
+    // Marca o desmarca un element i avisa del nou nombre de seleccionats.
+    private void toggleSelection(T item, int position) {
+        int id = idGetter.getId(item);
+        if (!selectedIds.remove(id)) {
+            selectedIds.add(id);
+        }
+        if (position != RecyclerView.NO_POSITION) {
+            notifyItemChanged(position);
+        }
+        selectionListener.onSelectionChanged(selectedIds.size());
+    }
+
+    // ViewHolder que manté la referència al TextView de cada element de la llista.
+    static class ViewHolder extends RecyclerView.ViewHolder {
+        final TextView text;
+        ViewHolder(View itemView) {
+            super(itemView);
+            text = itemView.findViewById(android.R.id.text1);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.example.regimaps;
+
+import android.view.Choreographer;
+
+import java.util.ArrayDeque;
+
+/**
+ * Executa en el fil principal, repartides entre fotogrames, les operacions de dibuix que s'han
+ * preparat en segon pla (addMarker, addPolygon, setPoints...).
+ *
+ * Afegir milers d'objectes al GoogleMap en un sol bucle bloqueja la interfície durant segons.
+ * Aquí les operacions es posen en una cua i, a cada fotograma del Choreographer, se n'executen
+ * tantes com càpiguen en un pressupost de temps fix; la resta es deixa per al fotograma següent.
+ * Així el mapa continua responent mentre es dibuixa un projecte sencer.
+ *
+ * Tots els mètodes s'han de cridar des del fil principal.
+ */
+public class FrameBudgetRenderer implements Choreographer.FrameCallback {
+
+    // Temps màxim per fotograma dedicat a dibuixar, en nanosegons. És una part petita d'un
+    // fotograma (16 ms a 60 Hz, 8 ms a 120 Hz) perquè el mapa també ha de tenir temps de pintar.
+    static final long FRAME_BUDGET_NANOS = 6_000_000L;
+
+    private final Choreographer choreographer = Choreographer.getInstance();
+    private final ArrayDeque<Runnable> queue = new ArrayDeque<>();
+    private final long budgetNanos;
+
+    // Cert si hi ha un FrameCallback pendent al Choreographer.
+    private boolean scheduled;
+
+    public FrameBudgetRenderer() {
+        this(FRAME_BUDGET_NANOS);
+    }
+
+    public FrameBudgetRenderer(long budgetNanos) {
+        this.budgetNanos = budgetNanos;
+    }
+
+    // Afegeix una operació al final de la cua; s'executarà en un dels fotogrames següents.
+    public void post(Runnable task) {
+        queue.addLast(task);
+        schedule();
+    }
+
+    // Descarta les operacions que encara no s'han executat (les ja executades no es desfan).
+    public void cancelPending() {
+        queue.clear();
+        if (scheduled) {
+            choreographer.removeFrameCallback(this);
+            scheduled = false;
+        }
+    }
+
+    // Nombre d'operacions pendents.
+    public int getPendingCount() {
+        return queue.size();
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        scheduled = false;
+        long start = System.nanoTime();
+        // Sempre s'executa almenys una operació, perquè una de molt lenta no aturi la cua.
+        do {
+            queue.pollFirst().run();
+        } while (!queue.isEmpty() && System.nanoTime() - start < budgetNanos);
+        schedule();
+    }
+
+    private void schedule() {
+        if (!scheduled && !queue.isEmpty()) {
+            choreographer.postFrameCallback(this);
+            scheduled = true;
+        }
+    }
+}
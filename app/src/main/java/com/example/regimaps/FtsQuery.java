@@ -0,0 +1,43 @@
+package com.example.regimaps;
+
+/**
+ * Converteix el text que escriu l'usuari en una expressió MATCH de FTS4.
+ * Cada paraula es busca com a prefix (per cercar mentre s'escriu) i totes han d'aparèixer.
+ * Es descarten els caràcters que no són lletres ni xifres i les paraules es passen a minúscules,
+ * de manera que el text mai no pot formar una expressió FTS invàlida ni fer servir operadors
+ * (cometes, parèntesis, OR, NOT...).
+ */
+public final class FtsQuery {
+
+    private FtsQuery() {}
+
+    /**
+     * Retorna l'expressió MATCH per al text donat, o null si no hi ha cap paraula per cercar.
+     * Per exemple, "Camp  d'en Roca" es converteix en "camp* d* en* roca*".
+     */
+    public static String prefixMatch(String text) {
+        if (text == null) {
+            return null;
+        }
+        StringBuilder query = new StringBuilder();
+        boolean inWord = false;
+        for (int i = 0; i < text.length(); ) {
+            int codePoint = text.codePointAt(i);
+            i += Character.charCount(codePoint);
+            if (Character.isLetterOrDigit(codePoint)) {
+                if (!inWord && query.length() > 0) {
+                    query.append(' ');
+                }
+                query.appendCodePoint(Character.toLowerCase(codePoint));
+                inWord = true;
+            } else if (inWord) {
+                query.append('*');
+                inWord = false;
+            }
+        }
+        if (inWord) {
+            query.append('*');
+        }
+        return query.length() > 0 ? query.toString() : null;
+    }
+}
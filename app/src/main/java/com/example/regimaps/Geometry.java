@@ -0,0 +1,71 @@
+package com.example.regimaps;
+
+import com.google.android.gms.maps.model.LatLng;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Geometria d'un polígon o línia guardada, en format binari compacte (vegeu {@link GeometryCodec}).
+ * Els vèrtexs només es descodifiquen quan es demanen, de manera que carregar una entitat
+ * per mostrar-la en una llista no té cost proporcional al nombre de vèrtexs.
+ */
+public final class Geometry {
+
+    private final byte[] encoded;
+    private double[] coordinates; // Descodificades de manera mandrosa
+
+    private Geometry(byte[] encoded, double[] coordinates) {
+        this.encoded = encoded;
+        this.coordinates = coordinates;
+    }
+
+    // Crea una geometria a partir dels bytes guardats a la base de dades.
+    public static Geometry fromEncoded(byte[] encoded) {
+        return new Geometry(encoded, null);
+    }
+
+    // Crea una geometria a partir d'un array pla [lat0, lng0, lat1, lng1, ...].
+    public static Geometry fromCoordinates(double[] coordinates) {
+        return new Geometry(GeometryCodec.encode(coordinates), coordinates);
+    }
+
+    // Crea una geometria a partir d'una llista de punts del mapa.
+    public static Geometry fromLatLngs(List<LatLng> points) {
+        double[] coords = new double[points.size() * 2];
+        for (int i = 0; i < points.size(); i++) {
+            LatLng point = points.get(i);
+            coords[2 * i] = point.latitude;
+            coords[2 * i + 1] = point.longitude;
+        }
+        return fromCoordinates(coords);
+    }
+
+    // Retorna els bytes codificats, tal com es guarden a la columna BLOB.
+    public byte[] getEncoded() {
+        return encoded;
+    }
+
+    // Retorna les coordenades com a array pla [lat0, lng0, lat1, lng1, ...].
+    public double[] getCoordinates() {
+        if (coordinates == null) {
+            coordinates = GeometryCodec.decode(encoded);
+        }
+        return coordinates;
+    }
+
+    // Nombre de vèrtexs de la geometria.
+    public int size() {
+        return coordinates != null ? coordinates.length / 2 : GeometryCodec.vertexCount(encoded);
+    }
+
+    // Converteix la geometria a una llista de LatLng per dibuixar-la al mapa.
+    public List<LatLng> toLatLngs() {
+        double[] coords = getCoordinates();
+        List<LatLng> points = new ArrayList<>(coords.length / 2);
+        for (int i = 0; i + 1 < coords.length; i += 2) {
+            points.add(new LatLng(coords[i], coords[i + 1]));
+        }
+        return points;
+    }
+}
@@ -0,0 +1,164 @@
+package com.example.regimaps;
+
+import java.util.Arrays;
+
+/**
+ * Codificació binària compacta de geometries (llistes de vèrtexs lat/lng).
+ * Cada coordenada es desa com la diferència respecte el vèrtex anterior, en unitats
+ * de 1e-7 graus (~1 cm), codificada en zigzag + varint. Un vèrtex ocupa normalment
+ * entre 2 i 6 bytes, enlloc dels ~40 caràcters del format de text "lat,lng;".
+ *
+ * Format: [versió (1 byte)] [nombre de vèrtexs (varint)] [dLat, dLng (varint zigzag)]...
+ * Les coordenades es passen com un array pla: [lat0, lng0, lat1, lng1, ...].
+ */
+public final class GeometryCodec {
+
+    // Versió del format binari, per poder-lo evolucionar sense trencar dades antigues.
+    private static final byte VERSION = 1;
+    // Factor d'escala: 1e-7 graus per unitat.
+    private static final double SCALE = 1e7;
+
+    private GeometryCodec() {}
+
+    /**
+     * Codifica un array pla de coordenades [lat0, lng0, lat1, lng1, ...] a bytes.
+     */
+    public static byte[] encode(double[] coords) {
+        int count = coords.length / 2;
+        // Una coordenada fora de rang es desaria saturada (Math.round no avisa): es rebutja abans.
+        for (int i = 0; i < count; i++) {
+            if (!isValidCoordinate(coords[2 * i], coords[2 * i + 1])) {
+                throw new IllegalArgumentException("Coordenada invàlida al vèrtex " + i + ": "
+                        + coords[2 * i] + "," + coords[2 * i + 1]);
+            }
+        }
+        // Cas pitjor: 1 byte de versió, 5 del comptador i 5 per cada coordenada.
+        byte[] out = new byte[6 + coords.length * 5];
+        int pos = 0;
+        out[pos++] = VERSION;
+        pos = writeVarint(out, pos, count);
+
+        long prevLat = 0;
+        long prevLng = 0;
+        for (int i = 0; i < count; i++) {
+            long lat = Math.round(coords[2 * i] * SCALE);
+            long lng = Math.round(coords[2 * i + 1] * SCALE);
+            pos = writeVarint(out, pos, zigzag(lat - prevLat));
+            pos = writeVarint(out, pos, zigzag(lng - prevLng));
+            prevLat = lat;
+            prevLng = lng;
+        }
+        return Arrays.copyOf(out, pos);
+    }
+
+    // Una latitud i una longitud finites dins de ±90 i ±180 graus.
+    public static boolean isValidCoordinate(double lat, double lng) {
+        return lat >= -90 && lat <= 90 && lng >= -180 && lng <= 180;
+    }
+
+    /**
+     * Descodifica una geometria a un array pla de coordenades [lat0, lng0, lat1, lng1, ...].
+     * Retorna un array buit si el blob és null o buit.
+     */
+    public static double[] decode(byte[] blob) {
+        if (blob == null || blob.length == 0) {
+            return new double[0];
+        }
+        if (blob[0] != VERSION) {
+            throw new IllegalArgumentException("Versió de geometria desconeguda: " + blob[0]);
+        }
+        int[] pos = {1};
+        int count = (int) readVarint(blob, pos);
+        double[] coords = new double[count * 2];
+
+        long lat = 0;
+        long lng = 0;
+        for (int i = 0; i < count; i++) {
+            lat += unzigzag(readVarint(blob, pos));
+            lng += unzigzag(readVarint(blob, pos));
+            coords[2 * i] = lat / SCALE;
+            coords[2 * i + 1] = lng / SCALE;
+        }
+        return coords;
+    }
+
+    /**
+     * Retorna el nombre de vèrtexs d'una geometria codificada sense descodificar-la.
+     */
+    public static int vertexCount(byte[] blob) {
+        if (blob == null || blob.length == 0) {
+            return 0;
+        }
+        return (int) readVarint(blob, new int[]{1});
+    }
+
+    /**
+     * Interpreta el format de text antic "lat,lng;lat,lng;..." com a array pla de coordenades.
+     * Els fragments mal formats o fora de rang s'ignoren, igual que feia el codi original.
+     */
+    public static double[] parseLegacyPoints(String text) {
+        if (text == null || text.isEmpty()) {
+            return new double[0];
+        }
+        double[] coords = new double[16];
+        int n = 0;
+        int start = 0;
+        int length = text.length();
+        while (start < length) {
+            int end = text.indexOf(';', start);
+            if (end == -1) end = length;
+            int comma = text.indexOf(',', start);
+            if (comma > start && comma < end) {
+                try {
+                    double lat = Double.parseDouble(text.substring(start, comma));
+                    double lng = Double.parseDouble(text.substring(comma + 1, end));
+                    if (isValidCoordinate(lat, lng)) {
+                        if (n + 2 > coords.length) {
+                            coords = Arrays.copyOf(coords, coords.length * 2);
+                        }
+                        coords[n++] = lat;
+                        coords[n++] = lng;
+                    }
+                } catch (NumberFormatException ignored) {
+                    // Coordenada invàlida: se salta.
+                }
+            }
+            start = end + 1;
+        }
+        return Arrays.copyOf(coords, n);
+    }
+
+    // Codifica un enter amb signe en zigzag perquè els valors petits negatius ocupin poc.
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    // Operació inversa de zigzag.
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    // Escriu un varint (7 bits per byte) i retorna la nova posició.
+    private static int writeVarint(byte[] out, int pos, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out[pos++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out[pos++] = (byte) value;
+        return pos;
+    }
+
+    // Llegeix un varint i avança la posició (pos[0]).
+    private static long readVarint(byte[] in, int[] pos) {
+        long result = 0;
+        int shift = 0;
+        while (true) {
+            byte b = in[pos[0]++];
+            result |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+            shift += 7;
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package com.example.regimaps;
+
+import androidx.room.TypeConverter;
+
+/**
+ * Convertidors de Room per guardar {@link Geometry} com a columna BLOB.
+ */
+public class GeometryConverters {
+
+    // Converteix el BLOB de la base de dades a una geometria.
+    @TypeConverter
+    public static Geometry fromBlob(byte[] blob) {
+        return blob == null ? null : Geometry.fromEncoded(blob);
+    }
+
+    // Converteix una geometria al BLOB que es guarda a la base de dades.
+    @TypeConverter
+    public static byte[] toBlob(Geometry geometry) {
+        return geometry == null ? null : geometry.getEncoded();
+    }
+}
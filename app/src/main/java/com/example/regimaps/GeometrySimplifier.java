@@ -0,0 +1,185 @@
+package com.example.regimaps;
+
+import java.util.Arrays;
+
+/**
+ * Simplificació de línies i polígons per nivells de detall (Douglas-Peucker).
+ * Cada nivell correspon a un rang de zoom del mapa i elimina els vèrtexs que es desvien
+ * menys d'un píxel de pantalla al zoom màxim del rang, de manera que el nombre de vèrtexs
+ * dibuixats depèn dels píxels que ocupa la forma i no de quants vèrtexs té.
+ *
+ * Les distàncies es calculen en projecció Mercator normalitzada (el món fa 1x1), la mateixa
+ * que fa servir el mapa, així que una tolerància en píxels és igual a tot arreu.
+ * Les coordenades es passen com un array pla: [lat0, lng0, lat1, lng1, ...].
+ */
+public final class GeometrySimplifier {
+
+    // Zoom màxim en què es fa servir cada nivell. Per sobre de l'últim es dibuixa la geometria completa.
+    public static final int[] LEVEL_MAX_ZOOM = {8, 12, 15};
+    // Nivell que indica la geometria completa, sense simplificar.
+    public static final int FULL_DETAIL = -1;
+    // Les geometries amb menys vèrtexs es dibuixen sempre completes.
+    public static final int MIN_VERTICES = 64;
+
+    // Error màxim permès, en píxels de pantalla.
+    private static final double PIXEL_TOLERANCE = 1.0;
+    // Mida d'una tessel·la del mapa en píxels.
+    private static final double TILE_SIZE = 256;
+    // Un nivell només es guarda si redueix els vèrtexs del nivell més detallat com a mínim fins a aquesta fracció.
+    private static final double MIN_REDUCTION = 0.75;
+    // Latitud màxima de la projecció Mercator.
+    private static final double MAX_LATITUDE = 85.05112878;
+
+    private GeometrySimplifier() {}
+
+    /**
+     * Retorna el nivell de detall per a un zoom de càmera, o {@link #FULL_DETAIL}.
+     */
+    public static int levelForZoom(float zoom) {
+        for (int level = 0; level < LEVEL_MAX_ZOOM.length; level++) {
+            if (zoom <= LEVEL_MAX_ZOOM[level]) {
+                return level;
+            }
+        }
+        return FULL_DETAIL;
+    }
+
+    /**
+     * Calcula tots els nivells de detall d'una geometria. La posició i del resultat és el nivell i,
+     * o null si aquest nivell no redueix prou els vèrtexs (llavors es fa servir el següent més detallat).
+     * Cada nivell es calcula a partir del més detallat següent, que és molt més petit que l'original.
+     */
+    public static double[][] buildLevels(double[] coords, boolean closed) {
+        double[][] levels = new double[LEVEL_MAX_ZOOM.length][];
+        if (coords.length / 2 < MIN_VERTICES) {
+            return levels;
+        }
+        double[] finer = coords;
+        for (int level = LEVEL_MAX_ZOOM.length - 1; level >= 0; level--) {
+            double[] simplified = simplify(finer, toleranceForZoom(LEVEL_MAX_ZOOM[level]), closed);
+            if (simplified != null && simplified.length <= finer.length * MIN_REDUCTION) {
+                levels[level] = simplified;
+                finer = simplified;
+            }
+        }
+        return levels;
+    }
+
+    // Tolerància en unitats del món Mercator equivalent a PIXEL_TOLERANCE píxels al zoom donat.
+    static double toleranceForZoom(int zoom) {
+        return PIXEL_TOLERANCE / (TILE_SIZE * Math.pow(2, zoom));
+    }
+
+    /**
+     * Simplifica una geometria amb Douglas-Peucker (versió iterativa, sense recursió).
+     * Retorna null si el resultat no tindria prou vèrtexs per ser una línia o un polígon vàlid.
+     */
+    static double[] simplify(double[] coords, double tolerance, boolean closed) {
+        int count = coords.length / 2;
+        int minVertices = closed ? 3 : 2;
+        if (count <= minVertices) {
+            return null;
+        }
+        double[] x = new double[count];
+        double[] y = new double[count];
+        for (int i = 0; i < count; i++) {
+            x[i] = projectX(coords[2 * i + 1]);
+            y[i] = projectY(coords[2 * i]);
+        }
+
+        boolean[] keep = new boolean[count];
+        keep[0] = true;
+        keep[count - 1] = true;
+        int[] stack = new int[64];
+        int top = 0;
+        if (closed) {
+            // En un anell el primer i l'últim vèrtex són veïns; es parteix pel vèrtex més llunyà del primer
+            // perquè el polígon no es col·lapsi en un segment.
+            int far = 1;
+            double farDistance = -1;
+            for (int i = 1; i < count; i++) {
+                double dx = x[i] - x[0];
+                double dy = y[i] - y[0];
+                double distance = dx * dx + dy * dy;
+                if (distance > farDistance) {
+                    farDistance = distance;
+                    far = i;
+                }
+            }
+            keep[far] = true;
+            stack[top++] = 0;
+            stack[top++] = far;
+            stack[top++] = far;
+            stack[top++] = count - 1;
+        } else {
+            stack[top++] = 0;
+            stack[top++] = count - 1;
+        }
+
+        double toleranceSquared = tolerance * tolerance;
+        while (top > 0) {
+            int last = stack[--top];
+            int first = stack[--top];
+            double maxDistance = 0;
+            int index = -1;
+            for (int i = first + 1; i < last; i++) {
+                double distance = segmentDistanceSquared(x[i], y[i], x[first], y[first], x[last], y[last]);
+                if (distance > maxDistance) {
+                    maxDistance = distance;
+                    index = i;
+                }
+            }
+            if (index >= 0 && maxDistance > toleranceSquared) {
+                keep[index] = true;
+                if (top + 4 > stack.length) {
+                    stack = Arrays.copyOf(stack, stack.length * 2);
+                }
+                stack[top++] = first;
+                stack[top++] = index;
+                stack[top++] = index;
+                stack[top++] = last;
+            }
+        }
+
+        int kept = 0;
+        for (boolean k : keep) {
+            if (k) kept++;
+        }
+        if (kept < minVertices) {
+            return null;
+        }
+        double[] result = new double[kept * 2];
+        int pos = 0;
+        for (int i = 0; i < count; i++) {
+            if (keep[i]) {
+                result[pos++] = coords[2 * i];
+                result[pos++] = coords[2 * i + 1];
+            }
+        }
+        return result;
+    }
+
+    // Distància al quadrat del punt (px, py) al segment (ax, ay)-(bx, by).
+    private static double segmentDistanceSquared(double px, double py, double ax, double ay, double bx, double by) {
+        double dx = bx - ax;
+        double dy = by - ay;
+        double lengthSquared = dx * dx + dy * dy;
+        double t = 0;
+        if (lengthSquared > 0) {
+            t = ((px - ax) * dx + (py - ay) * dy) / lengthSquared;
+            t = Math.max(0, Math.min(1, t));
+        }
+        double ex = px - (ax + t * dx);
+        double ey = py - (ay + t * dy);
+        return ex * ex + ey * ey;
+    }
+
+    private static double projectX(double longitude) {
+        return (longitude + 180) / 360;
+    }
+
+    private static double projectY(double latitude) {
+        double lat = Math.toRadians(Math.max(-MAX_LATITUDE, Math.min(MAX_LATITUDE, latitude)));
+        return 0.5 - Math.log(Math.tan(Math.PI / 4 + lat / 2)) / (2 * Math.PI);
+    }
+}
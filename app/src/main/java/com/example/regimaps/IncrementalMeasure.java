@@ -0,0 +1,161 @@
+package com.example.regimaps;
+
+import java.util.Arrays;
+
+/**
+ * Longitud, perímetre i àrea geodèsics d'una forma que s'està editant, mantinguts amb sumes
+ * acumulades. Afegir, moure o treure un vèrtex només recalcula els segments que el toquen,
+ * així que cada canvi té cost constant en lloc de recórrer tota la forma.
+ *
+ * Les fórmules són les mateixes que SphericalUtil (esfera de radi 6371009 m): distància per
+ * haversine i àrea com a suma de triangles polars de cada costat de l'anell.
+ */
+public final class IncrementalMeasure {
+
+    // Radi de la Terra que fa servir SphericalUtil, perquè els resultats coincideixin.
+    static final double EARTH_RADIUS = 6371009;
+
+    private double[] lats = new double[64];
+    // Valors precalculats per vèrtex: longitud en radians i tan((π/2 - lat) / 2) per a l'àrea.
+    private double[] lngRads = new double[64];
+    private double[] tans = new double[64];
+    private int size;
+
+    // Suma de les distàncies (en radians) dels segments de la línia oberta.
+    private double lengthSum;
+    // Suma amb signe dels triangles polars dels costats de l'anell tancat.
+    private double areaSum;
+
+    // Afegeix un vèrtex al final.
+    public void addVertex(double lat, double lng) {
+        ensureCapacity(size + 1);
+        int index = size;
+        set(index, lat, lng);
+        size++;
+        if (index > 0) {
+            lengthSum += segment(index - 1, index);
+            areaSum += edge(index - 1, index) + edge(index, 0) - edge(index - 1, 0);
+        }
+    }
+
+    // Mou el vèrtex 'index' a una nova posició.
+    public void moveVertex(int index, double lat, double lng) {
+        checkIndex(index);
+        int prev = (index - 1 + size) % size;
+        int next = (index + 1) % size;
+        lengthSum -= adjacentSegments(index);
+        areaSum -= edge(prev, index) + edge(index, next);
+        set(index, lat, lng);
+        lengthSum += adjacentSegments(index);
+        areaSum += edge(prev, index) + edge(index, next);
+    }
+
+    // Treu el vèrtex 'index'. Els vèrtexs següents es desplacen una posició.
+    public void removeVertex(int index) {
+        checkIndex(index);
+        int prev = (index - 1 + size) % size;
+        int next = (index + 1) % size;
+        lengthSum -= adjacentSegments(index);
+        if (index > 0 && index < size - 1) {
+            lengthSum += segment(index - 1, index + 1);
+        }
+        areaSum -= edge(prev, index) + edge(index, next);
+        if (size > 2) {
+            areaSum += edge(prev, next);
+        }
+        int moved = size - index - 1;
+        System.arraycopy(lats, index + 1, lats, index, moved);
+        System.arraycopy(lngRads, index + 1, lngRads, index, moved);
+        System.arraycopy(tans, index + 1, tans, index, moved);
+        size--;
+        if (size == 0) {
+            // Es descarta l'error d'arrodoniment acumulat.
+            lengthSum = 0;
+            areaSum = 0;
+        }
+    }
+
+    public void clear() {
+        size = 0;
+        lengthSum = 0;
+        areaSum = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // Longitud de la línia oberta, en metres.
+    public double getLength() {
+        return lengthSum * EARTH_RADIUS;
+    }
+
+    // Perímetre de l'anell tancat (la línia més el costat de tancament), en metres.
+    public double getPerimeter() {
+        if (size < 3) {
+            return getLength();
+        }
+        return (lengthSum + segment(size - 1, 0)) * EARTH_RADIUS;
+    }
+
+    // Àrea del polígon, en metres quadrats.
+    public double getArea() {
+        if (size < 3) {
+            return 0;
+        }
+        return Math.abs(areaSum * EARTH_RADIUS * EARTH_RADIUS);
+    }
+
+    private void set(int index, double lat, double lng) {
+        lats[index] = Math.toRadians(lat);
+        lngRads[index] = Math.toRadians(lng);
+        tans[index] = Math.tan((Math.PI / 2 - lats[index]) / 2);
+    }
+
+    // Suma dels segments de la línia oberta que toquen el vèrtex 'index'.
+    private double adjacentSegments(int index) {
+        double sum = 0;
+        if (index > 0) {
+            sum += segment(index - 1, index);
+        }
+        if (index < size - 1) {
+            sum += segment(index, index + 1);
+        }
+        return sum;
+    }
+
+    // Distància angular (haversine) entre dos vèrtexs.
+    private double segment(int a, int b) {
+        double dLat = lats[a] - lats[b];
+        double dLng = lngRads[a] - lngRads[b];
+        double hav = hav(dLat) + hav(dLng) * Math.cos(lats[a]) * Math.cos(lats[b]);
+        return 2 * Math.asin(Math.sqrt(Math.min(1, hav)));
+    }
+
+    // Àrea amb signe del triangle polar del costat 'from' -> 'to'.
+    private double edge(int from, int to) {
+        double deltaLng = lngRads[to] - lngRads[from];
+        double t = tans[to] * tans[from];
+        return 2 * Math.atan2(t * Math.sin(deltaLng), 1 + t * Math.cos(deltaLng));
+    }
+
+    private static double hav(double x) {
+        double sin = Math.sin(x * 0.5);
+        return sin * sin;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Vèrtex " + index + " de " + size);
+        }
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > lats.length) {
+            int newLength = Math.max(capacity, lats.length * 2);
+            lats = Arrays.copyOf(lats, newLength);
+            lngRads = Arrays.copyOf(lngRads, newLength);
+            tans = Arrays.copyOf(tans, newLength);
+        }
+    }
+}
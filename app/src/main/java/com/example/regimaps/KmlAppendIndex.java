@@ -0,0 +1,323 @@
+package com.example.regimaps;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Índex auxiliar ("sidecar") d'un fitxer KML exportat: guarda un hash de 64 bits del text de
+ * cada placemark, en un fitxer "<nom>.kml.idx" al costat del KML. Permet saber si un element ja
+ * hi és sense llegir el KML, i afegir-ne de nous escrivint només els hashes nous al final.
+ *
+ * Format: [MAGIC (8 bytes)] [mida del KML quan es va desar (8 bytes)] [hash (8 bytes)]...
+ * Si la mida guardada no coincideix amb la del KML (fitxer modificat per una altra eina),
+ * l'índex es reconstrueix llegint el KML un sol cop.
+ */
+public class KmlAppendIndex {
+
+    private static final long MAGIC = 0x4B4D4C4944583031L; // "KMLIDX01"
+    private static final int HEADER_SIZE = 16;
+    private static final String SIDECAR_SUFFIX = ".idx";
+
+    private final File sidecar;
+    private final LongSet hashes = new LongSet();
+    // Hashes afegits des de l'últim cop que es va desar, per escriure només la diferència.
+    private long[] pending = new long[64];
+    private int pendingCount;
+    // Si el sidecar del disc és vàlid i només cal afegir-hi els hashes nous.
+    private boolean sidecarValid;
+
+    private KmlAppendIndex(File sidecar) {
+        this.sidecar = sidecar;
+    }
+
+    // Retorna el fitxer sidecar associat a un KML.
+    public static File sidecarFor(File kmlFile) {
+        return new File(kmlFile.getPath() + SIDECAR_SUFFIX);
+    }
+
+    // Crea un índex buit per a un fitxer KML nou.
+    public static KmlAppendIndex empty(File kmlFile) {
+        return new KmlAppendIndex(sidecarFor(kmlFile));
+    }
+
+    /**
+     * Carrega l'índex d'un KML existent. Si el sidecar no existeix o no correspon al KML,
+     * el reconstrueix llegint els placemarks del KML en streaming.
+     */
+    public static KmlAppendIndex load(File kmlFile) throws IOException {
+        KmlAppendIndex index = new KmlAppendIndex(sidecarFor(kmlFile));
+        if (!kmlFile.exists()) {
+            return index;
+        }
+        if (index.sidecar.exists() && index.readSidecar(kmlFile.length())) {
+            index.sidecarValid = true;
+            return index;
+        }
+        index.hashes.clear();
+        index.rebuildFrom(kmlFile);
+        return index;
+    }
+
+    /**
+     * Afegeix un hash. Retorna false si ja hi era (és a dir, el placemark és un duplicat).
+     */
+    public boolean add(long hash) {
+        if (!hashes.add(hash)) {
+            return false;
+        }
+        if (pendingCount == pending.length) {
+            long[] grown = new long[pending.length * 2];
+            System.arraycopy(pending, 0, grown, 0, pendingCount);
+            pending = grown;
+        }
+        pending[pendingCount++] = hash;
+        return true;
+    }
+
+    public boolean contains(long hash) {
+        return hashes.contains(hash);
+    }
+
+    public int size() {
+        return hashes.size();
+    }
+
+    /**
+     * Desa l'índex indicant la mida actual del KML. Si el sidecar ja era vàlid, només
+     * s'actualitza la capçalera i s'hi afegeixen els hashes nous.
+     */
+    public void save(long kmlLength) throws IOException {
+        if (sidecarValid) {
+            try (RandomAccessFile raf = new RandomAccessFile(sidecar, "rw")) {
+                raf.seek(8);
+                raf.writeLong(kmlLength);
+                raf.seek(raf.length());
+                byte[] buffer = new byte[pendingCount * 8];
+                for (int i = 0; i < pendingCount; i++) {
+                    putLong(buffer, i * 8, pending[i]);
+                }
+                raf.write(buffer);
+            }
+        } else {
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(sidecar, false)))) {
+                out.writeLong(MAGIC);
+                out.writeLong(kmlLength);
+                LongSet.Cursor cursor = hashes.cursor();
+                while (cursor.next()) {
+                    out.writeLong(cursor.value());
+                }
+            }
+            sidecarValid = true;
+        }
+        pendingCount = 0;
+    }
+
+    /**
+     * Hash FNV-1a de 64 bits del text d'un placemark.
+     */
+    public static long hash(CharSequence text) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < text.length(); i++) {
+            hash ^= text.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /**
+     * Busca la posició (en bytes) de l'última etiqueta de tancament "</Document>" del KML,
+     * llegint només el final del fitxer. Retorna -1 si no n'hi ha.
+     */
+    public static long findClosingTagOffset(RandomAccessFile raf) throws IOException {
+        byte[] tag = "</Document>".getBytes(StandardCharsets.US_ASCII);
+        long length = raf.length();
+        int window = 4096;
+        long end = length;
+        while (end > 0) {
+            long start = Math.max(0, end - window);
+            // Els blocs se solapen per no perdre una etiqueta partida entre dos blocs.
+            int size = (int) (Math.min(length, end + tag.length - 1) - start);
+            byte[] buffer = new byte[size];
+            raf.seek(start);
+            raf.readFully(buffer);
+            for (int i = size - tag.length; i >= 0; i--) {
+                if (matches(buffer, i, tag)) {
+                    return start + i;
+                }
+            }
+            end = start;
+        }
+        return -1;
+    }
+
+    // Llegeix el sidecar. Retorna false si no és vàlid per a la mida actual del KML.
+    private boolean readSidecar(long kmlLength) throws IOException {
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(sidecar)))) {
+            if (in.readLong() != MAGIC || in.readLong() != kmlLength) {
+                return false;
+            }
+            long count = (sidecar.length() - HEADER_SIZE) / 8;
+            for (long i = 0; i < count; i++) {
+                hashes.add(in.readLong());
+            }
+            return true;
+        } catch (EOFException e) {
+            return false;
+        }
+    }
+
+    // Reconstrueix els hashes llegint el KML línia a línia; només es guarda un placemark alhora.
+    private void rebuildFrom(File kmlFile) throws IOException {
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(kmlFile), StandardCharsets.UTF_8))) {
+            StringBuilder placemark = null;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (placemark == null && line.startsWith("<Placemark>")) {
+                    placemark = new StringBuilder();
+                }
+                if (placemark != null) {
+                    placemark.append(line).append('\n');
+                    if (line.endsWith("</Placemark>")) {
+                        add(hash(placemark));
+                        placemark = null;
+                    }
+                }
+            }
+        }
+        // Tots els hashes s'han de reescriure: el sidecar antic no és vàlid.
+        pendingCount = 0;
+        sidecarValid = false;
+    }
+
+    private static boolean matches(byte[] buffer, int offset, byte[] tag) {
+        for (int j = 0; j < tag.length; j++) {
+            if (buffer[offset + j] != tag[j]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void putLong(byte[] buffer, int offset, long value) {
+        for (int i = 7; i >= 0; i--) {
+            buffer[offset + i] = (byte) value;
+            value >>>= 8;
+        }
+    }
+
+    /**
+     * Conjunt de longs amb adreçament obert, sense objectes per element.
+     */
+    static final class LongSet {
+        private static final long EMPTY = 0L;
+        private long[] table = new long[1024];
+        private int size;
+        private boolean hasZero; // El 0 marca les cel·les buides, així que es guarda a part.
+
+        boolean add(long value) {
+            if (value == EMPTY) {
+                if (hasZero) return false;
+                hasZero = true;
+                size++;
+                return true;
+            }
+            if ((size + 1) * 2 > table.length) {
+                grow();
+            }
+            if (!insert(table, value)) {
+                return false;
+            }
+            size++;
+            return true;
+        }
+
+        boolean contains(long value) {
+            if (value == EMPTY) return hasZero;
+            int mask = table.length - 1;
+            int i = mix(value) & mask;
+            while (table[i] != EMPTY) {
+                if (table[i] == value) return true;
+                i = (i + 1) & mask;
+            }
+            return false;
+        }
+
+        int size() {
+            return size;
+        }
+
+        void clear() {
+            table = new long[1024];
+            size = 0;
+            hasZero = false;
+        }
+
+        Cursor cursor() {
+            return new Cursor();
+        }
+
+        private void grow() {
+            long[] grown = new long[table.length * 2];
+            for (long value : table) {
+                if (value != EMPTY) insert(grown, value);
+            }
+            table = grown;
+        }
+
+        private static boolean insert(long[] table, long value) {
+            int mask = table.length - 1;
+            int i = mix(value) & mask;
+            while (table[i] != EMPTY) {
+                if (table[i] == value) return false;
+                i = (i + 1) & mask;
+            }
+            table[i] = value;
+            return true;
+        }
+
+        private static int mix(long value) {
+            long h = value * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32));
+        }
+
+        // Recorregut dels valors del conjunt.
+        final class Cursor {
+            private int position = -1;
+            private boolean zeroPending = hasZero;
+            private long current;
+
+            boolean next() {
+                if (zeroPending) {
+                    zeroPending = false;
+                    current = EMPTY;
+                    return true;
+                }
+                while (++position < table.length) {
+                    if (table[position] != EMPTY) {
+                        current = table[position];
+                        return true;
+                    }
+                }
+                return false;
+            }
+
+            long value() {
+                return current;
+            }
+        }
+    }
+}
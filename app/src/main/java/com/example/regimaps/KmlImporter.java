@@ -0,0 +1,353 @@
+package com.example.regimaps;
+
+import android.util.Xml;
+
+import com.google.android.gms.maps.model.LatLng;
+import com.google.maps.android.SphericalUtil;
+
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.text.DateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Importa fitxers KML o KMZ a la base de dades.
+ * El document es llegeix en streaming amb XmlPullParser, placemark a placemark, i els elements
+ * es desen per lots dins de transaccions de Room. La memòria només depèn de la mida del lot,
+ * no de la del fitxer.
+ *
+ * Els punts es converteixen en SavedPointEntity i les línies i polígons en SavedPolygonEntity
+ * (amb la distància o l'àrea calculades). Les MultiGeometry generen un element per cada geometria
+ * i els forats dels polígons (innerBoundaryIs) s'ignoren.
+ */
+public class KmlImporter {
+
+    // Nombre d'elements que es desen a cada transacció.
+    public static final int DEFAULT_BATCH_SIZE = 500;
+
+    private static final String DATE_PREFIX = "Data: ";
+    private static final String CODE_SEPARATOR = ", Codi: ";
+
+    // Rep el nombre de placemarks processats fins ara.
+    public interface ProgressListener {
+        void onProgress(int placemarks);
+    }
+
+    /**
+     * Resum d'una importació.
+     */
+    public static class Result {
+        public int points;
+        public int shapes;
+        // Geometries sense prou vèrtexs o amb coordenades no vàlides.
+        public int skipped;
+        public boolean cancelled;
+    }
+
+    private final AppDatabase db;
+    private final int batchSize;
+    private final String importDate;
+
+    private final List<SavedPointEntity> pointBatch = new ArrayList<>();
+    private final List<SavedPolygonEntity> shapeBatch = new ArrayList<>();
+    private Result result;
+    private int placemarks;
+
+    // Buffer reutilitzat per llegir coordenades [lat0, lng0, lat1, lng1, ...].
+    private double[] coordBuffer = new double[256];
+
+    public KmlImporter(AppDatabase db) {
+        this(db, DEFAULT_BATCH_SIZE);
+    }
+
+    public KmlImporter(AppDatabase db, int batchSize) {
+        this.db = db;
+        this.batchSize = batchSize;
+        this.importDate = DateFormat.getDateInstance().format(new Date());
+    }
+
+    /**
+     * Importa un fitxer KML o KMZ (es detecta pel contingut, no per l'extensió).
+     * S'ha de cridar en segon pla. Els lots ja desats es mantenen si s'atura a mitges.
+     */
+    public Result importFrom(InputStream input, ProgressListener progress, AtomicBoolean cancelled)
+            throws IOException, XmlPullParserException {
+        result = new Result();
+        placemarks = 0;
+        pointBatch.clear();
+        shapeBatch.clear();
+
+        BufferedInputStream in = new BufferedInputStream(input);
+        if (isZip(in)) {
+            ZipInputStream zip = new ZipInputStream(in);
+            ZipEntry entry;
+            while ((entry = zip.getNextEntry()) != null) {
+                // El document principal d'un KMZ és el primer fitxer .kml de l'arxiu.
+                if (!entry.isDirectory() && entry.getName().toLowerCase(Locale.ROOT).endsWith(".kml")) {
+                    parse(zip, progress, cancelled);
+                    return result;
+                }
+            }
+            throw new IOException("El fitxer KMZ no conté cap document KML");
+        }
+        parse(in, progress, cancelled);
+        return result;
+    }
+
+    // Comprova la signatura "PK" dels fitxers ZIP sense consumir-la.
+    private static boolean isZip(BufferedInputStream in) throws IOException {
+        in.mark(2);
+        int first = in.read();
+        int second = in.read();
+        in.reset();
+        return first == 'P' && second == 'K';
+    }
+
+    private void parse(InputStream in, ProgressListener progress, AtomicBoolean cancelled)
+            throws IOException, XmlPullParserException {
+        XmlPullParser parser = Xml.newPullParser();
+        parser.setFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES, true);
+        parser.setInput(in, null);
+
+        boolean inPlacemark = false;
+        boolean inInnerBoundary = false;
+        String name = null;
+        String description = null;
+        String geometryType = null;
+        List<String> types = new ArrayList<>();
+        List<double[]> geometries = new ArrayList<>();
+
+        int event = parser.getEventType();
+        while (event != XmlPullParser.END_DOCUMENT) {
+            if (cancelled.get()) {
+                result.cancelled = true;
+                break;
+            }
+            if (event == XmlPullParser.START_TAG) {
+                switch (parser.getName()) {
+                    case "Placemark":
+                        inPlacemark = true;
+                        name = null;
+                        description = null;
+                        types.clear();
+                        geometries.clear();
+                        break;
+                    case "name":
+                        if (inPlacemark && geometryType == null) {
+                            name = readText(parser).trim();
+                        }
+                        break;
+                    case "description":
+                        if (inPlacemark && geometryType == null) {
+                            description = readText(parser).trim();
+                        }
+                        break;
+                    case "Point":
+                    case "LineString":
+                    case "Polygon":
+                        geometryType = parser.getName();
+                        break;
+                    case "LinearRing":
+                        // Un LinearRing fora d'un Polygon es tracta com un polígon.
+                        if (geometryType == null) {
+                            geometryType = "Polygon";
+                        }
+                        break;
+                    case "innerBoundaryIs":
+                        inInnerBoundary = true;
+                        break;
+                    case "coordinates":
+                        if (inPlacemark && geometryType != null && !inInnerBoundary) {
+                            double[] coords = parseCoordinates(readText(parser));
+                            if (coords == null) {
+                                result.skipped++;
+                            } else {
+                                types.add(geometryType);
+                                geometries.add(coords);
+                            }
+                        }
+                        break;
+                }
+            } else if (event == XmlPullParser.END_TAG) {
+                switch (parser.getName()) {
+                    case "Placemark":
+                        inPlacemark = false;
+                        for (int i = 0; i < geometries.size(); i++) {
+                            addGeometry(name, description, types.get(i), geometries.get(i));
+                        }
+                        placemarks++;
+                        if (pointBatch.size() + shapeBatch.size() >= batchSize) {
+                            flush();
+                            progress.onProgress(placemarks);
+                        }
+                        break;
+                    case "Point":
+                    case "LineString":
+                    case "Polygon":
+                        geometryType = null;
+                        break;
+                    case "innerBoundaryIs":
+                        inInnerBoundary = false;
+                        break;
+                }
+            }
+            event = parser.next();
+        }
+        flush();
+        progress.onProgress(placemarks);
+    }
+
+    // Converteix una geometria llegida en una entitat i l'afegeix al lot corresponent.
+    private void addGeometry(String name, String description, String type, double[] coords) {
+        int vertices = coords.length / 2;
+        if ("Point".equals(type)) {
+            SavedPointEntity point = new SavedPointEntity(coords[0], coords[1],
+                    name != null && !name.isEmpty() ? name : "Punt importat", importDate, "", "");
+            readDateAndCode(point, description);
+            pointBatch.add(point);
+            result.points++;
+            return;
+        }
+
+        boolean polygon = "Polygon".equals(type);
+        if (polygon && vertices > 1 && coords[0] == coords[coords.length - 2]
+                && coords[1] == coords[coords.length - 1]) {
+            // Els anells KML repeteixen el primer vèrtex al final; a la base de dades no es guarda.
+            coords = Arrays.copyOf(coords, coords.length - 2);
+            vertices--;
+        }
+        if (vertices < (polygon ? 3 : 2)) {
+            result.skipped++;
+            return;
+        }
+
+        SavedPolygonEntity shape = new SavedPolygonEntity();
+        shape.setGeometry(Geometry.fromCoordinates(coords));
+        shape.setTipus(polygon ? "poligon" : "linia");
+        List<LatLng> latLngs = shape.geometry.toLatLngs();
+        if (polygon) {
+            shape.setArea(SphericalUtil.computeArea(latLngs));
+        } else {
+            shape.setDistancia(SphericalUtil.computeLength(latLngs));
+        }
+        shape.name = name != null && !name.isEmpty() ? name : shape.tipus;
+        shapeBatch.add(shape);
+        result.shapes++;
+    }
+
+    /**
+     * Recupera la data i el codi d'un punt exportat per l'aplicació ("Data: ..., Codi: ...").
+     * Si la descripció té un altre format, es guarda com a codi.
+     */
+    private static void readDateAndCode(SavedPointEntity point, String description) {
+        if (description == null || description.isEmpty()) {
+            return;
+        }
+        int separator = description.indexOf(CODE_SEPARATOR);
+        if (description.startsWith(DATE_PREFIX) && separator >= 0) {
+            point.date = description.substring(DATE_PREFIX.length(), separator);
+            point.code = description.substring(separator + CODE_SEPARATOR.length());
+        } else {
+            point.code = description;
+        }
+    }
+
+    /**
+     * Llegeix el text d'un element, incloent-hi el dels elements fills sense les etiquetes (per exemple,
+     * una descripció amb HTML que no va dins de CDATA). A diferència de nextText, no falla si l'element
+     * té fills. En acabar, el parser és a l'etiqueta de tancament de l'element.
+     */
+    private static String readText(XmlPullParser parser) throws XmlPullParserException, IOException {
+        StringBuilder text = new StringBuilder();
+        int depth = 1;
+        while (depth > 0) {
+            switch (parser.next()) {
+                case XmlPullParser.TEXT:
+                    text.append(parser.getText());
+                    break;
+                case XmlPullParser.START_TAG:
+                    depth++;
+                    break;
+                case XmlPullParser.END_TAG:
+                    depth--;
+                    break;
+                case XmlPullParser.END_DOCUMENT:
+                    throw new XmlPullParserException("El document s'acaba dins d'un element", parser, null);
+            }
+        }
+        return text.toString();
+    }
+
+    /**
+     * Llegeix una llista de tuples "lng,lat[,alt]" separades per espais.
+     * Retorna [lat0, lng0, lat1, lng1, ...] o null si alguna coordenada no és vàlida.
+     */
+    private double[] parseCoordinates(String text) {
+        int count = 0;
+        int length = text.length();
+        int i = 0;
+        while (i < length) {
+            while (i < length && Character.isWhitespace(text.charAt(i))) {
+                i++;
+            }
+            if (i >= length) {
+                break;
+            }
+            int start = i;
+            while (i < length && !Character.isWhitespace(text.charAt(i))) {
+                i++;
+            }
+            int firstComma = text.indexOf(',', start);
+            if (firstComma < 0 || firstComma >= i) {
+                return null;
+            }
+            int secondComma = text.indexOf(',', firstComma + 1);
+            int latEnd = secondComma >= 0 && secondComma < i ? secondComma : i;
+            double lng;
+            double lat;
+            try {
+                lng = Double.parseDouble(text.substring(start, firstComma));
+                lat = Double.parseDouble(text.substring(firstComma + 1, latEnd));
+            } catch (NumberFormatException e) {
+                return null;
+            }
+            if (!GeometryCodec.isValidCoordinate(lat, lng)) {
+                return null;
+            }
+            if (count + 2 > coordBuffer.length) {
+                coordBuffer = Arrays.copyOf(coordBuffer, coordBuffer.length * 2);
+            }
+            coordBuffer[count++] = lat;
+            coordBuffer[count++] = lng;
+        }
+        return count == 0 ? null : Arrays.copyOf(coordBuffer, count);
+    }
+
+    // Desa els lots pendents en una sola transacció.
+    private void flush() {
+        if (pointBatch.isEmpty() && shapeBatch.isEmpty()) {
+            return;
+        }
+        db.runInTransaction(() -> {
+            if (!pointBatch.isEmpty()) {
+                db.savedPointDao().insertAll(pointBatch);
+            }
+            if (!shapeBatch.isEmpty()) {
+                SpatialIndex.insertPolygons(db, shapeBatch);
+            }
+        });
+        pointBatch.clear();
+        shapeBatch.clear();
+    }
+}
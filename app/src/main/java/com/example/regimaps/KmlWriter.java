@@ -0,0 +1,110 @@
+package com.example.regimaps;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Escriptor de documents KML en streaming: cada placemark s'escriu directament al Writer
+ * (normalment un BufferedWriter UTF-8 sobre el fitxer), sense construir el document sencer
+ * en memòria. El format de sortida és el mateix que generava l'exportació original.
+ */
+public class KmlWriter implements Closeable {
+
+    public static final String XML_HEADER = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n";
+    public static final String CLOSING_TAGS = "</Document>\n</kml>\n";
+
+    private final Writer out;
+
+    public KmlWriter(Writer out) {
+        this.out = out;
+    }
+
+    // Escriu la capçalera del document amb el seu nom.
+    public void writeHeader(String documentName) throws IOException {
+        out.write(XML_HEADER);
+        out.write("<kml xmlns=\"http://www.opengis.net/kml/2.2\">\n");
+        out.write("<Document>\n");
+        out.write("<name>");
+        writeEscaped(documentName);
+        out.write("</name>\n");
+    }
+
+    // Escriu un placemark de tipus punt.
+    public void writePoint(String name, String description, double latitude, double longitude) throws IOException {
+        out.write("<Placemark>\n");
+        writeNameAndDescription(name, description);
+        out.write("<Point>\n");
+        out.write("<coordinates>");
+        out.write(Double.toString(longitude));
+        out.write(",");
+        out.write(Double.toString(latitude));
+        out.write("</coordinates>\n");
+        out.write("</Point>\n");
+        out.write("</Placemark>\n");
+    }
+
+    /**
+     * Escriu un placemark de tipus polígon (si polygon és true) o línia.
+     * Les coordenades són un array pla [lat0, lng0, lat1, lng1, ...].
+     */
+    public void writeShape(String name, String description, boolean polygon, double[] coords) throws IOException {
+        out.write("<Placemark>\n");
+        writeNameAndDescription(name, description);
+        out.write(polygon ? "<Polygon><outerBoundaryIs><LinearRing><coordinates>\n" : "<LineString><coordinates>\n");
+        for (int i = 0; i + 1 < coords.length; i += 2) {
+            out.write(Double.toString(coords[i + 1]));
+            out.write(",");
+            out.write(Double.toString(coords[i]));
+            out.write(" ");
+        }
+        out.write(polygon ? "\n</coordinates></LinearRing></outerBoundaryIs></Polygon>\n" : "\n</coordinates></LineString>\n");
+        out.write("</Placemark>\n");
+    }
+
+    // Tanca els elements Document i kml.
+    public void writeFooter() throws IOException {
+        out.write(CLOSING_TAGS);
+    }
+
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+
+    private void writeNameAndDescription(String name, String description) throws IOException {
+        out.write("<name>");
+        writeEscaped(name);
+        out.write("</name>\n");
+        out.write("<description>");
+        writeEscaped(description);
+        out.write("</description>\n");
+    }
+
+    // Escriu un text escapant els caràcters reservats d'XML.
+    private void writeEscaped(String text) throws IOException {
+        if (text == null) {
+            out.write("null");
+            return;
+        }
+        int start = 0;
+        for (int i = 0; i < text.length(); i++) {
+            String replacement;
+            switch (text.charAt(i)) {
+                case '&': replacement = "&amp;"; break;
+                case '<': replacement = "&lt;"; break;
+                case '>': replacement = "&gt;"; break;
+                case '"': replacement = "&quot;"; break;
+                default: continue;
+            }
+            out.write(text, start, i - start);
+            out.write(replacement);
+            start = i + 1;
+        }
+        out.write(text, start, text.length() - start);
+    }
+}
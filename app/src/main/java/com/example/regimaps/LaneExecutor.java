@@ -0,0 +1,129 @@
+package com.example.regimaps;
+
+import java.util.ArrayDeque;
+import java.util.Locale;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Carril de treball en segon pla amb un nombre fix de fils, compartit per tota l'aplicació
+ * (vegeu {@link AppExecutors}). Els fils s'aturen quan estan inactius, així que un carril sense
+ * feina no ocupa res.
+ *
+ * Mesura la cua: quantes tasques esperen, quantes s'estan executant i quant de temps ha esperat
+ * cada tasca des que s'ha enviat fins que ha començat (mitjana i màxim).
+ */
+public class LaneExecutor implements Executor {
+
+    // Temps que un fil inactiu espera feina abans d'aturar-se.
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    private final String name;
+    private final ThreadPoolExecutor pool;
+
+    // Mesures de l'espera a la cua, en nanosegons.
+    private final AtomicLong started = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+
+    public LaneExecutor(String name, int threads, ThreadFactory threadFactory) {
+        this.name = name;
+        this.pool = new ThreadPoolExecutor(threads, threads, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), threadFactory);
+        pool.allowCoreThreadTimeOut(true);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        final long enqueued = System.nanoTime();
+        pool.execute(() -> {
+            recordWait(System.nanoTime() - enqueued);
+            task.run();
+        });
+    }
+
+    /**
+     * Retorna un executor que fa les tasques d'una en una i en ordre, sobre els fils d'aquest
+     * carril. Serveix per a feines que no es poden encavalcar (per exemple, escriptures seqüencials)
+     * sense reservar-los un fil propi.
+     */
+    public Executor newSerialExecutor() {
+        return new SerialExecutor();
+    }
+
+    // Tasques enviades que encara no han començat.
+    public int getQueueDepth() {
+        return pool.getQueue().size();
+    }
+
+    // Tasques que s'estan executant ara mateix.
+    public int getActiveCount() {
+        return pool.getActiveCount();
+    }
+
+    // Tasques que ja han començat des de l'inici de l'aplicació.
+    public long getStartedCount() {
+        return started.get();
+    }
+
+    // Espera mitjana a la cua, en mil·lisegons.
+    public double getAverageWaitMillis() {
+        long count = started.get();
+        return count == 0 ? 0 : totalWaitNanos.get() / (count * 1e6);
+    }
+
+    // Espera més llarga a la cua, en mil·lisegons.
+    public double getMaxWaitMillis() {
+        return maxWaitNanos.get() / 1e6;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "%s: %d en cua, %d actives, %d iniciades, espera %.1f ms (màx. %.1f ms)",
+                name, getQueueDepth(), getActiveCount(), getStartedCount(), getAverageWaitMillis(), getMaxWaitMillis());
+    }
+
+    private void recordWait(long waitNanos) {
+        started.incrementAndGet();
+        totalWaitNanos.addAndGet(waitNanos);
+        long max;
+        do {
+            max = maxWaitNanos.get();
+        } while (waitNanos > max && !maxWaitNanos.compareAndSet(max, waitNanos));
+    }
+
+    // Encadena les tasques: cada una envia la següent al carril quan acaba.
+    private class SerialExecutor implements Executor {
+        private final ArrayDeque<Runnable> tasks = new ArrayDeque<>();
+        private Runnable active;
+
+        @Override
+        public synchronized void execute(Runnable task) {
+            tasks.offer(() -> {
+                try {
+                    task.run();
+                } finally {
+                    scheduleNext();
+                }
+            });
+            if (active == null) {
+                scheduleNext();
+            }
+        }
+
+        private synchronized void scheduleNext() {
+            active = tasks.poll();
+            if (active != null) {
+                LaneExecutor.this.execute(active);
+            }
+        }
+    }
+}
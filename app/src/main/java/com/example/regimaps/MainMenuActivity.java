@@ -1,21 +1,44 @@
 package com.example.regimaps;
 
+import android.app.AlertDialog;
 import android.content.Intent;
+import android.content.pm.ApplicationInfo;
+import android.net.Uri;
 import android.os.Bundle;
 import android.util.Log;
 import android.view.View;
+import android.widget.ProgressBar;
+import android.widget.Toast;
+import androidx.activity.result.ActivityResultLauncher;
+import androidx.activity.result.contract.ActivityResultContracts;
 import androidx.appcompat.app.AppCompatActivity;
 import com.example.regimaps.databinding.ActivityMainMenuBinding;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicBoolean;
+
 /**
  * Activitat principal del menú de l'aplicació.
- * Mostra tres opcions: veure punts guardats, veure polígons i accedir al mapa.
+ * Mostra les opcions: veure punts guardats, veure polígons, accedir al mapa i importar fitxers KML/KMZ.
  */
 public class MainMenuActivity extends AppCompatActivity {
 
     // View binding per accedir als elements de la interfície de manera segura.
     private ActivityMainMenuBinding binding;
 
+    // Importació en curs i el seu diàleg de progrés, per aturar-la si es destrueix l'activitat.
+    private AtomicBoolean importCancelled;
+    private AlertDialog importDialog;
+
+    // Selector de documents per triar el fitxer KML o KMZ a importar.
+    private final ActivityResultLauncher<String[]> importLauncher =
+            registerForActivityResult(new ActivityResultContracts.OpenDocument(), uri -> {
+                if (uri != null) {
+                    importKml(uri);
+                }
+            });
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -43,7 +66,87 @@ public class MainMenuActivity extends AppCompatActivity {
         binding.btnGoToMap.setOnClickListener(v -> {
             Log.d("MainMenuActivity", "Obrint mapa");
             Intent intent = new Intent(MainMenuActivity.this, MapsActivity.class);
+            intent.putExtra("show_all", true); // Mostra tots els elements guardats de l'àrea visible
             startActivity(intent);
         });
+
+        // Estadístiques de les consultes a la base de dades, només a les versions depurables.
+        if ((getApplicationInfo().flags & ApplicationInfo.FLAG_DEBUGGABLE) != 0) {
+            binding.btnQueryStats.setVisibility(View.VISIBLE);
+            binding.btnQueryStats.setOnClickListener(v ->
+                    startActivity(new Intent(MainMenuActivity.this, QueryStatsActivity.class)));
+        }
+
+        // Botó per importar punts, línies i polígons d'un fitxer KML o KMZ.
+        binding.btnImportKml.setOnClickListener(v -> importLauncher.launch(new String[]{
+                "application/vnd.google-earth.kml+xml",
+                "application/vnd.google-earth.kmz",
+                "application/xml",
+                "text/xml",
+                "application/zip",
+                "application/octet-stream"
+        }));
+    }
+
+    /**
+     * Atura la importació en curs (els elements ja desats es conserven) i tanca el seu diàleg,
+     * perquè cap resultat pendent no arribi a una activitat destruïda.
+     */
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        if (importCancelled != null) {
+            importCancelled.set(true);
+        }
+        if (importDialog != null) {
+            importDialog.dismiss();
+        }
+        AppExecutors.get().main().cancel(this);
+    }
+
+    /**
+     * Importa el fitxer seleccionat en segon pla, mostrant el progrés en un diàleg que permet
+     * cancel·lar la importació. Els elements ja desats abans de cancel·lar es conserven.
+     */
+    private void importKml(Uri uri) {
+        ProgressBar progressBar = new ProgressBar(this, null, android.R.attr.progressBarStyleHorizontal);
+        progressBar.setIndeterminate(true);
+        int padding = (int) (24 * getResources().getDisplayMetrics().density);
+        progressBar.setPadding(padding, padding, padding, padding);
+        AtomicBoolean cancelled = new AtomicBoolean(false);
+        AlertDialog progressDialog = new AlertDialog.Builder(this)
+                .setTitle("Important KML")
+                .setMessage("0 elements llegits")
+                .setView(progressBar)
+                .setCancelable(false)
+                .setNegativeButton("Cancel·la", (dialog, which) -> cancelled.set(true))
+                .show();
+        importCancelled = cancelled;
+        importDialog = progressDialog;
+
+        KmlImporter importer = new KmlImporter(AppDatabase.getDatabase(this));
+        AppExecutors.get().io().execute(() -> {
+            try (InputStream in = getContentResolver().openInputStream(uri)) {
+                if (in == null) {
+                    throw new IOException("No s'ha pogut obrir el fitxer");
+                }
+                KmlImporter.Result result = importer.importFrom(in,
+                        placemarks -> AppExecutors.get().main().post(this, () -> progressDialog.setMessage(placemarks + " elements llegits")),
+                        cancelled);
+                String summary = (result.cancelled ? "Importació cancel·lada. " : "Importats ")
+                        + result.points + " punts i " + result.shapes + " línies/polígons"
+                        + (result.skipped > 0 ? " (" + result.skipped + " geometries no vàlides)" : "");
+                AppExecutors.get().main().post(this, () -> {
+                    progressDialog.dismiss();
+                    Toast.makeText(this, summary, Toast.LENGTH_LONG).show();
+                });
+            } catch (Exception e) {
+                Log.e("ImportKML", "Error important: " + e.getMessage(), e);
+                AppExecutors.get().main().post(this, () -> {
+                    progressDialog.dismiss();
+                    Toast.makeText(this, "Error important: " + e.getMessage(), Toast.LENGTH_LONG).show();
+                });
+            }
+        });
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,52 @@
+package com.example.regimaps;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import androidx.lifecycle.Lifecycle;
+import androidx.lifecycle.LifecycleOwner;
+
+/**
+ * Envia feina al fil principal lligada al cicle de vida d'una activitat o servei.
+ *
+ * Substitueix runOnUiThread per als resultats de les tasques en segon pla: si quan arriba el
+ * torn de la tasca el propietari ja s'ha destruït, la tasca no s'executa. Si la tasca porta un
+ * recurs que algú ha de tancar, es pot passar una acció 'onDropped' que s'executa en lloc seu.
+ * Les activitats criden {@link #cancel} a onDestroy per treure de la cua la resta de tasques.
+ */
+public class MainThreadDispatcher {
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
+
+    // Executa la tasca al fil principal, darrere de la feina que ja hi ha pendent.
+    public void post(LifecycleOwner owner, Runnable task) {
+        post(owner, task, null);
+    }
+
+    // Com post, però si el propietari ja s'ha destruït s'executa 'onDropped' (per exemple, per
+    // tancar un fitxer obert en segon pla que la tasca havia de fer servir).
+    // Aquestes tasques no es marquen amb el propietari perquè cancel no les tregui sense tancar el recurs.
+    public void post(LifecycleOwner owner, Runnable task, Runnable onDropped) {
+        handler.postAtTime(wrap(owner, task, onDropped), onDropped == null ? owner : null,
+                SystemClock.uptimeMillis());
+    }
+
+    // Descarta les tasques pendents del propietari. Les que porten 'onDropped' es queden a la cua i,
+    // com que el propietari ja estarà destruït, executaran 'onDropped' en arribar-los el torn.
+    public void cancel(LifecycleOwner owner) {
+        handler.removeCallbacksAndMessages(owner);
+    }
+
+    private Runnable wrap(LifecycleOwner owner, Runnable task, Runnable onDropped) {
+        return () -> {
+            if (owner.getLifecycle().getCurrentState() == Lifecycle.State.DESTROYED) {
+                if (onDropped != null) {
+                    onDropped.run();
+                }
+                return;
+            }
+            task.run();
+        };
+    }
+}
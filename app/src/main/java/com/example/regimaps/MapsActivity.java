@@ -4,12 +4,16 @@ import android.Manifest;
 import android.app.AlertDialog;
 import android.content.pm.PackageManager;
 import android.graphics.Color;
+import android.net.Uri;
+import android.os.Build;
 import android.os.Bundle;
 import android.util.Log;
 import android.view.View;
 import android.widget.EditText;
 import android.widget.Toast;
 
+import androidx.activity.result.ActivityResultLauncher;
+import androidx.activity.result.contract.ActivityResultContracts;
 import androidx.annotation.NonNull;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.core.app.ActivityCompat;
@@ -30,13 +34,19 @@ import com.google.android.gms.maps.model.Polygon;
 import com.google.android.gms.maps.model.PolygonOptions;
 import com.google.android.gms.maps.model.Polyline;
 import com.google.android.gms.maps.model.PolylineOptions;
+import com.google.android.gms.maps.model.TileOverlay;
+import com.google.android.gms.maps.model.TileOverlayOptions;
 import com.google.maps.android.SphericalUtil;
+import com.google.maps.android.collections.MarkerManager;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.text.DecimalFormat;
-import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.Executor;
 
 /**
  * Activitat principal que mostra un mapa de Google Maps i permet als usuaris
@@ -46,6 +56,7 @@ public class MapsActivity extends AppCompatActivity implements OnMapReadyCallbac
         GoogleMap.OnPolygonClickListener {
 
     private static final int LOCATION_PERMISSION_REQUEST_CODE = 1; // Codi de sol·licitud per a permisos d'ubicació
+    private static final int NOTIFICATION_PERMISSION_REQUEST_CODE = 2; // Codi de sol·licitud per al permís de notificacions
     private GoogleMap mMap; // Objecte GoogleMap per interactuar amb el mapa
     private ActivityMapsBinding binding; // ViewBinding per accedir als elements de la vista
     private FusedLocationProviderClient fusedLocationClient; // Client per obtenir la ubicació del dispositiu
@@ -54,26 +65,45 @@ public class MapsActivity extends AppCompatActivity implements OnMapReadyCallbac
     private SavedPointDao savedPointDao;
     private SavedPolygonDao savedPolygonDao;
 
-    private ExecutorService executorService; // ExecutorService per realitzar operacions en segon pla
+    private Executor ioExecutor; // Cua en ordre sobre el carril d'entrada/sortida compartit (vegeu AppExecutors)
 
     // Modes de dibuix
     private enum DrawingMode { LINE, POLYGON, NONE }
     private DrawingMode currentDrawingMode = DrawingMode.NONE;
 
 
-    // Llistes i referències per al dibuix i edició de formes
-    private List<Marker> editingVertices = new ArrayList<>(); // Marcadors d'edició
-    private Polyline tempPolyline; // Línia temporal durant el dibuix
-    private Polygon tempPolygon; // Polígon temporal durant el dibuix
-    private List<LatLng> finalShapePoints = new ArrayList<>(); // Punts de la forma final
+    // Editor de la línia o polígon que s'està dibuixant (vèrtexs, marcadors i forma temporal)
+    private ShapeEditor shapeEditor;
     private Polygon currentPolygon = null; // Referència al polígon actual (si cal)
 
+    // Carregador d'elements guardats per l'àrea visible (només en el mode "mostrar-ho tot")
+    private ViewportFeatureLoader viewportLoader;
+    // Agrupament dels punts en clústers (mode "mostrar-ho tot")
+    private PointClusterController clusterController;
+    private MarkerManager markerManager; // Reparteix els clics i arrossegaments de marcadors per col·leccions
+
+    // Capa de mapa fora de línia (fitxer MBTiles copiat a l'aplicació) i el seu proveïdor de tessel·les
+    private MbTilesProvider offlineTiles;
+    private TileOverlay offlineOverlay;
+
+    // Si el mapa ja s'ha pintat sencer una vegada (per a la mesura de l'arrencada)
+    private boolean mapLoaded;
+
+    // Selector del fitxer MBTiles per a la capa fora de línia
+    private final ActivityResultLauncher<String[]> pickMbTiles =
+            registerForActivityResult(new ActivityResultContracts.OpenDocument(), uri -> {
+                if (uri != null) {
+                    importarMbTiles(uri);
+                }
+            });
+
     /**
      * Inicialitza l'activitat, la vista, el mapa i els components principals.
      */
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+        StartupTrace.begin(StartupTrace.MAP_LOADED);
 
         // Infla la vista amb View Binding
         binding = ActivityMapsBinding.inflate(getLayoutInflater());
@@ -88,15 +118,46 @@ public class MapsActivity extends AppCompatActivity implements OnMapReadyCallbac
         db = AppDatabase.getDatabase(this);
         savedPointDao = db.savedPointDao();
         savedPolygonDao = db.savedPolygonDao();
-        executorService = Executors.newSingleThreadExecutor(); // Inicialitzar ExecutorService per a operacions en segon pla
+        // Operacions de base de dades i fitxers en segon pla, en ordre d'arribada: un desat i un
+        // esborrat posteriors no es poden avançar l'un a l'altre.
+        ioExecutor = AppExecutors.get().io().newSerialExecutor();
 
         // Configura els listeners dels botons de la UI
         binding.btnObtenirUbicacio.setOnClickListener(v -> obtenirUbicacioActual()); // Obtenir i mostrar la ubicació actual
+        binding.btnGravarTrac.setOnClickListener(v -> toggleGravacioTrac()); // Començar o acabar la gravació d'un traç GPS
         binding.btnAfegirPunt.setOnClickListener(v -> activarModeAfegirPunt()); // Activar el modus per afegir un punt
         binding.btnDibuixarPoligons.setOnClickListener(v -> toggleDibuixMode()); // Alternar entre els modus de dibuix de línia i polígon
+        binding.btnCapaOffline.setOnClickListener(v -> mostrarOpcionsCapaOffline()); // Mapa de fons des d'un fitxer MBTiles local
         binding.btnEsborrarTot.setOnClickListener(v -> esborrarTot()); // Esborrar tots els punts i formes del mapa i la base de dades
         binding.btnTornarMenu.setOnClickListener(v -> finish()); // Tornar al menú principal
     }
+
+    /**
+     * Actualitza el botó de gravació, ja que el servei pot haver acabat mentre l'activitat no es veia.
+     */
+    @Override
+    protected void onResume() {
+        super.onResume();
+        actualitzarBotoTrac(TrackRecordingService.isRecording());
+    }
+
+    /**
+     * Deixa d'observar la base de dades en tancar l'activitat.
+     */
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        AppExecutors.get().main().cancel(this);
+        if (!mapLoaded) {
+            StartupTrace.end(StartupTrace.MAP_LOADED);
+        }
+        if (viewportLoader != null) {
+            viewportLoader.release();
+        }
+        if (offlineTiles != null) {
+            offlineTiles.close();
+        }
+    }
     /**
      * Es crida quan el mapa està llest. Configura listeners i carrega dades inicials.
      */
@@ -107,28 +168,56 @@ public class MapsActivity extends AppCompatActivity implements OnMapReadyCallbac
         mMap.setMapType(GoogleMap.MAP_TYPE_SATELLITE); // Establir el tipus de mapa a Satèl·lit
         mMap.setOnPolylineClickListener(this); // Establir el listener per als clics a les línies
         mMap.setOnPolygonClickListener(this); // Establir el listener per als clics als polígons
+        // Els clics i arrossegaments de marcadors passen pel MarkerManager, compartit amb el ClusterManager
+        markerManager = new MarkerManager(mMap);
+        MarkerManager.Collection vertexMarkers = markerManager.newCollection();
+        shapeEditor = new ShapeEditor(mMap, vertexMarkers); // Permet arrossegar els vèrtexs de la forma en edició
+        vertexMarkers.setOnMarkerClickListener(marker -> {
+            if (currentDrawingMode != DrawingMode.NONE && shapeEditor.isVertex(marker)) {
+                mostrarOpcionsVertex(marker);
+                return true;
+            }
+            return false;
+        });
+        shapeEditor.setOnShapeChangedListener(this::mostrarMesures); // Mesures en directe mentre es dibuixa
 
         // Configura la UI del mapa
         mMap.getUiSettings().setZoomControlsEnabled(true);
         mMap.getUiSettings().setCompassEnabled(true);
 
+        // Primer pintat complet del mapa: acaba la mesura de l'arrencada
+        mMap.setOnMapLoadedCallback(() -> {
+            if (!mapLoaded) {
+                mapLoaded = true;
+                StartupTrace.end(StartupTrace.MAP_LOADED);
+                reportFullyDrawn();
+            }
+        });
+
+        // Si hi ha un fitxer MBTiles guardat, es fa servir com a mapa de fons
+        if (offlineTilesFile().exists()) {
+            activarCapaOffline();
+        }
+
         // Processa dades passades per Intent (per mostrar punts o polígons guardats)
         processIntentData();
 
+        // Mode que mostra tots els elements guardats, carregant només els de l'àrea visible
+        if (getIntent().getBooleanExtra("show_all", false)) {
+            viewportLoader = new ViewportFeatureLoader(mMap, db, AppExecutors.get().io());
+            if (getIntent().getBooleanExtra("cluster_points", true)) {
+                clusterController = new PointClusterController(this, mMap, markerManager);
+                clusterController.setGridSize(getIntent().getIntExtra("cluster_grid_size",
+                        PointClusterController.DEFAULT_GRID_SIZE));
+                clusterController.setMaxClusterZoom(getIntent().getFloatExtra("cluster_max_zoom",
+                        PointClusterController.DEFAULT_MAX_CLUSTER_ZOOM));
+                viewportLoader.setClusterController(clusterController);
+            }
+            mMap.setOnCameraIdleListener(viewportLoader);
+        }
+
         // Configura permisos d'ubicació
         setupLocationPermission();
-
-        // Listener per a clics sobre marcadors d'edició
-        mMap.setOnMarkerClickListener(new GoogleMap.OnMarkerClickListener() {
-            @Override
-            public boolean onMarkerClick(Marker marker) {
-                if (currentDrawingMode != DrawingMode.NONE && editingVertices.contains(marker)) {
-                    mostrarOpcionsVertex(marker);
-                    return true;
-                }
-                return false;
-            }
-        });
     }
     /**
      * Processa dades rebudes per Intent per mostrar punts o polígons guardats al mapa.
@@ -138,9 +227,8 @@ public class MapsActivity extends AppCompatActivity implements OnMapReadyCallbac
         double lng = getIntent().getDoubleExtra("longitude", Double.NaN);
         String pointName = getIntent().getStringExtra("name");
 
-        String polygonPointsStr = getIntent().getStringExtra("polygon_points");
-        String polygonType = getIntent().getStringExtra("polygon_type");
-        String polygonInfo = getIntent().getStringExtra("polygon_info");
+        // Les formes es passen per id: la geometria es llegeix de la memòria compartida o de Room.
+        int polygonId = getIntent().getIntExtra("polygon_id", -1);
 
         // Mostra un punt si s'han passat coordenades
         if (!Double.isNaN(lat) && !Double.isNaN(lng)) {
@@ -150,53 +238,72 @@ public class MapsActivity extends AppCompatActivity implements OnMapReadyCallbac
                     .title(pointName != null ? pointName : "Punt guardat"));
             mMap.moveCamera(CameraUpdateFactory.newLatLngZoom(point, 17));
         }
-        // Mostra una línia o polígon si s'han passat punts
-        else if (polygonPointsStr != null && !polygonPointsStr.isEmpty()) {
-            List<LatLng> points = new ArrayList<>();
-            String[] coords = polygonPointsStr.split(";");
-            for (String coord : coords) {
-                String[] latLng = coord.split(",");
-                if (latLng.length == 2) {
-                    try {
-                        double pointLat = Double.parseDouble(latLng[0]);
-                        double pointLng = Double.parseDouble(latLng[1]);
-                        points.add(new LatLng(pointLat, pointLng));
-                    } catch (NumberFormatException e) {
-                        Log.e("MapsActivity", "Error parsing coordinates: " + e.getMessage());
-                    }
-                }
-            }
-            if (polygonType != null) {
-                if (polygonType.equals("poligon") && points.size() >= 3) {
-                    PolygonOptions polygonOptions = new PolygonOptions()
-                            .addAll(points)
-                            .strokeColor(Color.BLUE)
-                            .fillColor(Color.argb(70, 0, 0, 255));
-                    Polygon polygon = mMap.addPolygon(polygonOptions);
-                    polygon.setClickable(true);
-                    String info = polygonInfo != null ? polygonInfo : (pointName != null ? pointName : "Polígon guardat");
-                    polygon.setTag(info);
-                    LatLngBounds.Builder builder = new LatLngBounds.Builder();
-                    for (LatLng point : points) builder.include(point);
-                    mMap.moveCamera(CameraUpdateFactory.newLatLngBounds(builder.build(), 50));
-                } else if (polygonType.equals("linia") && points.size() >= 2) {
-                    PolylineOptions lineOptions = new PolylineOptions()
-                            .addAll(points)
-                            .color(Color.RED)
-                            .width(5);
-                    Polyline polyline = mMap.addPolyline(lineOptions);
-                    polyline.setClickable(true);
-                    String info = polygonInfo != null ? polygonInfo : (pointName != null ? pointName : "Línia guardada");
-                    polyline.setTag(info);
-                    LatLngBounds.Builder builder = new LatLngBounds.Builder();
-                    for (LatLng point : points) builder.include(point);
-                    mMap.moveCamera(CameraUpdateFactory.newLatLngBounds(builder.build(), 50));
+        // Mostra una línia o polígon si s'ha passat el seu id
+        else if (polygonId != -1) {
+            // La forma, els seus nivells de detall i la descodificació dels vèrtexs es fan en segon pla.
+            ShapeCache shapeCache = ShapeCache.getInstance(db);
+            ioExecutor.execute(() -> {
+                SavedPolygonEntity loaded = shapeCache.load(polygonId);
+                double[][] levels = null;
+                if (loaded != null && loaded.geometry != null) {
+                    // Els vèrtexs queden descodificats a l'entitat i el fil principal ja els troba fets.
+                    loaded.geometry.getCoordinates();
+                    levels = PolygonLod.toLevels(db.polygonLodDao().getLodsForPolygon(polygonId));
                 }
-            }
+                double[][] shapeLevels = levels;
+                AppExecutors.get().main().post(this, () -> {
+                    if (loaded != null) {
+                        mostrarFormaGuardada(loaded, shapeLevels);
+                    } else {
+                        Toast.makeText(this, "La forma ja no existeix", Toast.LENGTH_SHORT).show();
+                    }
+                });
+            });
         }
         setupLocationPermission();
     }
 
+    /**
+     * Dibuixa una línia o polígon guardat i hi centra la càmera. Les formes grans es dibuixen amb
+     * el nivell de detall que correspon al zoom, a partir dels nivells precalculats 'levels'.
+     */
+    private void mostrarFormaGuardada(SavedPolygonEntity entity, double[][] levels) {
+        Geometry geometry = entity.geometry;
+        if (geometry == null) {
+            return;
+        }
+        boolean closed = "poligon".equals(entity.tipus);
+        if (!closed && !"linia".equals(entity.tipus) || geometry.size() < (closed ? 3 : 2)) {
+            return;
+        }
+        SimplifiedShape shape = new SimplifiedShape(mMap, geometry.getCoordinates(), levels);
+        // El rectangle envolupant precalculat evita recórrer els vèrtexs per centrar la càmera.
+        LatLngBounds bounds = entity.vertexCount > 0
+                ? new LatLngBounds(new LatLng(entity.minLat, entity.minLng), new LatLng(entity.maxLat, entity.maxLng))
+                : shape.getBounds();
+        if (closed) {
+            PolygonOptions polygonOptions = new PolygonOptions()
+                    .addAll(shape.initialPoints())
+                    .strokeColor(Color.BLUE)
+                    .fillColor(Color.argb(70, 0, 0, 255));
+            Polygon polygon = mMap.addPolygon(polygonOptions);
+            polygon.setClickable(true);
+            polygon.setTag(entity.name + " - Àrea: " + entity.area + " m²");
+            shape.attach(polygon);
+        } else {
+            PolylineOptions lineOptions = new PolylineOptions()
+                    .addAll(shape.initialPoints())
+                    .color(Color.RED)
+                    .width(5);
+            Polyline polyline = mMap.addPolyline(lineOptions);
+            polyline.setClickable(true);
+            polyline.setTag(entity.name + " - Distància: " + entity.distancia + " m");
+            shape.attach(polyline);
+        }
+        mMap.setOnCameraIdleListener(shape);
+        mMap.moveCamera(CameraUpdateFactory.newLatLngBounds(bounds, 50));
+    }
+
     /**
      * Configura els permisos d'ubicació. Si els permisos estan concedits, activa la capa d'ubicació al mapa.
      * Si no, sol·licita els permisos a l'usuari.
@@ -247,6 +354,169 @@ public class MapsActivity extends AppCompatActivity implements OnMapReadyCallbac
         }
     }
 
+    /**
+     * Comença la gravació d'un traç GPS o, si ja n'hi ha una en curs, demana el nom per acabar-la.
+     * La gravació la fa TrackRecordingService, que continua encara que es tanqui el mapa.
+     */
+    private void toggleGravacioTrac() {
+        if (TrackRecordingService.isRecording()) {
+            showStopTrackDialog();
+            return;
+        }
+        if (ContextCompat.checkSelfPermission(this, Manifest.permission.ACCESS_FINE_LOCATION) != PackageManager.PERMISSION_GRANTED) {
+            ActivityCompat.requestPermissions(this, new String[]{Manifest.permission.ACCESS_FINE_LOCATION},
+                    LOCATION_PERMISSION_REQUEST_CODE);
+            return;
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU
+                && ContextCompat.checkSelfPermission(this, Manifest.permission.POST_NOTIFICATIONS) != PackageManager.PERMISSION_GRANTED) {
+            // Sense aquest permís la gravació funciona igual, però no es veu la notificació.
+            ActivityCompat.requestPermissions(this, new String[]{Manifest.permission.POST_NOTIFICATIONS},
+                    NOTIFICATION_PERMISSION_REQUEST_CODE);
+        }
+        TrackRecordingService.start(this);
+        actualitzarBotoTrac(true);
+        Toast.makeText(this, "Gravant traç. Torna a prémer el botó per acabar.", Toast.LENGTH_SHORT).show();
+    }
+
+    /**
+     * Mostra un diàleg per acabar la gravació: guardar el traç com a línia, descartar-lo o continuar.
+     */
+    private void showStopTrackDialog() {
+        AlertDialog.Builder builder = new AlertDialog.Builder(this);
+        builder.setTitle("Acabar traç");
+        View dialogView = getLayoutInflater().inflate(R.layout.dialog_add_polygon_name, null);
+        builder.setView(dialogView);
+        EditText trackNameInput = dialogView.findViewById(R.id.polygonNameInput);
+        trackNameInput.setHint("Nom del traç");
+        builder.setPositiveButton("Guardar", (dialog, which) -> {
+            String name = trackNameInput.getText().toString();
+            if (name.isEmpty()) {
+                Toast.makeText(this, "El nom del traç no pot estar buit", Toast.LENGTH_SHORT).show();
+            } else {
+                TrackRecordingService.stop(this, name);
+                actualitzarBotoTrac(false);
+            }
+        });
+        builder.setNegativeButton("Descartar", (dialog, which) -> {
+            TrackRecordingService.stop(this, null);
+            actualitzarBotoTrac(false);
+        });
+        builder.setNeutralButton("Continuar", null);
+        builder.show();
+    }
+
+    // Mostra la icona d'aturar mentre es grava i la de gravar si no.
+    private void actualitzarBotoTrac(boolean recording) {
+        binding.btnGravarTrac.setIconResource(recording ? R.drawable.ic_stop : R.drawable.ic_record);
+    }
+
+    // Fitxer on es guarda la còpia de l'MBTiles triat per l'usuari.
+    private File offlineTilesFile() {
+        return new File(getFilesDir(), "offline_tiles.mbtiles");
+    }
+
+    /**
+     * Tria un fitxer MBTiles o, si ja hi ha una capa fora de línia, permet canviar-lo o treure'l.
+     */
+    private void mostrarOpcionsCapaOffline() {
+        if (offlineOverlay == null) {
+            pickMbTiles.launch(new String[]{"*/*"});
+            return;
+        }
+        new AlertDialog.Builder(this)
+                .setTitle("Mapa fora de línia")
+                .setItems(new String[]{"Triar un altre fitxer", "Treure el mapa fora de línia"}, (dialog, which) -> {
+                    if (which == 0) {
+                        pickMbTiles.launch(new String[]{"*/*"});
+                    } else {
+                        treureCapaOffline();
+                        ioExecutor.execute(() -> offlineTilesFile().delete());
+                    }
+                })
+                .setNegativeButton("Cancel·lar", null)
+                .show();
+    }
+
+    /**
+     * Copia l'MBTiles triat dins l'aplicació (SQLite necessita un fitxer, no un Uri) i l'activa.
+     */
+    private void importarMbTiles(Uri uri) {
+        Toast.makeText(this, "Copiant el mapa fora de línia...", Toast.LENGTH_SHORT).show();
+        File target = offlineTilesFile();
+        File tmp = new File(target.getPath() + ".tmp");
+        ioExecutor.execute(() -> {
+            try (InputStream in = getContentResolver().openInputStream(uri);
+                 OutputStream out = new FileOutputStream(tmp)) {
+                if (in == null) {
+                    throw new IOException("No s'ha pogut obrir el fitxer");
+                }
+                byte[] buffer = new byte[64 * 1024];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, read);
+                }
+            } catch (IOException e) {
+                tmp.delete();
+                AppExecutors.get().main().post(this, () ->
+                        Toast.makeText(this, "Error copiant el fitxer: " + e.getMessage(), Toast.LENGTH_LONG).show());
+                return;
+            }
+            if (!tmp.renameTo(target)) {
+                tmp.delete();
+                AppExecutors.get().main().post(this, () -> Toast.makeText(this, "No s'ha pogut guardar el fitxer.", Toast.LENGTH_LONG).show());
+                return;
+            }
+            AppExecutors.get().main().post(this, this::activarCapaOffline);
+        });
+    }
+
+    /**
+     * Obre l'MBTiles guardat en segon pla i el posa com a capa de fons del mapa.
+     */
+    private void activarCapaOffline() {
+        File file = offlineTilesFile();
+        ioExecutor.execute(() -> {
+            MbTilesProvider provider;
+            try {
+                provider = new MbTilesProvider(file);
+            } catch (Exception e) {
+                AppExecutors.get().main().post(this, () ->
+                        Toast.makeText(this, "El fitxer no és un MBTiles vàlid.", Toast.LENGTH_LONG).show());
+                return;
+            }
+            // Si l'activitat ja s'ha tancat, el fitxer obert es tanca en lloc de fer-lo servir.
+            AppExecutors.get().main().post(this, () -> {
+                treureCapaOffline();
+                offlineTiles = provider;
+                afegirCapaOffline();
+                // Sense cobertura el mapa de Google no es pot carregar; el fons és l'MBTiles.
+                mMap.setMapType(GoogleMap.MAP_TYPE_NONE);
+            }, provider::close);
+        });
+    }
+
+    // Afegeix al mapa la capa del proveïdor MBTiles obert.
+    private void afegirCapaOffline() {
+        offlineOverlay = mMap.addTileOverlay(new TileOverlayOptions()
+                .tileProvider(offlineTiles)
+                .fadeIn(false)
+                .zIndex(-1));
+    }
+
+    // Treu la capa fora de línia del mapa i torna al mapa de satèl·lit.
+    private void treureCapaOffline() {
+        if (offlineOverlay != null) {
+            offlineOverlay.remove();
+            offlineOverlay = null;
+        }
+        if (offlineTiles != null) {
+            offlineTiles.close();
+            offlineTiles = null;
+        }
+        mMap.setMapType(GoogleMap.MAP_TYPE_SATELLITE);
+    }
+
     /**
      * Activa el mode d'afegir punts si no s'està dibuixant una línia o polígon.
      */
@@ -279,8 +549,7 @@ public class MapsActivity extends AppCompatActivity implements OnMapReadyCallbac
      * Inicia el mode de dibuix, netejant l'estat anterior i informant l'usuari.
      */
     private void iniciarModeDibuix() {
-        clearEditingMarkers();
-        finalShapePoints.clear();
+        shapeEditor.start(currentDrawingMode == DrawingMode.POLYGON);
         if (currentDrawingMode == DrawingMode.LINE) {
             Toast.makeText(this, "Mode línia activat - Clica per afegir punts", Toast.LENGTH_SHORT).show();
         } else {
@@ -332,65 +601,33 @@ public class MapsActivity extends AppCompatActivity implements OnMapReadyCallbac
      * Afegeix un vèrtex a la forma que s'està dibuixant i actualitza la visualització.
      */
     private void addVertexAndDraw(LatLng latLng) {
-        MarkerOptions markerOptions = new MarkerOptions().position(latLng);
-        Marker marker = mMap.addMarker(markerOptions);
-        editingVertices.add(marker);
-        finalShapePoints.add(latLng);
-        updateShape(null);
+        shapeEditor.addVertex(latLng);
 
         // Mostra diàleg per finalitzar si s'ha arribat al mínim de punts
-        if (currentDrawingMode == DrawingMode.LINE && finalShapePoints.size() >= 2 ||
-                currentDrawingMode == DrawingMode.POLYGON && finalShapePoints.size() >= 3) {
+        if (currentDrawingMode == DrawingMode.LINE && shapeEditor.size() >= 2 ||
+                currentDrawingMode == DrawingMode.POLYGON && shapeEditor.size() >= 3) {
             mostrarOpcionsFinalitzat();
         }
     }
 
     /**
-     * Actualitza la forma (línia o polígon) que s'està dibuixant al mapa.
+     * Mostra l'àrea i el perímetre (polígon) o la longitud (línia) de la forma que s'està dibuixant.
+     * L'editor manté les mesures amb sumes acumulades, així que llegir-les no recorre els vèrtexs.
      */
-    private void updateShape(Marker draggedMarker) {
-        List<LatLng> updatedPoints = getMarkerPositions();
-        if (currentDrawingMode == DrawingMode.LINE) {
-            actualitzarLiniaTemporal(updatedPoints);
-        } else if (currentDrawingMode == DrawingMode.POLYGON) {
-            actualitzarPoligonTemporal(updatedPoints);
+    private void mostrarMesures(ShapeEditor editor) {
+        if (editor.size() < 2) {
+            binding.measureReadout.setVisibility(View.GONE);
+            return;
         }
-    }
-
-    /**
-     * Obté la llista de coordenades dels marcadors d'edició actuals.
-     */
-    private List<LatLng> getMarkerPositions() {
-        List<LatLng> points = new ArrayList<>();
-        for (Marker marker : editingVertices) {
-            points.add(marker.getPosition());
+        DecimalFormat df = new DecimalFormat("#.##");
+        String text;
+        if (editor.isClosed()) {
+            text = "Àrea: " + df.format(editor.getArea()) + " m² · Perímetre: " + df.format(editor.getPerimeter()) + " m";
+        } else {
+            text = "Distància: " + df.format(editor.getLength()) + " m";
         }
-        return points;
-    }
-
-    /**
-     * Actualitza la línia temporal durant el dibuix.
-     */
-    private void actualitzarLiniaTemporal(List<LatLng> points) {
-        if (tempPolyline != null) tempPolyline.remove();
-        PolylineOptions options = new PolylineOptions()
-                .addAll(points)
-                .color(Color.RED)
-                .width(5);
-        tempPolyline = mMap.addPolyline(options);
-    }
-
-    /**
-     * Actualitza el polígon temporal durant el dibuix.
-     */
-    private void actualitzarPoligonTemporal(List<LatLng> points) {
-        if (tempPolygon != null) tempPolygon.remove();
-        PolygonOptions options = new PolygonOptions()
-                .addAll(points)
-                .strokeColor(Color.RED)
-                .fillColor(Color.argb(50, 255, 0, 0))
-                .strokeWidth(5);
-        tempPolygon = mMap.addPolygon(options);
+        binding.measureReadout.setText(text);
+        binding.measureReadout.setVisibility(View.VISIBLE);
     }
 
     /**
@@ -412,12 +649,13 @@ public class MapsActivity extends AppCompatActivity implements OnMapReadyCallbac
      * Finalitza el dibuix i guarda la línia o polígon a la base de dades.
             */
     private void finalitzarDibuix() {
-        if (currentDrawingMode == DrawingMode.LINE && finalShapePoints.size() >= 2) {
-            double distancia = SphericalUtil.computeLength(finalShapePoints);
-            showSaveLineDialog(finalShapePoints, distancia);
-        } else if (currentDrawingMode == DrawingMode.POLYGON && finalShapePoints.size() >= 3) {
-            double area = SphericalUtil.computeArea(finalShapePoints);
-            showSavePolygonDialog(finalShapePoints, area);
+        List<LatLng> points = shapeEditor.getPoints();
+        if (currentDrawingMode == DrawingMode.LINE && points.size() >= 2) {
+            double distancia = SphericalUtil.computeLength(points);
+            showSaveLineDialog(points, distancia);
+        } else if (currentDrawingMode == DrawingMode.POLYGON && points.size() >= 3) {
+            double area = SphericalUtil.computeArea(points);
+            showSavePolygonDialog(points, area);
         }
         else {
             netejarDibuix();
@@ -481,77 +719,89 @@ public class MapsActivity extends AppCompatActivity implements OnMapReadyCallbac
      * Neteja l'estat del dibuix, eliminant marcadors, formes temporals i punts.
      */
     private void netejarDibuix() {
-        clearEditingMarkers();
-        if (tempPolygon != null) tempPolygon.remove();
-        if (tempPolyline != null) tempPolyline.remove();
-        finalShapePoints.clear();
+        shapeEditor.clear();
         currentDrawingMode = DrawingMode.NONE;
     }
 
-    /**
-     * Elimina tots els marcadors d'edició del mapa i de la llista.
-     */
-    private void clearEditingMarkers() {
-        for (Marker marker : editingVertices) {
-            marker.remove();
-        }
-        editingVertices.clear();
-    }
-
     /**
      * Desa un polígon a la base de dades.
      */
     private void guardarPoligon(List<LatLng> points, double area, String name) {
-        executorService.execute(() -> {
+        ioExecutor.execute(() -> {
+            SavedPolygonEntity entity = new SavedPolygonEntity();
             try {
-                SavedPolygonEntity entity = new SavedPolygonEntity();
                 entity.tipus = "poligon";
                 entity.area = area;
                 entity.name = name;
-                StringBuilder sb = new StringBuilder();
-                for (LatLng point : points) {
-                    sb.append(point.latitude).append(",").append(point.longitude).append(";");
-                }
-                entity.points = sb.toString();
-                savedPolygonDao.insert(entity);
-                runOnUiThread(() ->
-                        Toast.makeText(this, "Polígon guardat com a '" + name + "'!", Toast.LENGTH_SHORT).show());
+                entity.geometry = Geometry.fromLatLngs(points);
+                SpatialIndex.insertPolygon(db, entity);
+                // Si hi ha viewportLoader, el mapa es refresca sol quan Room avisa del canvi.
+                AppExecutors.get().main().post(this, () -> {
+                    Toast.makeText(this, "Polígon guardat com a '" + name + "'!", Toast.LENGTH_SHORT).show();
+                });
             } catch (Exception e) {
-                runOnUiThread(() ->
+                AppExecutors.get().main().post(this, () ->
                         Toast.makeText(this, "Error guardant polígon: " + e.getMessage(), Toast.LENGTH_LONG).show());
+                return;
             }
+            avisarSuperposicions(entity);
         });
     }
 
+    /**
+     * Comprova si el polígon acabat de desar se superposa amb altres de guardats i, si és així,
+     * avisa l'usuari amb els noms i l'àrea comuna. Es crida en segon pla.
+     */
+    private void avisarSuperposicions(SavedPolygonEntity entity) {
+        StringBuilder missatge = new StringBuilder();
+        try {
+            DecimalFormat df = new DecimalFormat("#.##");
+            for (SpatialIndex.NamedOverlap overlap : SpatialIndex.overlapsOf(db, entity)) {
+                String otherName = overlap.nameB != null && !overlap.nameB.isEmpty() ? overlap.nameB : "Sense nom";
+                missatge.append("• ").append(otherName).append(": ").append(df.format(overlap.areaM2)).append(" m²\n");
+            }
+        } catch (Exception e) {
+            // L'avís és opcional: el polígon ja s'ha desat.
+            Log.w("MapsActivity", "Error comprovant superposicions: " + e.getMessage(), e);
+            return;
+        }
+        if (missatge.length() == 0) {
+            return;
+        }
+        AppExecutors.get().main().post(this, () -> new AlertDialog.Builder(this)
+                .setTitle("Polígon superposat")
+                .setMessage("'" + entity.name + "' se superposa amb:\n" + missatge)
+                .setPositiveButton("D'acord", null)
+                .show());
+    }
+
     /**
      * Desa una línia a la base de dades i la mostra al mapa.
      */
     private void guardarLinia(List<LatLng> points, double distancia, String name) {
-        executorService.execute(() -> {
+        ioExecutor.execute(() -> {
             try {
                 SavedPolygonEntity entity = new SavedPolygonEntity();
                 entity.tipus = "linia";
                 entity.name = name;
-                StringBuilder sb = new StringBuilder();
-                for (LatLng point : points) {
-                    sb.append(point.latitude).append(",").append(point.longitude).append(";");
-                }
-                entity.points = sb.toString();
+                entity.geometry = Geometry.fromLatLngs(points);
                 entity.distancia = distancia;
                 entity.area = 0.0;
-                savedPolygonDao.insert(entity);
-                runOnUiThread(() -> {
-                    PolylineOptions options = new PolylineOptions()
-                            .addAll(points)
-                            .color(Color.RED)
-                            .width(5);
-                    Polyline polyline = mMap.addPolyline(options);
-                    polyline.setClickable(true);
-                    polyline.setTag(name + " - " + new DecimalFormat("#.##").format(distancia) + " m");
+                SpatialIndex.insertPolygon(db, entity);
+                AppExecutors.get().main().post(this, () -> {
+                    if (viewportLoader == null) {
+                        PolylineOptions options = new PolylineOptions()
+                                .addAll(points)
+                                .color(Color.RED)
+                                .width(5);
+                        Polyline polyline = mMap.addPolyline(options);
+                        polyline.setClickable(true);
+                        polyline.setTag(name + " - " + new DecimalFormat("#.##").format(distancia) + " m");
+                    }
                     Toast.makeText(this, "Línia guardada com a '" + name + "'!", Toast.LENGTH_SHORT).show();
                 });
             } catch (Exception e) {
-                runOnUiThread(() ->
+                AppExecutors.get().main().post(this, () ->
                         Toast.makeText(this, "Error: " + e.getMessage(), Toast.LENGTH_LONG).show());
                 netejarDibuix();
             }
@@ -576,7 +826,7 @@ public class MapsActivity extends AppCompatActivity implements OnMapReadyCallbac
             String name = inputName.getText().toString();
             String code = inputCode.getText().toString();
             if (!name.isEmpty()) {
-                executorService.execute(() -> {
+                ioExecutor.execute(() -> {
                     try {
                         SavedPointEntity savedPointEntity = new SavedPointEntity(
                                 point.latitude,
@@ -587,14 +837,16 @@ public class MapsActivity extends AppCompatActivity implements OnMapReadyCallbac
                                 ""
                         );
                         savedPointDao.insert(savedPointEntity);
-                        runOnUiThread(() -> {
-                            mMap.addMarker(new MarkerOptions()
-                                    .position(point)
-                                    .title(name));
+                        AppExecutors.get().main().post(this, () -> {
+                            if (viewportLoader == null) {
+                                mMap.addMarker(new MarkerOptions()
+                                        .position(point)
+                                        .title(name));
+                            }
                             Toast.makeText(this, "Punt afegit correctament", Toast.LENGTH_SHORT).show();
                         });
                     } catch (Exception e) {
-                        runOnUiThread(() ->
+                        AppExecutors.get().main().post(this, () ->
                                 Toast.makeText(this, "Error guardant punt: " + e.getMessage(), Toast.LENGTH_LONG).show());
                     }
                 });
@@ -611,11 +863,12 @@ public class MapsActivity extends AppCompatActivity implements OnMapReadyCallbac
      */
     private void esborrarTot() {
         mMap.clear();
-        clearEditingMarkers();
-        finalShapePoints.clear();
-       // executorService.execute(() -> savedPointDao.deleteAll());
-        if (tempPolygon != null) tempPolygon.remove();
-        if (tempPolyline != null) tempPolyline.remove();
+        if (viewportLoader != null) viewportLoader.reset();
+        shapeEditor.reset(); // La forma i els marcadors ja els ha tret mMap.clear()
+        if (offlineTiles != null) {
+            afegirCapaOffline(); // mMap.clear() també treu la capa fora de línia
+        }
+       // ioExecutor.execute(() -> savedPointDao.deleteAll());
         Toast.makeText(this, "Mapa netejat.", Toast.LENGTH_SHORT).show();
     }
 
@@ -638,13 +891,7 @@ public class MapsActivity extends AppCompatActivity implements OnMapReadyCallbac
      * Elimina un vèrtex (marcador) del mapa i de les llistes, i actualitza la forma.
      */
     private void eliminarVertex(Marker marker) {
-        int index = editingVertices.indexOf(marker); // Obtenir l'índex del marcador a la llista de vèrtexs
-        if (index != -1) {
-            editingVertices.remove(index);
-            finalShapePoints.remove(index);
-            marker.remove();
-            updateShape(null);
-        }
+        shapeEditor.removeVertex(marker); // El marcador porta l'índex del vèrtex, no cal buscar-lo
     }
 }
 
@@ -0,0 +1,111 @@
+package com.example.regimaps;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
+import android.util.LruCache;
+
+import com.google.android.gms.maps.model.Tile;
+import com.google.android.gms.maps.model.TileProvider;
+
+import java.io.Closeable;
+import java.io.File;
+
+/**
+ * Proveïdor de tessel·les ràster llegides d'un fitxer MBTiles local (una base de dades SQLite),
+ * per tenir mapa de fons sense cobertura.
+ *
+ * El mapa demana les tessel·les des de diversos fils. Les últimes tessel·les llegides es
+ * guarden en una memòria LRU limitada per bytes, així que tornar a passar per la mateixa zona
+ * no torna a llegir el fitxer. La consulta és sempre la mateixa sentència amb paràmetres, que
+ * SQLite compila una vegada i reutilitza de la memòria de sentències de la connexió.
+ */
+public class MbTilesProvider implements TileProvider, Closeable {
+
+    // Mida màxima de la memòria de tessel·les, en bytes.
+    private static final int CACHE_BYTES = 16 * 1024 * 1024;
+    // Mida de les tessel·les de l'MBTiles, en píxels.
+    private static final int TILE_SIZE = 256;
+    // Marca les tessel·les que no són al fitxer, perquè no es tornin a consultar.
+    private static final Tile MISSING = new Tile(0, 0, new byte[0]);
+
+    private static final String TILE_QUERY =
+            "SELECT tile_data FROM tiles WHERE zoom_level = ? AND tile_column = ? AND tile_row = ?";
+
+    private final SQLiteDatabase db;
+    private final int minZoom;
+    private final int maxZoom;
+    private final LruCache<Long, Tile> cache = new LruCache<Long, Tile>(CACHE_BYTES) {
+        @Override
+        protected int sizeOf(Long key, Tile tile) {
+            return Math.max(1, tile.data != null ? tile.data.length : 0);
+        }
+    };
+
+    /**
+     * Obre un fitxer MBTiles només de lectura. Llança SQLiteException si no és un MBTiles vàlid.
+     */
+    public MbTilesProvider(File file) {
+        db = SQLiteDatabase.openDatabase(file.getPath(), null,
+                SQLiteDatabase.OPEN_READONLY | SQLiteDatabase.NO_LOCALIZED_COLLATORS);
+        try {
+            // Comprova que hi ha la taula de tessel·les abans d'afegir la capa al mapa.
+            db.rawQuery("SELECT 1 FROM tiles LIMIT 1", null).close();
+            minZoom = readZoom("minzoom", 0);
+            maxZoom = readZoom("maxzoom", 22);
+        } catch (SQLiteException e) {
+            db.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Retorna la tessel·la (x, y) del zoom donat, o NO_TILE si el fitxer no la té.
+     */
+    @Override
+    public Tile getTile(int x, int y, int zoom) {
+        if (zoom < minZoom || zoom > maxZoom) {
+            return NO_TILE;
+        }
+        long key = ((long) zoom << 58) | ((long) x << 29) | y;
+        Tile tile = cache.get(key);
+        if (tile == null) {
+            tile = readTile(x, y, zoom);
+            cache.put(key, tile);
+        }
+        return tile == MISSING ? NO_TILE : tile;
+    }
+
+    @Override
+    public void close() {
+        cache.evictAll();
+        db.close();
+    }
+
+    // Llegeix una tessel·la del fitxer. L'MBTiles numera les files des del sud (esquema TMS).
+    private Tile readTile(int x, int y, int zoom) {
+        int row = (1 << zoom) - 1 - y;
+        try (Cursor cursor = db.rawQuery(TILE_QUERY,
+                new String[]{Integer.toString(zoom), Integer.toString(x), Integer.toString(row)})) {
+            if (cursor.moveToFirst() && !cursor.isNull(0)) {
+                return new Tile(TILE_SIZE, TILE_SIZE, cursor.getBlob(0));
+            }
+        } catch (IllegalStateException | SQLiteException e) {
+            // El fitxer s'ha tancat (la capa s'està traient) o està malmès: no hi ha tessel·la.
+            return NO_TILE;
+        }
+        return MISSING;
+    }
+
+    // Llegeix un zoom de la taula de metadades, si n'hi ha.
+    private int readZoom(String name, int defaultValue) {
+        try (Cursor cursor = db.rawQuery("SELECT value FROM metadata WHERE name = ?", new String[]{name})) {
+            if (cursor.moveToFirst()) {
+                return Integer.parseInt(cursor.getString(0).trim());
+            }
+        } catch (SQLiteException | NumberFormatException | NullPointerException e) {
+            // Metadades opcionals: sense elles es demanen tots els zooms.
+        }
+        return defaultValue;
+    }
+}
@@ -0,0 +1,144 @@
+package com.example.regimaps;
+
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+
+import com.google.android.gms.maps.CameraUpdateFactory;
+import com.google.android.gms.maps.GoogleMap;
+import com.google.android.gms.maps.model.LatLngBounds;
+import com.google.maps.android.clustering.Cluster;
+import com.google.maps.android.clustering.ClusterManager;
+import com.google.maps.android.clustering.algo.GridBasedAlgorithm;
+import com.google.maps.android.clustering.algo.PreCachingAlgorithmDecorator;
+import com.google.maps.android.clustering.view.DefaultClusterRenderer;
+import com.google.maps.android.collections.MarkerManager;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Mostra els punts guardats agrupats (clústers) amb el ClusterManager d'android-maps-utils.
+ * L'agrupament i el càlcul dels marcadors els fa la llibreria en segon pla; aquí només es
+ * mantenen els elements visibles i la configuració de la graella i del zoom màxim d'agrupament.
+ * El ClusterManager fa servir el MarkerManager compartit del mapa, que és qui rep els clics dels
+ * marcadors: així no substitueix els listeners de la resta de marcadors (per exemple, els vèrtexs
+ * de ShapeEditor, que tenen la seva pròpia col·lecció).
+ */
+public class PointClusterController implements ClusterManager.OnClusterClickListener<SavedPointClusterItem> {
+
+    // Mida per defecte de la cel·la de la graella d'agrupament, en píxels de pantalla.
+    public static final int DEFAULT_GRID_SIZE = 100;
+    // A partir d'aquest zoom els punts es mostren sempre individualment.
+    public static final float DEFAULT_MAX_CLUSTER_ZOOM = 17f;
+
+    private final GoogleMap map;
+    private final ClusterManager<SavedPointClusterItem> clusterManager;
+
+    // Elements afegits al ClusterManager, indexats per l'id del punt.
+    private final Map<Integer, SavedPointClusterItem> items = new HashMap<>();
+
+    // El renderer consulta aquests valors des del seu fil de treball.
+    private volatile float maxClusterZoom = DEFAULT_MAX_CLUSTER_ZOOM;
+    private volatile float currentZoom;
+
+    public PointClusterController(Context context, GoogleMap map, MarkerManager markerManager) {
+        this.map = map;
+        this.clusterManager = new ClusterManager<>(context, map, markerManager);
+        GridBasedAlgorithm<SavedPointClusterItem> gridAlgorithm = new GridBasedAlgorithm<>();
+        gridAlgorithm.setMaxDistanceBetweenClusteredItems(DEFAULT_GRID_SIZE);
+        clusterManager.setAlgorithm(new PreCachingAlgorithmDecorator<>(gridAlgorithm));
+        clusterManager.setRenderer(new ZoomLimitedRenderer(context, map, clusterManager));
+        clusterManager.setOnClusterClickListener(this);
+        currentZoom = map.getCameraPosition().zoom;
+    }
+
+    // Canvia la mida de la cel·la de la graella (en píxels). Cel·les més grans agrupen més.
+    // Es canvia a través de l'algorisme del ClusterManager perquè el decorador de precàlcul
+    // buidi els clústers que tenia guardats per a cada zoom amb la mida anterior.
+    public void setGridSize(int gridSize) {
+        clusterManager.getAlgorithm().setMaxDistanceBetweenClusteredItems(gridSize);
+        clusterManager.cluster();
+    }
+
+    // Canvia el zoom a partir del qual ja no s'agrupen els punts.
+    public void setMaxClusterZoom(float zoom) {
+        maxClusterZoom = zoom;
+        clusterManager.cluster();
+    }
+
+    // S'ha de cridar quan la càmera s'atura, per tornar a agrupar segons el nou zoom.
+    public void onCameraIdle() {
+        currentZoom = map.getCameraPosition().zoom;
+        clusterManager.onCameraIdle();
+    }
+
+    /**
+     * Actualitza els punts agrupats: treu els que ja no són visibles i afegeix els nous.
+     * S'ha de cridar des del fil principal.
+     */
+    public void applyDiff(Set<Integer> visibleIds, List<SavedPointClusterItem> newItems) {
+        List<SavedPointClusterItem> removed = new ArrayList<>();
+        for (Iterator<Map.Entry<Integer, SavedPointClusterItem>> it = items.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<Integer, SavedPointClusterItem> entry = it.next();
+            if (!visibleIds.contains(entry.getKey())) {
+                removed.add(entry.getValue());
+                it.remove();
+            }
+        }
+        List<SavedPointClusterItem> added = new ArrayList<>();
+        for (SavedPointClusterItem item : newItems) {
+            if (!items.containsKey(item.getId())) {
+                items.put(item.getId(), item);
+                added.add(item);
+            }
+        }
+        if (removed.isEmpty() && added.isEmpty()) {
+            return;
+        }
+        clusterManager.removeItems(removed);
+        clusterManager.addItems(added);
+        clusterManager.cluster();
+    }
+
+    // Ids dels punts que hi ha actualment al ClusterManager.
+    public Set<Integer> getShownIds() {
+        return items.keySet();
+    }
+
+    // Buida tots els punts (per exemple després de GoogleMap.clear()).
+    public void reset() {
+        items.clear();
+        clusterManager.clearItems();
+        clusterManager.cluster();
+    }
+
+    // En clicar un clúster, la càmera s'apropa fins a mostrar-ne tots els punts.
+    @Override
+    public boolean onClusterClick(Cluster<SavedPointClusterItem> cluster) {
+        LatLngBounds.Builder builder = new LatLngBounds.Builder();
+        for (SavedPointClusterItem item : cluster.getItems()) {
+            builder.include(item.getPosition());
+        }
+        map.animateCamera(CameraUpdateFactory.newLatLngBounds(builder.build(), 100));
+        return true;
+    }
+
+    /**
+     * Renderer que mostra els punts individualment a partir del zoom màxim d'agrupament.
+     */
+    private class ZoomLimitedRenderer extends DefaultClusterRenderer<SavedPointClusterItem> {
+        ZoomLimitedRenderer(Context context, GoogleMap map, ClusterManager<SavedPointClusterItem> manager) {
+            super(context, map, manager);
+        }
+
+        @Override
+        protected boolean shouldRenderAsCluster(@NonNull Cluster<SavedPointClusterItem> cluster) {
+            return currentZoom < maxClusterZoom && super.shouldRenderAsCluster(cluster);
+        }
+    }
+}
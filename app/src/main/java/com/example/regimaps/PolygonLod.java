@@ -0,0 +1,121 @@
+package com.example.regimaps;
+
+import android.database.Cursor;
+
+import androidx.sqlite.db.SupportSQLiteDatabase;
+import androidx.sqlite.db.SupportSQLiteStatement;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Manteniment dels nivells de detall (taula saved_polygon_lods) dels polígons i línies guardats.
+ * Els nivells es calculen amb {@link GeometrySimplifier} quan es desa el polígon, de manera que
+ * el mapa només ha de triar el nivell adequat al zoom. L'esborrat es fa amb un trigger.
+ */
+public final class PolygonLod {
+
+    static final String TABLE = "saved_polygon_lods";
+
+    private PolygonLod() {}
+
+    /**
+     * Crea el trigger que esborra els nivells quan s'esborra el polígon. Es pot cridar més d'un cop.
+     */
+    static void createTriggers(SupportSQLiteDatabase db) {
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS `saved_polygon_lods_delete` AFTER DELETE ON `saved_polygons` BEGIN "
+                + "DELETE FROM `" + TABLE + "` WHERE `polygon_id` = OLD.`id`; END");
+    }
+
+    /**
+     * Calcula i desa els nivells de detall d'un lot de polígons ja inserits (amb id assignat).
+     * S'ha de cridar dins la transacció que els insereix.
+     */
+    static void write(AppDatabase database, List<SavedPolygonEntity> polygons) {
+        List<PolygonLodEntity> lods = new ArrayList<>();
+        for (SavedPolygonEntity polygon : polygons) {
+            double[][] levels = buildLevels(polygon.geometry, polygon.tipus);
+            for (int level = 0; level < levels.length; level++) {
+                if (levels[level] != null) {
+                    lods.add(new PolygonLodEntity(polygon.id, level, Geometry.fromCoordinates(levels[level])));
+                }
+            }
+        }
+        if (!lods.isEmpty()) {
+            database.polygonLodDao().insertAll(lods);
+        }
+    }
+
+    /**
+     * Torna a calcular els nivells de polígons que han canviat. S'ha de cridar dins la transacció.
+     */
+    static void replace(AppDatabase database, List<SavedPolygonEntity> polygons) {
+        PolygonLodDao dao = database.polygonLodDao();
+        for (SavedPolygonEntity polygon : polygons) {
+            dao.deleteForPolygon(polygon.id);
+        }
+        write(database, polygons);
+    }
+
+    /**
+     * Calcula els nivells de tots els polígons existents, per lots ordenats per id.
+     */
+    static void rebuild(SupportSQLiteDatabase db) {
+        db.execSQL("DELETE FROM `" + TABLE + "`");
+        try (SupportSQLiteStatement insert = db.compileStatement(
+                "INSERT INTO `" + TABLE + "` (`polygon_id`, `level`, `geometry`) VALUES (?, ?, ?)")) {
+            long lastId = Long.MIN_VALUE;
+            while (true) {
+                int rows = 0;
+                try (Cursor cursor = db.query("SELECT `id`, `geometry`, `tipus` FROM `saved_polygons` WHERE `id` > ? "
+                        + "ORDER BY `id` LIMIT " + DatabaseMigrations.BATCH_SIZE, new Object[]{lastId})) {
+                    while (cursor.moveToNext()) {
+                        lastId = cursor.getLong(0);
+                        byte[] blob = cursor.isNull(1) ? null : cursor.getBlob(1);
+                        double[][] levels = buildLevels(Geometry.fromEncoded(blob), cursor.getString(2));
+                        for (int level = 0; level < levels.length; level++) {
+                            if (levels[level] != null) {
+                                insert.clearBindings();
+                                insert.bindLong(1, lastId);
+                                insert.bindLong(2, level);
+                                insert.bindBlob(3, GeometryCodec.encode(levels[level]));
+                                insert.executeInsert();
+                            }
+                        }
+                        rows++;
+                    }
+                }
+                if (rows < DatabaseMigrations.BATCH_SIZE) {
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            // Només ho pot llançar el close() de la sentència.
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Converteix els nivells llegits de la base de dades en un array amb una posició per nivell
+     * (null on no n'hi ha), descodificant-ne els vèrtexs. No s'ha de cridar des del fil principal.
+     */
+    static double[][] toLevels(List<PolygonLodEntity> lods) {
+        double[][] levels = new double[GeometrySimplifier.LEVEL_MAX_ZOOM.length][];
+        for (PolygonLodEntity lod : lods) {
+            if (lod.level >= 0 && lod.level < levels.length && lod.geometry != null) {
+                levels[lod.level] = lod.geometry.getCoordinates();
+            }
+        }
+        return levels;
+    }
+
+    // Calcula els nivells d'una geometria. Les geometries petites o buides no en tenen.
+    private static double[][] buildLevels(Geometry geometry, String tipus) {
+        if (geometry == null || geometry.size() < GeometrySimplifier.MIN_VERTICES) {
+            return new double[0][];
+        }
+        return GeometrySimplifier.buildLevels(geometry.getCoordinates(), "poligon".equals(tipus));
+    }
+}
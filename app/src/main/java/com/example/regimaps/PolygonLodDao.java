@@ -0,0 +1,34 @@
+package com.example.regimaps;
+
+import androidx.room.Dao;
+import androidx.room.Insert;
+import androidx.room.OnConflictStrategy;
+import androidx.room.Query;
+
+import java.util.List;
+
+/**
+ * DAO dels nivells de detall dels polígons i línies guardats.
+ * Els nivells s'escriuen amb PolygonLod, dins la mateixa transacció que el polígon.
+ */
+@Dao
+public interface PolygonLodDao {
+
+    // Desa (o substitueix) un lot de nivells de detall.
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    void insertAll(List<PolygonLodEntity> lods);
+
+    // Elimina tots els nivells d'un polígon.
+    @Query("DELETE FROM saved_polygon_lods WHERE polygon_id = :polygonId")
+    void deleteForPolygon(int polygonId);
+
+    // Retorna tots els nivells d'un polígon, del menys al més detallat.
+    @Query("SELECT * FROM saved_polygon_lods WHERE polygon_id = :polygonId ORDER BY level")
+    List<PolygonLodEntity> getLodsForPolygon(int polygonId);
+
+    // Retorna, per a cada polígon donat, un sol nivell: 'level' o, si no el té, el següent més detallat.
+    // Els polígons sense cap nivell igual o més detallat no hi surten.
+    @Query("SELECT * FROM saved_polygon_lods AS lod WHERE polygon_id IN (:polygonIds) AND level = "
+            + "(SELECT MIN(level) FROM saved_polygon_lods WHERE polygon_id = lod.polygon_id AND level >= :level)")
+    List<PolygonLodEntity> getLods(List<Integer> polygonIds, int level);
+}
@@ -0,0 +1,35 @@
+package com.example.regimaps;
+
+import androidx.room.ColumnInfo;
+import androidx.room.Entity;
+
+/**
+ * Entitat Room amb un nivell de detall simplificat d'un polígon o línia guardada.
+ * Cada polígon pot tenir fins a un registre per nivell (vegeu {@link GeometrySimplifier}).
+ * Els nivells es desen en una taula a part perquè les llistes i les consultes que no dibuixen
+ * no hagin de llegir-los.
+ */
+@Entity(tableName = "saved_polygon_lods", primaryKeys = {"polygon_id", "level"})
+public class PolygonLodEntity {
+
+    // Id del polígon a saved_polygons.
+    @ColumnInfo(name = "polygon_id")
+    public int polygonId;
+
+    // Nivell de detall (0 és el menys detallat).
+    @ColumnInfo(name = "level")
+    public int level;
+
+    // Vèrtexs simplificats, codificats en binari (vegeu GeometryCodec).
+    @ColumnInfo(name = "geometry", typeAffinity = ColumnInfo.BLOB)
+    public Geometry geometry;
+
+    // Constructor buit necessari per a Room.
+    public PolygonLodEntity() {}
+
+    public PolygonLodEntity(int polygonId, int level, Geometry geometry) {
+        this.polygonId = polygonId;
+        this.level = level;
+        this.geometry = geometry;
+    }
+}
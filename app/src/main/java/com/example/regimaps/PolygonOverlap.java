@@ -0,0 +1,425 @@
+package com.example.regimaps;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Detecció de superposicions entre polígons guardats (per exemple, dues parcel·les que es
+ * trepitgen) i càlcul de l'àrea de cada intersecció.
+ *
+ * Primer es busquen les parelles candidates amb una línia d'escombrat sobre els rectangles
+ * envolupants (ordenats per longitud mínima, només es comparen els que es solapen). Per a cada
+ * candidata es retalla un polígon amb l'altre: el que té menys vèrtexs es divideix en triangles
+ * (o es fa servir sencer si és convex) i l'altre es retalla amb cada peça (Sutherland-Hodgman).
+ * L'àrea de les peces resultants es calcula sobre l'esfera, com SphericalUtil
+ * (vegeu {@link IncrementalMeasure}).
+ *
+ * L'àrea de cada parella es desa en una memòria cau indexada pel resum de les dues geometries,
+ * no pels ids: si es torna a fer l'anàlisi després d'editar un polígon, només es recalculen les
+ * parelles on surt la geometria nova. Es pot fer servir des de qualsevol fil.
+ */
+public final class PolygonOverlap {
+
+    // Per sota d'aquesta àrea, una intersecció es considera un arrodoniment de la vora compartida
+    // entre dues parcel·les veïnes i no una superposició.
+    static final double MIN_OVERLAP_M2 = 1.0;
+    // Parelles que es recorden com a màxim (les menys usades surten primer).
+    static final int MAX_CACHED_PAIRS = 100_000;
+
+    private static final double EPSILON = 1e-15;
+
+    // Instància de l'aplicació: l'anàlisi des de qualsevol pantalla reaprofita les mateixes àrees.
+    private static final PolygonOverlap SHARED = new PolygonOverlap();
+
+    private final Map<PairKey, Double> cache = new LinkedHashMap<PairKey, Double>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<PairKey, Double> eldest) {
+            return size() > MAX_CACHED_PAIRS;
+        }
+    };
+    // Parelles retallades de debò (les que no eren a la memòria cau).
+    private long clippedPairs;
+
+    /**
+     * Retorna la instància compartida per tota l'aplicació (la que fa servir {@link SpatialIndex}).
+     * Les proves i els bancs de proves en poden crear d'altres amb el constructor.
+     */
+    public static PolygonOverlap shared() {
+        return SHARED;
+    }
+
+    /**
+     * Polígon preparat per a l'anàlisi: id, anell [lat0, lng0, lat1, lng1, ...], rectangle
+     * envolupant i resum de la geometria.
+     */
+    public static final class Shape {
+        public final int id;
+        final double[] ring;
+        final long hash;
+        final double minLat;
+        final double maxLat;
+        final double minLng;
+        final double maxLng;
+
+        public Shape(int id, double[] ring) {
+            this.id = id;
+            this.ring = openRing(ring);
+            double lo = Double.MAX_VALUE, hi = -Double.MAX_VALUE;
+            double left = Double.MAX_VALUE, right = -Double.MAX_VALUE;
+            long h = 0xcbf29ce484222325L;
+            for (int i = 0; i + 1 < this.ring.length; i += 2) {
+                lo = Math.min(lo, this.ring[i]);
+                hi = Math.max(hi, this.ring[i]);
+                left = Math.min(left, this.ring[i + 1]);
+                right = Math.max(right, this.ring[i + 1]);
+                h = fnv(h, Double.doubleToLongBits(this.ring[i]));
+                h = fnv(h, Double.doubleToLongBits(this.ring[i + 1]));
+            }
+            this.minLat = lo;
+            this.maxLat = hi;
+            this.minLng = left;
+            this.maxLng = right;
+            this.hash = h;
+        }
+
+        int vertexCount() {
+            return ring.length / 2;
+        }
+
+        boolean boundsIntersect(Shape other) {
+            return maxLat >= other.minLat && minLat <= other.maxLat
+                    && maxLng >= other.minLng && minLng <= other.maxLng;
+        }
+    }
+
+    /**
+     * Dos polígons que se superposen i l'àrea comuna, en metres quadrats.
+     */
+    public static final class Overlap {
+        public final int idA;
+        public final int idB;
+        public final double areaM2;
+
+        Overlap(int idA, int idB, double areaM2) {
+            this.idA = idA;
+            this.idB = idB;
+            this.areaM2 = areaM2;
+        }
+    }
+
+    /**
+     * Totes les parelles de polígons que se superposen, amb idA < idB, ordenades per idA i idB.
+     */
+    public List<Overlap> findOverlaps(List<Shape> shapes) {
+        List<Shape> sorted = new ArrayList<>(shapes);
+        Collections.sort(sorted, (a, b) -> Double.compare(a.minLng, b.minLng));
+        List<Overlap> overlaps = new ArrayList<>();
+        // Polígons que la línia d'escombrat encara travessa.
+        List<Shape> active = new ArrayList<>();
+        for (Shape shape : sorted) {
+            int kept = 0;
+            for (int i = 0; i < active.size(); i++) {
+                Shape other = active.get(i);
+                if (other.maxLng >= shape.minLng) {
+                    active.set(kept++, other);
+                    if (other.maxLat >= shape.minLat && other.minLat <= shape.maxLat) {
+                        addIfOverlapping(overlaps, shape, other);
+                    }
+                }
+            }
+            active.subList(kept, active.size()).clear();
+            active.add(shape);
+        }
+        Collections.sort(overlaps, (a, b) -> a.idA != b.idA ? Integer.compare(a.idA, b.idA) : Integer.compare(a.idB, b.idB));
+        return overlaps;
+    }
+
+    /**
+     * Polígons de 'others' que se superposen amb 'shape' (per exemple, els que l'índex espacial
+     * ha retornat per al seu rectangle), de més àrea comuna a menys. Se salta el mateix id.
+     */
+    public List<Overlap> overlapsWith(Shape shape, List<Shape> others) {
+        List<Overlap> overlaps = new ArrayList<>();
+        for (Shape other : others) {
+            if (other.id != shape.id && shape.boundsIntersect(other)) {
+                addIfOverlapping(overlaps, shape, other);
+            }
+        }
+        Collections.sort(overlaps, (a, b) -> Double.compare(b.areaM2, a.areaM2));
+        return overlaps;
+    }
+
+    /**
+     * Àrea comuna de dos polígons, en metres quadrats, de la memòria cau si ja s'havia calculat.
+     */
+    public double intersectionArea(Shape a, Shape b) {
+        PairKey key = new PairKey(a.hash, b.hash);
+        synchronized (cache) {
+            Double cached = cache.get(key);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        double area = a.boundsIntersect(b) ? computeIntersectionArea(a, b) : 0;
+        synchronized (cache) {
+            cache.put(key, area);
+            clippedPairs++;
+        }
+        return area;
+    }
+
+    // Parelles que s'han hagut de retallar (no eren a la memòria cau).
+    public long getClippedPairs() {
+        synchronized (cache) {
+            return clippedPairs;
+        }
+    }
+
+    // Buida la memòria cau.
+    public void clear() {
+        synchronized (cache) {
+            cache.clear();
+        }
+    }
+
+    private void addIfOverlapping(List<Overlap> overlaps, Shape a, Shape b) {
+        double area = intersectionArea(a, b);
+        if (area >= MIN_OVERLAP_M2) {
+            overlaps.add(a.id < b.id ? new Overlap(a.id, b.id, area) : new Overlap(b.id, a.id, area));
+        }
+    }
+
+    /**
+     * Retalla el polígon amb més vèrtexs amb cada peça convexa de l'altre i suma l'àrea geodèsica
+     * de les peces. Les coordenades es tracten com a pla (lat, lng) per retallar, cosa que per a
+     * polígons de la mida d'una parcel·la no canvia el resultat de manera apreciable.
+     */
+    static double computeIntersectionArea(Shape a, Shape b) {
+        if (a.vertexCount() < 3 || b.vertexCount() < 3) {
+            return 0;
+        }
+        Shape clip = a.vertexCount() <= b.vertexCount() ? a : b;
+        Shape subject = clip == a ? b : a;
+        double area = 0;
+        for (double[] piece : convexPieces(clip.ring)) {
+            if (!boundsIntersect(piece, subject)) {
+                continue;
+            }
+            double[] clipped = clipConvex(subject.ring, piece);
+            if (clipped.length >= 6) {
+                IncrementalMeasure measure = new IncrementalMeasure();
+                for (int i = 0; i < clipped.length; i += 2) {
+                    measure.addVertex(clipped[i], clipped[i + 1]);
+                }
+                area += measure.getArea();
+            }
+        }
+        return area;
+    }
+
+    /**
+     * Divideix un anell en peces convexes en sentit antihorari (x = lng, y = lat): l'anell sencer
+     * si ja és convex o, si no, els triangles d'una triangulació per orelles.
+     */
+    static List<double[]> convexPieces(double[] ring) {
+        double[] ccw = signedArea(ring) >= 0 ? ring : reverse(ring);
+        if (isConvex(ccw)) {
+            return Collections.singletonList(ccw);
+        }
+        int n = ccw.length / 2;
+        // Llista enllaçada dels vèrtexs que queden per tallar.
+        int[] next = new int[n];
+        int[] prev = new int[n];
+        for (int i = 0; i < n; i++) {
+            next[i] = (i + 1) % n;
+            prev[i] = (i + n - 1) % n;
+        }
+        List<double[]> triangles = new ArrayList<>(n - 2);
+        int remaining = n;
+        int current = 0;
+        int misses = 0;
+        while (remaining > 3) {
+            int p = prev[current], q = next[current];
+            // Si l'anell no és simple pot ser que no quedi cap orella: es talla igualment per acabar.
+            if (isEar(ccw, p, current, q, next) || misses >= remaining) {
+                triangles.add(triangle(ccw, p, current, q));
+                next[p] = q;
+                prev[q] = p;
+                remaining--;
+                current = q;
+                misses = 0;
+            } else {
+                current = q;
+                misses++;
+            }
+        }
+        triangles.add(triangle(ccw, prev[current], current, next[current]));
+        return triangles;
+    }
+
+    /**
+     * Sutherland-Hodgman: la part de 'subject' (qualsevol polígon simple) que queda dins de
+     * 'convex' (convex, en sentit antihorari).
+     */
+    static double[] clipConvex(double[] subject, double[] convex) {
+        double[] output = subject;
+        int clipCount = convex.length / 2;
+        for (int e = 0; e < clipCount && output.length >= 6; e++) {
+            double ay = convex[2 * e], ax = convex[2 * e + 1];
+            int f = (e + 1) % clipCount;
+            double by = convex[2 * f], bx = convex[2 * f + 1];
+            double[] input = output;
+            int count = input.length / 2;
+            double[] result = new double[count * 4];
+            int size = 0;
+            double sy = input[2 * (count - 1)], sx = input[2 * (count - 1) + 1];
+            double sSide = cross(ax, ay, bx, by, sx, sy);
+            for (int i = 0; i < count; i++) {
+                double py = input[2 * i], px = input[2 * i + 1];
+                double pSide = cross(ax, ay, bx, by, px, py);
+                if (pSide >= 0) {
+                    if (sSide < 0) {
+                        double t = sSide / (sSide - pSide);
+                        result[size++] = sy + t * (py - sy);
+                        result[size++] = sx + t * (px - sx);
+                    }
+                    result[size++] = py;
+                    result[size++] = px;
+                } else if (sSide >= 0) {
+                    double t = sSide / (sSide - pSide);
+                    result[size++] = sy + t * (py - sy);
+                    result[size++] = sx + t * (px - sx);
+                }
+                sy = py;
+                sx = px;
+                sSide = pSide;
+            }
+            output = size == result.length ? result : Arrays.copyOf(result, size);
+        }
+        return output;
+    }
+
+    // Treu l'últim vèrtex si repeteix el primer (anell tancat explícitament).
+    private static double[] openRing(double[] ring) {
+        int n = ring != null ? ring.length / 2 : 0;
+        if (n == 0) {
+            return new double[0];
+        }
+        if (n > 1 && ring[0] == ring[2 * (n - 1)] && ring[1] == ring[2 * (n - 1) + 1]) {
+            n--;
+        }
+        return Arrays.copyOf(ring, 2 * n);
+    }
+
+    // Àrea amb signe (fórmula del sabater) en graus, amb x = lng i y = lat: positiva si és antihorari.
+    private static double signedArea(double[] ring) {
+        int n = ring.length / 2;
+        double sum = 0;
+        for (int i = 0; i < n; i++) {
+            int j = (i + 1) % n;
+            sum += ring[2 * i + 1] * ring[2 * j] - ring[2 * j + 1] * ring[2 * i];
+        }
+        return sum / 2;
+    }
+
+    private static double[] reverse(double[] ring) {
+        int n = ring.length / 2;
+        double[] reversed = new double[ring.length];
+        for (int i = 0; i < n; i++) {
+            reversed[2 * i] = ring[2 * (n - 1 - i)];
+            reversed[2 * i + 1] = ring[2 * (n - 1 - i) + 1];
+        }
+        return reversed;
+    }
+
+    // Un anell antihorari és convex si tots els girs són a l'esquerra (o rectes).
+    private static boolean isConvex(double[] ccw) {
+        int n = ccw.length / 2;
+        for (int i = 0; i < n; i++) {
+            int p = (i + n - 1) % n, q = (i + 1) % n;
+            if (cross(ccw, p, i, q) < -EPSILON) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // El vèrtex i (entre p i q) és una orella si gira a l'esquerra i cap altre vèrtex pendent cau dins del triangle.
+    private static boolean isEar(double[] ccw, int p, int i, int q, int[] next) {
+        if (cross(ccw, p, i, q) <= EPSILON) {
+            return false;
+        }
+        for (int k = next[q]; k != p; k = next[k]) {
+            double y = ccw[2 * k], x = ccw[2 * k + 1];
+            if (cross(ccw[2 * p + 1], ccw[2 * p], ccw[2 * i + 1], ccw[2 * i], x, y) >= 0
+                    && cross(ccw[2 * i + 1], ccw[2 * i], ccw[2 * q + 1], ccw[2 * q], x, y) >= 0
+                    && cross(ccw[2 * q + 1], ccw[2 * q], ccw[2 * p + 1], ccw[2 * p], x, y) >= 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static double[] triangle(double[] ring, int a, int b, int c) {
+        return new double[]{ring[2 * a], ring[2 * a + 1], ring[2 * b], ring[2 * b + 1], ring[2 * c], ring[2 * c + 1]};
+    }
+
+    // Gir dels vèrtexs p -> i -> q de l'anell: positiu cap a l'esquerra.
+    private static double cross(double[] ring, int p, int i, int q) {
+        return cross(ring[2 * p + 1], ring[2 * p], ring[2 * i + 1], ring[2 * i], ring[2 * q + 1], ring[2 * q]);
+    }
+
+    // Producte vectorial (b - a) x (p - a): positiu si p queda a l'esquerra de a -> b.
+    private static double cross(double ax, double ay, double bx, double by, double px, double py) {
+        return (bx - ax) * (py - ay) - (by - ay) * (px - ax);
+    }
+
+    private static boolean boundsIntersect(double[] piece, Shape shape) {
+        double lo = Double.MAX_VALUE, hi = -Double.MAX_VALUE;
+        double left = Double.MAX_VALUE, right = -Double.MAX_VALUE;
+        for (int i = 0; i < piece.length; i += 2) {
+            lo = Math.min(lo, piece[i]);
+            hi = Math.max(hi, piece[i]);
+            left = Math.min(left, piece[i + 1]);
+            right = Math.max(right, piece[i + 1]);
+        }
+        return hi >= shape.minLat && lo <= shape.maxLat && right >= shape.minLng && left <= shape.maxLng;
+    }
+
+    private static long fnv(long hash, long value) {
+        for (int i = 0; i < 8; i++) {
+            hash ^= (value >>> (8 * i)) & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    // Clau de la memòria cau: els resums de les dues geometries, sense importar l'ordre.
+    private static final class PairKey {
+        private final long low;
+        private final long high;
+
+        PairKey(long a, long b) {
+            low = Math.min(a, b);
+            high = Math.max(a, b);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof PairKey)) {
+                return false;
+            }
+            PairKey other = (PairKey) o;
+            return low == other.low && high == other.high;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(low * 31 + high);
+        }
+    }
+}
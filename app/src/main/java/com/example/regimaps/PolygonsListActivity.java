@@ -1,21 +1,50 @@
 package com.example.regimaps;
 
 import android.content.Intent;
+import android.util.Log;
+import android.view.Menu;
+import android.view.MenuItem;
+import android.widget.Toast;
 
-
+import androidx.annotation.NonNull;
 import androidx.appcompat.app.AlertDialog;
+import androidx.lifecycle.LiveData;
+import androidx.paging.PagingSource;
+import androidx.recyclerview.widget.DiffUtil;
 
 import java.text.DecimalFormat;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
 
 /**
  * Activitat que mostra la llista de polígons o línies guardades per l'usuari.
  * Permet visualitzar, exportar o eliminar cada element.
  */
 public class PolygonsListActivity extends BaseListActivity<SavedPolygonEntity> {
+    private static final int MENU_OVERLAPS = 1;
+    // Noms de punts que es llisten com a màxim al diàleg de punts dins d'un polígon.
+    private static final int MAX_LISTED_POINTS = 50;
     private SavedPolygonDao dao;
 
+    /**
+     * Afegeix a la barra l'opció per buscar superposicions entre tots els polígons guardats.
+     */
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu) {
+        menu.add(Menu.NONE, MENU_OVERLAPS, Menu.NONE, "Superposicions");
+        return true;
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(@NonNull MenuItem item) {
+        if (item.getItemId() == MENU_OVERLAPS) {
+            showAllOverlaps();
+            return true;
+        }
+        return super.onOptionsItemSelected(item);
+    }
+
     /**
      * Retorna el layout associat a aquesta activitat.
      */
@@ -23,132 +52,218 @@ public class PolygonsListActivity extends BaseListActivity<SavedPolygonEntity> {
     protected int getLayoutResource() { return R.layout.activity_polygons_list; }
 
     /**
-     * Retorna l'identificador del ListView on es mostrarà la llista d'elements.
+     * Retorna l'identificador del RecyclerView on es mostrarà la llista d'elements.
      */
     @Override
     protected int getListViewId() { return R.id.polygonsList; }
 
     /**
-     * Carrega els polígons guardats de la base de dades de manera asíncrona.
-     * Un cop recuperats, actualitza la llista a la UI.
+     * Font paginada dels polígons guardats. Room la invalida quan la taula canvia.
      */
     @Override
-    protected void loadItems() {
-        dao = db.savedPolygonDao();
-        executorService.execute(() -> {
-            List<SavedPolygonEntity> polygons = dao.getAllSavedPolygons();
-            updateList(polygons);
-        });
+    protected PagingSource<Integer, SavedPolygonEntity> createPagingSource() {
+        return getDao().getPagedSavedPolygons();
     }
 
     /**
-     * Dona format a les dades dels polígons per mostrar-les a la llista.
-     * Mostra el nom, el tipus (Polígon/Línia) i l'àrea o distància segons correspongui.
+     * Font paginada dels polígons el nom dels quals coincideix amb la cerca.
      */
     @Override
-    protected List<String> formatData(List<SavedPolygonEntity> items) {
-        DecimalFormat df = new DecimalFormat("#.##");
-        List<String> formatted = new ArrayList<>();
-        for (SavedPolygonEntity p : items) {
-            String name = (p.name != null && !p.name.isEmpty()) ? p.name : "Sense nom"; // Utilitzem el nom o "Sense nom" si està buit
-            String typeInfo = p.tipus.substring(0, 1).toUpperCase() + p.tipus.substring(1); // Capitalitzem el tipus: "Poligon" o "Linia"
-
-            String details;
-            if (p.tipus.equals("poligon")) {
-                details = "Àrea: " + df.format(p.area) + " m²";
-            } else {
-                details = "Distància: " + df.format(p.distancia) + " m";
+    protected PagingSource<Integer, SavedPolygonEntity> createSearchPagingSource(String matchQuery) {
+        return getDao().searchPaged(matchQuery);
+    }
+
+    /**
+     * Dos polígons són el mateix element si tenen el mateix id.
+     */
+    @Override
+    protected DiffUtil.ItemCallback<SavedPolygonEntity> getDiffCallback() {
+        return new DiffUtil.ItemCallback<SavedPolygonEntity>() {
+            @Override
+            public boolean areItemsTheSame(@NonNull SavedPolygonEntity oldItem, @NonNull SavedPolygonEntity newItem) {
+                return oldItem.id == newItem.id;
             }
-            // Afegim la cadena formatada a la llista
-            formatted.add(name + " (" + typeInfo + ") - " + details);
+
+            @Override
+            public boolean areContentsTheSame(@NonNull SavedPolygonEntity oldItem, @NonNull SavedPolygonEntity newItem) {
+                return Objects.equals(oldItem.name, newItem.name)
+                        && Objects.equals(oldItem.tipus, newItem.tipus)
+                        && oldItem.area == newItem.area
+                        && oldItem.distancia == newItem.distancia
+                        && oldItem.perimeter == newItem.perimeter
+                        && oldItem.vertexCount == newItem.vertexCount;
+            }
+        };
+    }
+
+    /**
+     * Dona format a un polígon per mostrar-lo a la llista.
+     * Mostra el nom, el tipus (Polígon/Línia), l'àrea i el perímetre o la distància segons correspongui
+     * i el nombre de vèrtexs. Tot surt de columnes precalculades, sense llegir la geometria.
+     */
+    @Override
+    protected String formatItem(SavedPolygonEntity p) {
+        DecimalFormat df = new DecimalFormat("#.##");
+        String name = (p.name != null && !p.name.isEmpty()) ? p.name : "Sense nom"; // Utilitzem el nom o "Sense nom" si està buit
+        String typeInfo = p.tipus.substring(0, 1).toUpperCase() + p.tipus.substring(1); // Capitalitzem el tipus: "Poligon" o "Linia"
+
+        String details;
+        if (p.tipus.equals("poligon")) {
+            details = "Àrea: " + df.format(p.area) + " m² · Perímetre: " + df.format(p.perimeter) + " m";
+        } else {
+            details = "Distància: " + df.format(p.distancia) + " m";
         }
-        return formatted;
+        return name + " (" + typeInfo + ") - " + details + " · " + p.vertexCount + " vèrtexs";
+    }
+
+    @Override
+    protected int countItems() {
+        return getDao().countSavedPolygons();
     }
+
+    @Override
+    protected LiveData<Integer> observeItemCount() {
+        return getDao().observeCount();
+    }
+
+    @Override
+    protected List<SavedPolygonEntity> loadItemsAfter(int afterId, int limit) {
+        return getDao().getSavedPolygonsAfter(afterId, limit);
+    }
+
+    @Override
+    protected void deleteItemsByIds(List<Integer> ids) {
+        getDao().deleteByIds(ids);
+    }
+
+    @Override
+    protected int getItemId(SavedPolygonEntity item) {
+        return item.id;
+    }
+
     /**
      * Mostra un diàleg amb les opcions disponibles per a un element de la llista:
-     * veure al mapa, exportar a KML o eliminar.
+     * veure al mapa, veure els punts que té a dins (només els polígons), exportar a KML o eliminar.
      */
     @Override
-    protected void showOptionsDialog(int position) {
+    protected void showOptionsDialog(SavedPolygonEntity polygon) {
+        List<String> options = new ArrayList<>();
+        List<Runnable> actions = new ArrayList<>();
+        options.add("Veure al mapa");
+        actions.add(() -> viewPolygon(polygon));
+        if ("poligon".equals(polygon.tipus)) {
+            options.add("Punts dins del polígon");
+            actions.add(() -> showPointsInside(polygon));
+        }
+        options.add("Exportar a KML");
+        actions.add(this::exportToKML);
+        options.add("Eliminar");
+        actions.add(() -> deleteItem(polygon));
         new AlertDialog.Builder(this)
                 .setTitle("Opcions del polígon")
-                .setPositiveButton("Veure al mapa", (d, w) -> viewPolygon(position))
-                .setNeutralButton("Exportar a KML", (d, w) -> exportToKML(items))
-                .setNegativeButton("Eliminar", (d, w) -> deleteItem(position))
+                .setItems(options.toArray(new String[0]), (d, which) -> actions.get(which).run())
+                .setNegativeButton("Cancel·la", null)
                 .show();
     }
-   /* @Override
-    protected String generateKMLContent(List<SavedPolygonEntity> polygons) {
-        StringBuilder kml = new StringBuilder();
-        kml.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
-        kml.append("<kml xmlns=\"http://www.opengis.net/kml/2.2\">\n");
-        kml.append("<Document>\n");
-        kml.append("<name>Polígons Guardats</name>\n");
-
-        for (SavedPolygonEntity polygon : polygons) {
-            kml.append("<Placemark>\n");
-            kml.append("<name>").append(polygon.tipus).append("</name>\n");
-            kml.append("<description>");
-            if (polygon.tipus.equals("poligon")) {
-                kml.append("Àrea: ").append(polygon.area).append(" m²");
-            } else {
-                kml.append("Distància: ").append(polygon.distancia).append(" m");
-            }
-            kml.append("</description>\n");
-
-            String[] coords = polygon.points.split(";");
-            if (polygon.tipus.equals("poligon")) {
-                kml.append("<Polygon><outerBoundaryIs><LinearRing><coordinates>\n");
-                for (String coord : coords) {
-                    String[] parts = coord.split(",");
-                    if (parts.length == 2) {
-                        kml.append(parts[1]).append(",").append(parts[0]).append(" ");
-                    }
-                }
-                kml.append("\n</coordinates></LinearRing></outerBoundaryIs></Polygon>\n");
-            } else { // linia
-                kml.append("<LineString><coordinates>\n");
-                for (String coord : coords) {
-                    String[] parts = coord.split(",");
-                    if (parts.length == 2) {
-                        kml.append(parts[1]).append(",").append(parts[0]).append(" ");
-                    }
-                }
-                kml.append("\n</coordinates></LineString>\n");
-            }
-            kml.append("</Placemark>\n");
-        }
 
-        kml.append("</Document>\n");
-        kml.append("</kml>\n");
-        return kml.toString();
-    }*/
+    // Retorna el DAO de polígons.
+    private SavedPolygonDao getDao() {
+        if (dao == null) {
+            dao = db.savedPolygonDao();
+        }
+        return dao;
+    }
 
     /**
      * Obre l'activitat del mapa i mostra el polígon o línia seleccionat.
      */
 
-    private void viewPolygon(int position) {
-        SavedPolygonEntity polygon = items.get(position);
+    private void viewPolygon(SavedPolygonEntity polygon) {
+        // Només es passa l'id: la geometria pot superar el límit de mida d'un Intent.
+        // La forma es deixa a la memòria compartida perquè el mapa no l'hagi de tornar a llegir.
+        ShapeCache.getInstance(db).put(polygon);
         Intent intent = new Intent(this, MapsActivity.class);
-        intent.putExtra("polygon_points", polygon.points);
-        intent.putExtra("polygon_type", polygon.tipus); // "poligon" o "linia"
-        if (polygon.tipus.equals("poligon")) {
-            intent.putExtra("polygon_info", polygon.name + " - Àrea: " + polygon.area + " m²");
-        } else {
-            intent.putExtra("polygon_info", polygon.name + " - Distància: " + polygon.distancia + " m");
-        }
+        intent.putExtra("polygon_id", polygon.id);
         startActivity(intent);
 
     }
 
     /**
-     * Elimina l'element seleccionat de la base de dades i actualitza la llista.
+     * Busca en segon pla totes les parelles de polígons que se superposen i les mostra en un diàleg.
+     * Les àrees ja calculades es reaprofiten (vegeu {@link PolygonOverlap#shared()}), així que
+     * repetir la cerca després d'editar un polígon només retalla les parelles on surt.
      */
-    private void deleteItem(int position) {
-        executorService.execute(() -> {
-            dao.delete(items.get(position));
-            loadItems(); // Actualitza la llista després d'eliminar
+    private void showAllOverlaps() {
+        Toast.makeText(this, "Buscant superposicions...", Toast.LENGTH_SHORT).show();
+        ioExecutor.execute(() -> {
+            List<SpatialIndex.NamedOverlap> overlaps;
+            try {
+                overlaps = SpatialIndex.findAllOverlaps(db);
+            } catch (Exception e) {
+                Log.e("PolygonsList", "Error buscant superposicions: " + e.getMessage(), e);
+                AppExecutors.get().main().post(this, () ->
+                        Toast.makeText(this, "Error buscant superposicions", Toast.LENGTH_SHORT).show());
+                return;
+            }
+            DecimalFormat df = new DecimalFormat("#.##");
+            StringBuilder missatge = new StringBuilder();
+            for (SpatialIndex.NamedOverlap overlap : overlaps) {
+                missatge.append("• ").append(displayName(overlap.nameA)).append(" i ")
+                        .append(displayName(overlap.nameB)).append(": ")
+                        .append(df.format(overlap.areaM2)).append(" m²\n");
+            }
+            AppExecutors.get().main().post(this, () -> new AlertDialog.Builder(this)
+                    .setTitle("Superposicions")
+                    .setMessage(missatge.length() > 0 ? missatge.toString()
+                            : "Cap polígon guardat se superposa amb un altre")
+                    .setPositiveButton("D'acord", null)
+                    .show());
+        });
+    }
+
+    /**
+     * Llegeix en segon pla els punts guardats que cauen dins del polígon ({@link SpatialIndex#pointsInPolygon})
+     * i en mostra els noms. Si n'hi ha molts, només es llisten els primers.
+     */
+    private void showPointsInside(SavedPolygonEntity polygon) {
+        ioExecutor.execute(() -> {
+            List<SavedPointEntity> points;
+            try {
+                points = SpatialIndex.pointsInPolygon(db, polygon);
+            } catch (Exception e) {
+                Log.e("PolygonsList", "Error buscant els punts del polígon: " + e.getMessage(), e);
+                AppExecutors.get().main().post(this, () ->
+                        Toast.makeText(this, "Error buscant els punts del polígon", Toast.LENGTH_SHORT).show());
+                return;
+            }
+            StringBuilder missatge = new StringBuilder();
+            for (int i = 0; i < Math.min(points.size(), MAX_LISTED_POINTS); i++) {
+                missatge.append("• ").append(displayName(points.get(i).name)).append('\n');
+            }
+            if (points.size() > MAX_LISTED_POINTS) {
+                missatge.append("i ").append(points.size() - MAX_LISTED_POINTS).append(" més");
+            }
+            String title = points.size() + (points.size() == 1 ? " punt dins de " : " punts dins de ")
+                    + displayName(polygon.name);
+            AppExecutors.get().main().post(this, () -> new AlertDialog.Builder(this)
+                    .setTitle(title)
+                    .setMessage(missatge.length() > 0 ? missatge.toString()
+                            : "No hi ha cap punt guardat dins del polígon")
+                    .setPositiveButton("D'acord", null)
+                    .show());
         });
     }
+
+    // Nom per mostrar d'un polígon o punt, o "Sense nom" si no en té.
+    private static String displayName(String name) {
+        return name != null && !name.isEmpty() ? name : "Sense nom";
+    }
+
+    /**
+     * Elimina l'element seleccionat de la base de dades.
+     * Room invalida la font paginada i la llista s'actualitza sola.
+     */
+    private void deleteItem(SavedPolygonEntity polygon) {
+        ioExecutor.execute(() -> getDao().delete(polygon));
+    }
 }
\ No newline at end of file
@@ -0,0 +1,267 @@
+package com.example.regimaps;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Estadístiques de les consultes a la base de dades, per saber quines són lentes als dispositius
+ * reals. Per a cada sentència (el text SQL amb els '?', sense valors) es guarda quantes vegades
+ * s'ha executat, un histograma de la durada, les files retornades i els bytes llegits.
+ * Les execucions que superen un llindar es desen també en un registre circular de consultes
+ * lentes, que només conserva les últimes.
+ *
+ * La memòria està limitada: com a màxim MAX_QUERIES sentències diferents (la resta s'agrupen en
+ * una sola entrada) i 'slowLogSize' consultes lentes. Es pot fer servir des de qualsevol fil.
+ */
+public final class QueryStats {
+
+    // Límits superiors dels intervals de l'histograma, en mil·lisegons; l'últim interval és obert.
+    static final long[] BUCKET_LIMITS_MILLIS = {1, 2, 4, 8, 16, 32, 64, 128, 256, 512, 1024};
+    // Llindar per defecte de consulta lenta: més de tres fotogrames si es fa al fil principal.
+    static final long DEFAULT_SLOW_MILLIS = 50;
+    static final int DEFAULT_SLOW_LOG_SIZE = 100;
+    // Sentències diferents que es compten per separat.
+    static final int MAX_QUERIES = 200;
+    // Entrada on s'acumulen les sentències que no hi caben.
+    static final String OTHER_QUERIES = "(altres sentències)";
+
+    private final long slowNanos;
+    private final SlowQuery[] slowLog;
+    // Posició on s'escriurà la propera consulta lenta i nombre total de consultes lentes.
+    private int slowNext;
+    private long slowTotal;
+
+    private final Map<String, Entry> entries = new HashMap<>();
+    // Sentències vistes per RoomDatabase.QueryCallback (inclou transaccions), només en depuració.
+    private final Map<String, Long> statements = new LinkedHashMap<>();
+    private long since = System.currentTimeMillis();
+
+    public QueryStats() {
+        this(DEFAULT_SLOW_MILLIS, DEFAULT_SLOW_LOG_SIZE);
+    }
+
+    public QueryStats(long slowMillis, int slowLogSize) {
+        this.slowNanos = slowMillis * 1_000_000L;
+        this.slowLog = new SlowQuery[slowLogSize];
+    }
+
+    /**
+     * Estadístiques acumulades d'una sentència.
+     */
+    public static final class Entry {
+        public final String sql;
+        public long count;
+        public long totalNanos;
+        public long maxNanos;
+        public long rows;
+        public long bytes;
+        // Execucions per interval de BUCKET_LIMITS_MILLIS (l'última posició són les més lentes).
+        public final long[] buckets = new long[BUCKET_LIMITS_MILLIS.length + 1];
+
+        Entry(String sql) {
+            this.sql = sql;
+        }
+
+        Entry(Entry other) {
+            this(other.sql);
+            count = other.count;
+            totalNanos = other.totalNanos;
+            maxNanos = other.maxNanos;
+            rows = other.rows;
+            bytes = other.bytes;
+            System.arraycopy(other.buckets, 0, buckets, 0, buckets.length);
+        }
+
+        // Límit superior (en ms) de l'interval on cau el percentil p (0-1), o la durada màxima
+        // si cau a l'interval obert.
+        public double percentileMillis(double p) {
+            long target = (long) Math.ceil(p * count);
+            long seen = 0;
+            for (int i = 0; i < BUCKET_LIMITS_MILLIS.length; i++) {
+                seen += buckets[i];
+                if (seen >= target && seen > 0) {
+                    return BUCKET_LIMITS_MILLIS[i];
+                }
+            }
+            return maxNanos / 1e6;
+        }
+    }
+
+    /**
+     * Una execució que ha superat el llindar de consulta lenta.
+     */
+    public static final class SlowQuery {
+        public final String sql;
+        public final long nanos;
+        public final long rows;
+        public final long bytes;
+        public final String thread;
+        public final long timeMillis;
+
+        SlowQuery(String sql, long nanos, long rows, long bytes, String thread, long timeMillis) {
+            this.sql = sql;
+            this.nanos = nanos;
+            this.rows = rows;
+            this.bytes = bytes;
+            this.thread = thread;
+            this.timeMillis = timeMillis;
+        }
+    }
+
+    /**
+     * Registra una execució de 'sql' que ha durat 'nanos', ha retornat (o modificat) 'rows' files
+     * i n'ha llegit 'bytes'.
+     */
+    public synchronized void record(String sql, long nanos, long rows, long bytes) {
+        Entry entry = entries.get(sql);
+        if (entry == null) {
+            String key = entries.size() < MAX_QUERIES ? sql : OTHER_QUERIES;
+            entry = entries.get(key);
+            if (entry == null) {
+                entry = new Entry(key);
+                entries.put(key, entry);
+            }
+        }
+        entry.count++;
+        entry.totalNanos += nanos;
+        entry.maxNanos = Math.max(entry.maxNanos, nanos);
+        entry.rows += rows;
+        entry.bytes += bytes;
+        entry.buckets[bucketOf(nanos)]++;
+
+        if (nanos >= slowNanos && slowLog.length > 0) {
+            slowLog[slowNext] = new SlowQuery(sql, nanos, rows, bytes,
+                    Thread.currentThread().getName(), System.currentTimeMillis());
+            slowNext = (slowNext + 1) % slowLog.length;
+            slowTotal++;
+        }
+    }
+
+    // Compta una sentència vista per RoomDatabase.QueryCallback.
+    public synchronized void recordStatement(String sql) {
+        Long count = statements.get(sql);
+        if (count != null || statements.size() < MAX_QUERIES) {
+            statements.put(sql, count != null ? count + 1 : 1);
+        }
+    }
+
+    // Còpia de les estadístiques, de la sentència amb més temps total a la que menys.
+    public synchronized List<Entry> getEntries() {
+        List<Entry> copy = new ArrayList<>(entries.size());
+        for (Entry entry : entries.values()) {
+            copy.add(new Entry(entry));
+        }
+        Collections.sort(copy, (a, b) -> Long.compare(b.totalNanos, a.totalNanos));
+        return copy;
+    }
+
+    // Consultes lentes conservades, de la més antiga a la més recent.
+    public synchronized List<SlowQuery> getSlowQueries() {
+        List<SlowQuery> list = new ArrayList<>(slowLog.length);
+        int kept = (int) Math.min(slowTotal, slowLog.length);
+        int start = (slowNext - kept + slowLog.length) % Math.max(1, slowLog.length);
+        for (int i = 0; i < kept; i++) {
+            list.add(slowLog[(start + i) % slowLog.length]);
+        }
+        return list;
+    }
+
+    // Nombre de consultes lentes des de l'últim reinici (incloses les que ja no es conserven).
+    public synchronized long getSlowQueryCount() {
+        return slowTotal;
+    }
+
+    // Esborra totes les estadístiques.
+    public synchronized void reset() {
+        entries.clear();
+        statements.clear();
+        Arrays.fill(slowLog, null);
+        slowNext = 0;
+        slowTotal = 0;
+        since = System.currentTimeMillis();
+    }
+
+    /**
+     * Escriu un informe de text amb les estadístiques per sentència, les sentències vistes per
+     * QueryCallback i el registre de consultes lentes.
+     */
+    public void writeReport(Writer out) throws IOException {
+        List<Entry> list;
+        List<SlowQuery> slow;
+        Map<String, Long> seen;
+        long slowCount;
+        long from;
+        synchronized (this) {
+            list = getEntries();
+            slow = getSlowQueries();
+            seen = new LinkedHashMap<>(statements);
+            slowCount = slowTotal;
+            from = since;
+        }
+        SimpleDateFormat time = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS", Locale.ROOT);
+        out.write("Estadístiques de consultes des de " + time.format(new Date(from)) + "\n\n");
+        for (Entry entry : list) {
+            out.write(String.format(Locale.ROOT,
+                    "%d exec., total %.1f ms, mitjana %.2f ms, p50 ≤ %.0f ms, p95 ≤ %.0f ms, màx. %.1f ms, "
+                            + "%d files, %d bytes\n  %s\n  histograma (ms):",
+                    entry.count, entry.totalNanos / 1e6, entry.totalNanos / 1e6 / Math.max(1, entry.count),
+                    entry.percentileMillis(0.5), entry.percentileMillis(0.95), entry.maxNanos / 1e6,
+                    entry.rows, entry.bytes, entry.sql));
+            for (int i = 0; i < entry.buckets.length; i++) {
+                if (entry.buckets[i] > 0) {
+                    String range = i < BUCKET_LIMITS_MILLIS.length
+                            ? "<" + BUCKET_LIMITS_MILLIS[i]
+                            : "≥" + BUCKET_LIMITS_MILLIS[BUCKET_LIMITS_MILLIS.length - 1];
+                    out.write(" " + range + ":" + entry.buckets[i]);
+                }
+            }
+            out.write("\n\n");
+        }
+        if (!seen.isEmpty()) {
+            out.write("Sentències executades (QueryCallback)\n");
+            for (Map.Entry<String, Long> statement : seen.entrySet()) {
+                out.write(String.format(Locale.ROOT, "%8d  %s\n", statement.getValue(), statement.getKey()));
+            }
+            out.write("\n");
+        }
+        out.write("Consultes lentes (≥ " + slowNanos / 1_000_000L + " ms): " + slowCount
+                + ", es mostren les últimes " + slow.size() + "\n");
+        for (SlowQuery query : slow) {
+            out.write(String.format(Locale.ROOT, "%s [%s] %.1f ms, %d files, %d bytes\n  %s\n",
+                    time.format(new Date(query.timeMillis)), query.thread, query.nanos / 1e6,
+                    query.rows, query.bytes, query.sql));
+        }
+    }
+
+    // Informe de text sencer (vegeu writeReport).
+    public String report() {
+        StringWriter text = new StringWriter();
+        try {
+            writeReport(text);
+        } catch (IOException e) {
+            // Un StringWriter no llança errors d'escriptura.
+        }
+        return text.toString();
+    }
+
+    // Interval de l'histograma on cau una durada.
+    static int bucketOf(long nanos) {
+        for (int i = 0; i < BUCKET_LIMITS_MILLIS.length; i++) {
+            if (nanos < BUCKET_LIMITS_MILLIS[i] * 1_000_000L) {
+                return i;
+            }
+        }
+        return BUCKET_LIMITS_MILLIS.length;
+    }
+}
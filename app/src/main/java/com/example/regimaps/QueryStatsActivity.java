@@ -0,0 +1,84 @@
+package com.example.regimaps;
+
+import android.app.AlertDialog;
+import android.os.Bundle;
+import android.util.Log;
+import android.widget.Toast;
+
+import androidx.appcompat.app.AppCompatActivity;
+
+import com.example.regimaps.databinding.ActivityQueryStatsBinding;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * Pantalla de depuració amb les estadístiques de les consultes a la base de dades (vegeu
+ * {@link QueryStats}): temps per sentència, histogrames i el registre de consultes lentes.
+ * L'informe es pot desar a un fitxer de text per adjuntar-lo a un informe d'error.
+ * També inclou l'estat dels carrils d'execució compartits.
+ */
+public class QueryStatsActivity extends AppCompatActivity {
+
+    private ActivityQueryStatsBinding binding;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        binding = ActivityQueryStatsBinding.inflate(getLayoutInflater());
+        setContentView(binding.getRoot());
+
+        binding.btnRefresh.setOnClickListener(v -> showReport());
+        binding.btnSave.setOnClickListener(v -> saveReport());
+        binding.btnReset.setOnClickListener(v -> new AlertDialog.Builder(this)
+                .setMessage("Vols esborrar les estadístiques recollides fins ara?")
+                .setPositiveButton("Esborra", (d, w) -> {
+                    AppDatabase.getQueryStats().reset();
+                    showReport();
+                })
+                .setNegativeButton("Cancel·la", null)
+                .show());
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        showReport();
+    }
+
+    private void showReport() {
+        binding.report.setText(buildReport());
+    }
+
+    // Informe de les consultes seguit de l'estat dels carrils d'execució.
+    private String buildReport() {
+        AppExecutors executors = AppExecutors.get();
+        return AppDatabase.getQueryStats().report()
+                + "\nCarrils d'execució\n" + executors.io() + "\n" + executors.compute() + "\n";
+    }
+
+    // Desa l'informe a Android/data/<paquet>/files/query_stats_<data>.txt, en segon pla.
+    private void saveReport() {
+        String report = buildReport();
+        String stamp = new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.ROOT).format(new Date());
+        File file = new File(getExternalFilesDir(null), "query_stats_" + stamp + ".txt");
+        AppExecutors.get().io().execute(() -> {
+            try (Writer out = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+                out.write(report);
+                AppExecutors.get().main().post(this, () ->
+                        Toast.makeText(this, "Desat a " + file.getAbsolutePath(), Toast.LENGTH_LONG).show());
+            } catch (IOException e) {
+                Log.e("QueryStats", "Error desant l'informe: " + e.getMessage(), e);
+                AppExecutors.get().main().post(this, () ->
+                        Toast.makeText(this, "Error desant: " + e.getMessage(), Toast.LENGTH_LONG).show());
+            }
+        });
+    }
+}
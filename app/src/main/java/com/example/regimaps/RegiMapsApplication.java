@@ -0,0 +1,17 @@
+package com.example.regimaps;
+
+import android.app.Application;
+
+/**
+ * Aplicació: en arrencar el procés obre la base de dades en segon pla, mentre es dibuixa el menú,
+ * perquè el mapa i les llistes trobin la connexió oberta i les consultes ja compilades.
+ */
+public class RegiMapsApplication extends Application {
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        AppDatabase database = AppDatabase.getDatabase(this);
+        AppExecutors.get().io().execute(database::prewarm);
+    }
+}
@@ -0,0 +1,54 @@
+package com.example.regimaps;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.google.android.gms.maps.model.LatLng;
+import com.google.maps.android.clustering.ClusterItem;
+
+/**
+ * Adaptador d'un {@link SavedPointEntity} a element agrupable pel ClusterManager.
+ * Només guarda el que cal per dibuixar-lo, de manera que es pot crear fora del fil principal.
+ */
+public class SavedPointClusterItem implements ClusterItem {
+
+    private final int id; // Id del punt a la base de dades
+    private final LatLng position;
+    private final String title;
+    private final String snippet;
+
+    public SavedPointClusterItem(SavedPointEntity point) {
+        this.id = point.id;
+        this.position = point.getLatLng();
+        this.title = point.name;
+        this.snippet = point.code != null && !point.code.isEmpty() ? "Codi: " + point.code : null;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    @NonNull
+    @Override
+    public LatLng getPosition() {
+        return position;
+    }
+
+    @Nullable
+    @Override
+    public String getTitle() {
+        return title;
+    }
+
+    @Nullable
+    @Override
+    public String getSnippet() {
+        return snippet;
+    }
+
+    @Nullable
+    @Override
+    public Float getZIndex() {
+        return null;
+    }
+}
@@ -1,10 +1,19 @@
 package com.example.regimaps;
 
+import androidx.lifecycle.LiveData;
+import androidx.paging.PagingSource;
 import androidx.room.Dao;
 import androidx.room.Delete;
 import androidx.room.Insert;
 import androidx.room.Query;
+import androidx.room.RawQuery;
+import androidx.room.Transaction;
+import androidx.room.Update;
+import androidx.sqlite.db.SupportSQLiteQuery;
 
+import com.google.android.gms.maps.model.LatLngBounds;
+
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -14,21 +23,119 @@ import java.util.List;
 @Dao
 public interface SavedPointDao {
 
+    // Màxim d'ids per sentència (SQLite limita els paràmetres a 999 en versions antigues).
+    int SQL_BATCH_SIZE = 500;
+
     // Insereix un nou punt guardat a la base de dades.
     @Insert
     void insert(SavedPointEntity savedPointEntity);
 
-    //Retorna una llista amb tots els punts guardats a la base de dades.
-    @Query("SELECT * FROM saved_points")
-    List<SavedPointEntity> getAllSavedPoints();
+    // Insereix un lot de punts amb una sola sentència preparada (per exemple, en importar un KML).
+    @Insert
+    void insertAll(List<SavedPointEntity> savedPointEntities);
+
+    // Retorna fins a 'limit' punts amb id més gran que 'afterId', ordenats per id (paginació per clau).
+    @Query("SELECT * FROM saved_points WHERE id > :afterId ORDER BY id LIMIT :limit")
+    List<SavedPointEntity> getSavedPointsAfter(int afterId, int limit);
+
+    // Només l'id i les coordenades de fins a 'limit' punts amb id més gran que 'afterId', ordenats per id.
+    // Per a la unió espacial amb els polígons (vegeu SpatialIndex.pointsInAllPolygons), sense llegir
+    // noms, codis ni fotos.
+    @Query("SELECT id, latitude, longitude FROM saved_points WHERE id > :afterId ORDER BY id LIMIT :limit")
+    List<PointLocation> getPointLocationsAfter(int afterId, int limit);
+
+    // Retorna els punts amb els ids donats. Cal cridar getByIds, que parteix la llista en lots.
+    @Query("SELECT * FROM saved_points WHERE id IN (:ids)")
+    List<SavedPointEntity> getByIdBatch(List<Integer> ids);
+
+    // Retorna els punts amb els ids donats, per lots que no superin el límit de paràmetres de SQLite.
+    @Transaction
+    default List<SavedPointEntity> getByIds(List<Integer> ids) {
+        List<SavedPointEntity> points = new ArrayList<>(ids.size());
+        for (int start = 0; start < ids.size(); start += SQL_BATCH_SIZE) {
+            points.addAll(getByIdBatch(ids.subList(start, Math.min(ids.size(), start + SQL_BATCH_SIZE))));
+        }
+        return points;
+    }
+
+    // Retorna el nombre de punts guardats.
+    @Query("SELECT COUNT(*) FROM saved_points")
+    int countSavedPoints();
+
+    // Nombre de punts guardats, observable: Room el torna a emetre quan la taula canvia.
+    @Query("SELECT COUNT(*) FROM saved_points")
+    LiveData<Integer> observeCount();
+
+    // Retorna els punts guardats per pàgines, per a les llistes amb RecyclerView.
+    @Query("SELECT * FROM saved_points ORDER BY id")
+    PagingSource<Integer, SavedPointEntity> getPagedSavedPoints();
+
+    // Cerca a text complet sobre el nom i el codi (vegeu SavedPointFts), per pàgines. 'query' és una
+    // expressió MATCH de FTS4, com la que construeix FtsQuery.prefixMatch.
+    @Query("SELECT saved_points.* FROM saved_points JOIN saved_points_fts "
+            + "ON saved_points.id = saved_points_fts.rowid "
+            + "WHERE saved_points_fts MATCH :query ORDER BY saved_points.id")
+    PagingSource<Integer, SavedPointEntity> searchPaged(String query);
+
+    // Retorna els punts continguts en un rectangle, consultant l'índex espacial R*Tree.
+    default List<SavedPointEntity> getPointsInBounds(double minLat, double minLng, double maxLat, double maxLng) {
+        return getPointsByQuery(SpatialIndex.pointsInBounds(minLat, minLng, maxLat, maxLng));
+    }
+
+    // Retorna els punts continguts en l'àrea visible del mapa.
+    default List<SavedPointEntity> getPointsInBounds(LatLngBounds bounds) {
+        return getPointsInBounds(bounds, -1);
+    }
+
+    // Com l'anterior, però retornant com a màxim 'limit' punts.
+    default List<SavedPointEntity> getPointsInBounds(LatLngBounds bounds, int limit) {
+        return getPointsByQuery(SpatialIndex.pointsInBounds(bounds.southwest.latitude, bounds.southwest.longitude,
+                bounds.northeast.latitude, bounds.northeast.longitude, limit));
+    }
+
+    // Executa una consulta construïda per SpatialIndex (les taules R*Tree no són entitats de Room).
+    @RawQuery(observedEntities = SavedPointEntity.class)
+    List<SavedPointEntity> getPointsByQuery(SupportSQLiteQuery query);
 
     // Elimina un punt específic de la base de dades.
     @Delete
     void delete(SavedPointEntity savedPointEntity);
 
+    // Elimina un lot d'entitats en una sola transacció.
+    @Delete
+    void delete(List<SavedPointEntity> savedPointEntities);
+
+    // Actualitza una entitat existent.
+    @Update
+    void update(SavedPointEntity entity);
+
+    // Actualitza un lot d'entitats en una sola transacció.
+    @Update
+    void update(List<SavedPointEntity> savedPointEntities);
+
+    // Elimina els punts amb els ids donats. Cal cridar deleteByIds, que parteix la llista en lots.
+    @Query("DELETE FROM saved_points WHERE id IN (:ids)")
+    void deleteByIdBatch(List<Integer> ids);
+
+    // Elimina els punts amb els ids donats en una sola transacció, per lots que no superin
+    // el límit de paràmetres de SQLite.
+    @Transaction
+    default void deleteByIds(List<Integer> ids) {
+        for (int start = 0; start < ids.size(); start += SQL_BATCH_SIZE) {
+            deleteByIdBatch(ids.subList(start, Math.min(ids.size(), start + SQL_BATCH_SIZE)));
+        }
+    }
+
     //Elimina tots els punts guardats de la base de dades.
     @Query("DELETE FROM saved_points")
     void deleteAll();
 
-
-}
\ No newline at end of file
+    /**
+     * Id i coordenades d'un punt guardat, sense la resta de columnes.
+     */
+    class PointLocation {
+        public int id;
+        public double latitude;
+        public double longitude;
+    }
+}
@@ -0,0 +1,29 @@
+package com.example.regimaps;
+
+import androidx.room.ColumnInfo;
+import androidx.room.Entity;
+import androidx.room.Fts4;
+import androidx.room.FtsOptions;
+import androidx.room.PrimaryKey;
+
+/**
+ * Índex de text complet (FTS4) sobre el nom i el codi dels punts guardats.
+ * Les dades són a saved_points (taula de contingut extern) i Room manté l'índex amb triggers,
+ * així que només ocupa l'espai dels termes indexats. El rowid és l'id del punt.
+ * El tokenitzador unicode61 ignora majúscules i accents ("plaça" es troba amb "placa").
+ */
+@Fts4(contentEntity = SavedPointEntity.class, tokenizer = FtsOptions.TOKENIZER_UNICODE61)
+@Entity(tableName = "saved_points_fts")
+public class SavedPointFts {
+
+    // Id del punt a saved_points.
+    @PrimaryKey
+    @ColumnInfo(name = "rowid")
+    public int rowid;
+
+    @ColumnInfo(name = "name")
+    public String name;
+
+    @ColumnInfo(name = "code")
+    public String code;
+}
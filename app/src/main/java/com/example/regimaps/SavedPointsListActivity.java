@@ -2,10 +2,14 @@ package com.example.regimaps;
 
 import android.content.Intent;
 
+import androidx.annotation.NonNull;
 import androidx.appcompat.app.AlertDialog;
+import androidx.lifecycle.LiveData;
+import androidx.paging.PagingSource;
+import androidx.recyclerview.widget.DiffUtil;
 
-import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
 
 /**
  * Activitat que mostra la llista de punts guardats.
@@ -21,30 +25,73 @@ public class SavedPointsListActivity extends BaseListActivity<SavedPointEntity>
     protected int getListViewId() { return R.id.savedPointsList; }
 
     /**
-     * Carrega els punts guardats de la base de dades de forma asíncrona.
-     * Un cop recuperats, actualitza la llista a la interfície.
+     * Font paginada dels punts guardats. Room la invalida quan la taula canvia.
      */
     @Override
-    protected void loadItems() {
-        dao = db.savedPointDao();
-        executorService.execute(() -> {
-            List<SavedPointEntity> points = dao.getAllSavedPoints();
-            updateList(points);
-        });
+    protected PagingSource<Integer, SavedPointEntity> createPagingSource() {
+        return getDao().getPagedSavedPoints();
     }
 
     /**
-     * Dona format a la llista de punts per mostrar-los a la interfície.
-     * Mostra el nom i les coordenades de cada punt.
+     * Font paginada dels punts el nom o el codi dels quals coincideix amb la cerca.
      */
     @Override
-    protected List<String> formatData(List<SavedPointEntity> items) {
-        List<String> formatted = new ArrayList<>();
-        for (SavedPointEntity p : items) {
-            formatted.add(String.format("Nom: %s - Lat: %.5f, Lng: %.5f",
-                    p.name, p.latitude, p.longitude));
-        }
-        return formatted;
+    protected PagingSource<Integer, SavedPointEntity> createSearchPagingSource(String matchQuery) {
+        return getDao().searchPaged(matchQuery);
+    }
+
+    /**
+     * Dos punts són el mateix element si tenen el mateix id.
+     */
+    @Override
+    protected DiffUtil.ItemCallback<SavedPointEntity> getDiffCallback() {
+        return new DiffUtil.ItemCallback<SavedPointEntity>() {
+            @Override
+            public boolean areItemsTheSame(@NonNull SavedPointEntity oldItem, @NonNull SavedPointEntity newItem) {
+                return oldItem.id == newItem.id;
+            }
+
+            @Override
+            public boolean areContentsTheSame(@NonNull SavedPointEntity oldItem, @NonNull SavedPointEntity newItem) {
+                return Objects.equals(oldItem.name, newItem.name)
+                        && oldItem.latitude == newItem.latitude
+                        && oldItem.longitude == newItem.longitude;
+            }
+        };
+    }
+
+    /**
+     * Dona format a un punt per mostrar-lo a la interfície.
+     * Mostra el nom i les coordenades del punt.
+     */
+    @Override
+    protected String formatItem(SavedPointEntity p) {
+        return String.format("Nom: %s - Lat: %.5f, Lng: %.5f", p.name, p.latitude, p.longitude);
+    }
+
+    @Override
+    protected int countItems() {
+        return getDao().countSavedPoints();
+    }
+
+    @Override
+    protected LiveData<Integer> observeItemCount() {
+        return getDao().observeCount();
+    }
+
+    @Override
+    protected List<SavedPointEntity> loadItemsAfter(int afterId, int limit) {
+        return getDao().getSavedPointsAfter(afterId, limit);
+    }
+
+    @Override
+    protected void deleteItemsByIds(List<Integer> ids) {
+        getDao().deleteByIds(ids);
+    }
+
+    @Override
+    protected int getItemId(SavedPointEntity item) {
+        return item.id;
     }
 
     /**
@@ -52,37 +99,27 @@ public class SavedPointsListActivity extends BaseListActivity<SavedPointEntity>
      * veure al mapa, exportar a KML o eliminar.
      */
     @Override
-    protected void showOptionsDialog(int position) {
+    protected void showOptionsDialog(SavedPointEntity point) {
         new AlertDialog.Builder(this)
                 .setTitle("Opcions del punt")
-                .setPositiveButton("Veure al mapa", (d, w) -> viewPoint(position))
-                .setNeutralButton("Exportar a KML", (d, w) -> exportToKML(items))
-                .setNegativeButton("Eliminar", (d, w) -> deleteItem(position))
+                .setPositiveButton("Veure al mapa", (d, w) -> viewPoint(point))
+                .setNeutralButton("Exportar a KML", (d, w) -> exportToKML())
+                .setNegativeButton("Eliminar", (d, w) -> deleteItem(point))
                 .show();
     }
 
-    /* @Override
-     protected String generateKMLContent(List<SavedPointEntity> points) {
-         StringBuilder kml = new StringBuilder();
-
-         for (SavedPointEntity point : points) {
-             kml.append("<Placemark>\n");
-             kml.append("<name>").append(point.name).append("</name>\n");
-             kml.append("<description>").append("Data: ").append(point.date).append(", Codi: ").append(point.code).append("</description>\n");
-             kml.append("<Point>\n");
-             kml.append("<coordinates>").append(point.longitude).append(",").append(point.latitude).append("</coordinates>\n");
-             kml.append("</Point>\n");
-             kml.append("</Placemark>\n");
-         }
-
-         return kml.toString();
-     }*/
+    // Retorna el DAO de punts.
+    private SavedPointDao getDao() {
+        if (dao == null) {
+            dao = db.savedPointDao();
+        }
+        return dao;
+    }
 
     /**
      * Obre el MapsActivity i mostra el punt seleccionat.
      */
-    private void viewPoint(int position) {
-        SavedPointEntity point = items.get(position);
+    private void viewPoint(SavedPointEntity point) {
         Intent intent = new Intent(this, MapsActivity.class);
         intent.putExtra("latitude", point.latitude);
         intent.putExtra("longitude", point.longitude);
@@ -90,12 +127,10 @@ public class SavedPointsListActivity extends BaseListActivity<SavedPointEntity>
     }
 
     /**
-     * Elimina el punt seleccionat de la base de dades i actualitza la llista.
+     * Elimina el punt seleccionat de la base de dades.
+     * Room invalida la font paginada i la llista s'actualitza sola.
      */
-    private void deleteItem(int position) {
-        executorService.execute(() -> {
-            dao.delete(items.get(position));
-            loadItems(); // Actualitza la llista després d'eliminar
-        });
+    private void deleteItem(SavedPointEntity point) {
+        ioExecutor.execute(() -> getDao().delete(point));
     }
 }
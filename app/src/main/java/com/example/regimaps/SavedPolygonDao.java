@@ -1,9 +1,20 @@
 package com.example.regimaps;
 
+import androidx.lifecycle.LiveData;
+import androidx.paging.PagingSource;
+import androidx.room.ColumnInfo;
 import androidx.room.Dao;
 import androidx.room.Delete;
 import androidx.room.Insert;
 import androidx.room.Query;
+import androidx.room.RawQuery;
+import androidx.room.Transaction;
+import androidx.room.Update;
+import androidx.sqlite.db.SupportSQLiteQuery;
+
+import com.google.android.gms.maps.model.LatLngBounds;
+
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -13,19 +24,141 @@ import java.util.List;
 @Dao
 public interface SavedPolygonDao {
 
-    // Insereix un nou polígon guardat a la base de dades.
+    // Màxim d'ids per sentència (SQLite limita els paràmetres a 999 en versions antigues).
+    int SQL_BATCH_SIZE = 500;
+
+    // Insereix un nou polígon guardat a la base de dades i retorna el seu id.
+    // Per calcular les mesures precalculades i mantenir l'índex espacial, cal fer servir SpatialIndex.insertPolygon.
     @Insert
-    void insert(SavedPolygonEntity polygon);
+    long insert(SavedPolygonEntity polygon);
+
+    // Insereix un lot de polígons i retorna els ids en el mateix ordre.
+    // Per calcular les mesures precalculades i mantenir l'índex espacial, cal fer servir SpatialIndex.insertPolygons.
+    @Insert
+    long[] insertAll(List<SavedPolygonEntity> polygons);
+
+    // Retorna el polígon o línia amb l'id donat, o null si no existeix.
+    // Per obrir formes des d'altres pantalles, millor ShapeCache.load, que evita repetir la lectura.
+    @Query("SELECT * FROM saved_polygons WHERE id = :id")
+    SavedPolygonEntity getById(int id);
+
+    // Retorna fins a 'limit' polígons amb id més gran que 'afterId', ordenats per id (paginació per clau).
+    @Query("SELECT * FROM saved_polygons WHERE id > :afterId ORDER BY id LIMIT :limit")
+    List<SavedPolygonEntity> getSavedPolygonsAfter(int afterId, int limit);
+
+    // Retorna el nombre de polígons i línies guardats.
+    @Query("SELECT COUNT(*) FROM saved_polygons")
+    int countSavedPolygons();
+
+    // Nombre de polígons i línies guardats, observable: Room el torna a emetre quan la taula canvia.
+    @Query("SELECT COUNT(*) FROM saved_polygons")
+    LiveData<Integer> observeCount();
+
+    // Retorna els polígons guardats per pàgines, per a les llistes amb RecyclerView.
+    @Query("SELECT * FROM saved_polygons ORDER BY id")
+    PagingSource<Integer, SavedPolygonEntity> getPagedSavedPolygons();
+
+    // Cerca a text complet sobre el nom (vegeu SavedPolygonFts), per pàgines. 'query' és una expressió
+    // MATCH de FTS4, com la que construeix FtsQuery.prefixMatch.
+    @Query("SELECT saved_polygons.* FROM saved_polygons JOIN saved_polygons_fts "
+            + "ON saved_polygons.id = saved_polygons_fts.rowid "
+            + "WHERE saved_polygons_fts MATCH :query ORDER BY saved_polygons.id")
+    PagingSource<Integer, SavedPolygonEntity> searchPaged(String query);
+
+    // Retorna els polígons i línies el rectangle envolupant dels quals intersecta l'àrea donada.
+    default List<SavedPolygonEntity> getPolygonsIntersecting(LatLngBounds bounds) {
+        return getPolygonsIntersecting(bounds, -1);
+    }
+
+    // Com l'anterior, però retornant com a màxim 'limit' elements.
+    default List<SavedPolygonEntity> getPolygonsIntersecting(LatLngBounds bounds, int limit) {
+        return getPolygonsByQuery(SpatialIndex.polygonsIntersecting(bounds, limit));
+    }
 
-    // Retorna una llista amb tots els polígons guardats a la base de dades.
-    @Query("SELECT * FROM saved_polygons")
-    List<SavedPolygonEntity> getAllSavedPolygons();
+    // Mateixa consulta amb els límits explícits.
+    default List<SavedPolygonEntity> getPolygonsIntersecting(double minLat, double minLng, double maxLat, double maxLng) {
+        return getPolygonsByQuery(SpatialIndex.polygonsIntersecting(minLat, minLng, maxLat, maxLng));
+    }
+
+    // Executa una consulta construïda per SpatialIndex (les taules R*Tree no són entitats de Room).
+    @RawQuery(observedEntities = SavedPolygonEntity.class)
+    List<SavedPolygonEntity> getPolygonsByQuery(SupportSQLiteQuery query);
+
+    // Com getPolygonsIntersecting, però sense la geometria: per decidir què cal dibuixar al mapa
+    // sense llegir els BLOBs de vèrtexs de formes que ja hi són o que es dibuixaran simplificades.
+    default List<ShapeSummary> getShapeSummariesIntersecting(LatLngBounds bounds, int limit) {
+        return getShapeSummariesByQuery(SpatialIndex.shapeSummariesIntersecting(bounds, limit));
+    }
+
+    @RawQuery(observedEntities = SavedPolygonEntity.class)
+    List<ShapeSummary> getShapeSummariesByQuery(SupportSQLiteQuery query);
+
+    // Retorna la geometria completa de les formes donades. Cal cridar getGeometries, que parteix la llista en lots.
+    @Query("SELECT id, geometry FROM saved_polygons WHERE id IN (:ids)")
+    List<ShapeGeometry> getGeometryBatch(List<Integer> ids);
+
+    // Retorna la geometria completa de les formes donades, per lots que no superin el límit de paràmetres de SQLite.
+    @Transaction
+    default List<ShapeGeometry> getGeometries(List<Integer> ids) {
+        List<ShapeGeometry> geometries = new ArrayList<>(ids.size());
+        for (int start = 0; start < ids.size(); start += SQL_BATCH_SIZE) {
+            geometries.addAll(getGeometryBatch(ids.subList(start, Math.min(ids.size(), start + SQL_BATCH_SIZE))));
+        }
+        return geometries;
+    }
 
     // Elimina un polígon específic de la base de dades.
     @Delete
     void delete(SavedPolygonEntity polygon);
 
+    // Elimina un lot d'entitats en una sola transacció.
+    @Delete
+    void delete(List<SavedPolygonEntity> polygons);
+
+    // Actualitza una entitat existent.
+    // Si canvia la geometria, cal fer servir SpatialIndex.updatePolygons per recalcular les mesures i l'índex espacial.
+    @Update
+    void update(SavedPolygonEntity entity);
+
+    // Actualitza un lot d'entitats en una sola transacció.
+    @Update
+    void update(List<SavedPolygonEntity> polygons);
+
+    // Elimina els polígons amb els ids donats. Cal cridar deleteByIds, que parteix la llista en lots.
+    @Query("DELETE FROM saved_polygons WHERE id IN (:ids)")
+    void deleteByIdBatch(List<Integer> ids);
+
+    // Elimina els polígons amb els ids donats en una sola transacció, per lots que no superin
+    // el límit de paràmetres de SQLite.
+    @Transaction
+    default void deleteByIds(List<Integer> ids) {
+        for (int start = 0; start < ids.size(); start += SQL_BATCH_SIZE) {
+            deleteByIdBatch(ids.subList(start, Math.min(ids.size(), start + SQL_BATCH_SIZE)));
+        }
+    }
+
     // Elimina tots els polígons guardats de la base de dades.
     @Query("DELETE FROM saved_polygons")
     void deleteAll();
-}
\ No newline at end of file
+
+    /**
+     * Columnes d'una forma guardada que calen per dibuixar-la i descriure-la, sense la geometria.
+     */
+    class ShapeSummary {
+        public int id;
+        public String tipus;
+        public String name;
+        public double area;
+        public double distancia;
+        @ColumnInfo(name = "vertex_count")
+        public int vertexCount;
+    }
+
+    /**
+     * Id i geometria completa d'una forma guardada.
+     */
+    class ShapeGeometry {
+        public int id;
+        public Geometry geometry;
+    }
+}
@@ -2,21 +2,25 @@ package com.example.regimaps;
 
 import androidx.room.ColumnInfo;
 import androidx.room.Entity;
+import androidx.room.Index;
 import androidx.room.PrimaryKey;
 
 /**
  * Entitat Room que representa un polígon o línia guardada a la base de dades.
  * Emmagatzema la informació essencial per a la reconstrucció i identificació d'un polígon o línia.
+ * El rectangle envolupant, el centroide, el perímetre i el nombre de vèrtexs es calculen en desar-lo
+ * ({@link #updateMetrics}), perquè el mapa i la llista no hagin de llegir la geometria.
  */
-@Entity(tableName = "saved_polygons")
+@Entity(tableName = "saved_polygons",
+        indices = {@Index({"min_lat", "max_lat"}), @Index({"min_lng", "max_lng"}), @Index("perimeter")})
 public class SavedPolygonEntity {
     // Identificador únic autogenerat per Room.
     @PrimaryKey(autoGenerate = true)
     public int id;
 
-    // Punts del polígon o línia, codificats com a String.
-    @ColumnInfo(name = "points")
-    public String points;
+    // Vèrtexs del polígon o línia, codificats en binari (vegeu GeometryCodec).
+    @ColumnInfo(name = "geometry", typeAffinity = ColumnInfo.BLOB)
+    public Geometry geometry;
 
     // Àrea del polígon (en metres quadrats).
     @ColumnInfo(name = "area")
@@ -34,6 +38,34 @@ public class SavedPolygonEntity {
     @ColumnInfo(name = "name")
     public String name;
 
+    // Rectangle envolupant de la geometria. L'índex espacial es manté a partir d'aquestes columnes.
+    @ColumnInfo(name = "min_lat", defaultValue = "0")
+    public double minLat;
+
+    @ColumnInfo(name = "max_lat", defaultValue = "0")
+    public double maxLat;
+
+    @ColumnInfo(name = "min_lng", defaultValue = "0")
+    public double minLng;
+
+    @ColumnInfo(name = "max_lng", defaultValue = "0")
+    public double maxLng;
+
+    // Centroide de l'àrea (polígon) o de la línia.
+    @ColumnInfo(name = "centroid_lat", defaultValue = "0")
+    public double centroidLat;
+
+    @ColumnInfo(name = "centroid_lng", defaultValue = "0")
+    public double centroidLng;
+
+    // Perímetre del polígon o longitud de la línia (en metres).
+    @ColumnInfo(name = "perimeter", defaultValue = "0")
+    public double perimeter;
+
+    // Nombre de vèrtexs de la geometria (0 si és buida).
+    @ColumnInfo(name = "vertex_count", defaultValue = "0")
+    public int vertexCount;
+
     // Constructor buit necessari per a Room.
     public SavedPolygonEntity() {}
 
@@ -41,8 +73,25 @@ public class SavedPolygonEntity {
     public void setArea(double area) {
         this.area = area;
     }
-    public void setPoints(String points) { this.points = points; }
+    public void setGeometry(Geometry geometry) { this.geometry = geometry; }
     public void setTipus(String tipus) { this.tipus = tipus; }
     public void setDistancia(double distancia) { this.distancia = distancia;
     }
+
+    /**
+     * Recalcula les mesures precalculades a partir de la geometria i el tipus.
+     * SpatialIndex el crida abans de desar el polígon.
+     */
+    public void updateMetrics() {
+        ShapeMetrics metrics = ShapeMetrics.of(geometry != null ? geometry.getCoordinates() : null,
+                "poligon".equals(tipus));
+        minLat = metrics.minLat;
+        maxLat = metrics.maxLat;
+        minLng = metrics.minLng;
+        maxLng = metrics.maxLng;
+        centroidLat = metrics.centroidLat;
+        centroidLng = metrics.centroidLng;
+        perimeter = metrics.perimeter;
+        vertexCount = metrics.vertexCount;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,25 @@
+package com.example.regimaps;
+
+import androidx.room.ColumnInfo;
+import androidx.room.Entity;
+import androidx.room.Fts4;
+import androidx.room.FtsOptions;
+import androidx.room.PrimaryKey;
+
+/**
+ * Índex de text complet (FTS4) sobre el nom dels polígons i línies guardats.
+ * Com {@link SavedPointFts}, és una taula de contingut extern sobre saved_polygons mantinguda
+ * per Room amb triggers. El rowid és l'id del polígon.
+ */
+@Fts4(contentEntity = SavedPolygonEntity.class, tokenizer = FtsOptions.TOKENIZER_UNICODE61)
+@Entity(tableName = "saved_polygons_fts")
+public class SavedPolygonFts {
+
+    // Id del polígon a saved_polygons.
+    @PrimaryKey
+    @ColumnInfo(name = "rowid")
+    public int rowid;
+
+    @ColumnInfo(name = "name")
+    public String name;
+}
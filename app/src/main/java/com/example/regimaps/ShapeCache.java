@@ -0,0 +1,74 @@
+package com.example.regimaps;
+
+import android.util.LruCache;
+
+import androidx.annotation.NonNull;
+import androidx.room.InvalidationTracker;
+
+import java.util.Set;
+
+/**
+ * Memòria compartida dins del procés de les línies i polígons guardats, indexats per id.
+ *
+ * Les pantalles es passen només l'id de la forma per Intent (una geometria gran no cap en una
+ * transacció de Binder) i la que la rep la llegeix d'aquí. La llista hi posa la forma que
+ * obre, així que el mapa normalment la troba sense anar a la base de dades.
+ * Quan la taula saved_polygons canvia, la memòria es buida perquè no retorni dades velles.
+ */
+public final class ShapeCache {
+
+    // Mida màxima de la memòria, en bytes aproximats de geometria (16 bytes per vèrtex).
+    private static final int CACHE_BYTES = 16 * 1024 * 1024;
+
+    private static volatile ShapeCache INSTANCE;
+
+    private final SavedPolygonDao polygonDao;
+    private final LruCache<Integer, SavedPolygonEntity> cache =
+            new LruCache<Integer, SavedPolygonEntity>(CACHE_BYTES) {
+                @Override
+                protected int sizeOf(Integer id, SavedPolygonEntity shape) {
+                    return Math.max(1, shape.geometry != null ? shape.geometry.size() * 16 : 0);
+                }
+            };
+
+    private ShapeCache(AppDatabase db) {
+        polygonDao = db.savedPolygonDao();
+        db.getInvalidationTracker().addObserver(new InvalidationTracker.Observer("saved_polygons") {
+            @Override
+            public void onInvalidated(@NonNull Set<String> tables) {
+                cache.evictAll();
+            }
+        });
+    }
+
+    public static ShapeCache getInstance(AppDatabase db) {
+        if (INSTANCE == null) {
+            synchronized (ShapeCache.class) {
+                if (INSTANCE == null) {
+                    INSTANCE = new ShapeCache(db);
+                }
+            }
+        }
+        return INSTANCE;
+    }
+
+    // Guarda una forma que ja s'ha llegit de la base de dades.
+    public void put(SavedPolygonEntity shape) {
+        cache.put(shape.id, shape);
+    }
+
+    /**
+     * Retorna la forma amb l'id donat, llegint-la de la base de dades si no és a la memòria.
+     * Retorna null si no existeix. Fa una consulta, així que no s'ha de cridar des del fil principal.
+     */
+    public SavedPolygonEntity load(int id) {
+        SavedPolygonEntity shape = cache.get(id);
+        if (shape == null) {
+            shape = polygonDao.getById(id);
+            if (shape != null) {
+                cache.put(id, shape);
+            }
+        }
+        return shape;
+    }
+}
@@ -0,0 +1,261 @@
+package com.example.regimaps;
+
+import android.graphics.Color;
+import android.os.Handler;
+import android.os.Looper;
+
+import com.google.android.gms.maps.GoogleMap;
+import com.google.android.gms.maps.model.LatLng;
+import com.google.android.gms.maps.model.Marker;
+import com.google.android.gms.maps.model.MarkerOptions;
+import com.google.android.gms.maps.model.Polygon;
+import com.google.android.gms.maps.model.PolygonOptions;
+import com.google.android.gms.maps.model.Polyline;
+import com.google.android.gms.maps.model.PolylineOptions;
+import com.google.maps.android.collections.MarkerManager;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Editor de la línia o polígon que s'està dibuixant al mapa.
+ * Manté una sola forma al mapa durant tota l'edició i l'actualitza amb setPoints, enlloc
+ * d'esborrar-la i tornar-la a crear a cada canvi. Cada marcador de vèrtex porta com a tag
+ * el seu {@link Vertex}, amb la posició a la llista, així que trobar el vèrtex d'un marcador
+ * no requereix cap cerca. Els vèrtexs es poden arrossegar per moure'ls.
+ * Els marcadors dels vèrtexs van en una col·lecció pròpia del MarkerManager del mapa, que és qui
+ * rep els clics i els arrossegaments (el ClusterManager comparteix el mateix MarkerManager).
+ * La longitud, el perímetre i l'àrea es mantenen amb un {@link IncrementalMeasure}, així que
+ * cada edició només recalcula els costats del vèrtex que ha canviat.
+ */
+public class ShapeEditor implements GoogleMap.OnMarkerDragListener {
+
+    /**
+     * Avís de canvis en els vèrtexs de la forma.
+     */
+    public interface OnShapeChangedListener {
+        void onShapeChanged(ShapeEditor editor);
+    }
+
+    /**
+     * Vèrtex de la forma: la seva posició a la llista i el marcador que el representa.
+     */
+    static final class Vertex {
+        int index;
+        final Marker marker;
+
+        Vertex(int index, Marker marker) {
+            this.index = index;
+            this.marker = marker;
+        }
+    }
+
+    private final GoogleMap map;
+    private final MarkerManager.Collection markers;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final List<LatLng> points = new ArrayList<>();
+    private final List<Vertex> vertices = new ArrayList<>();
+    private final IncrementalMeasure measure = new IncrementalMeasure();
+    private OnShapeChangedListener listener;
+    private boolean closed;
+    private Polygon polygon;
+    private Polyline polyline;
+    // Si hi ha una actualització de la forma pendent (els arrossegaments s'agrupen per fotograma).
+    private boolean redrawPending;
+
+    public ShapeEditor(GoogleMap map, MarkerManager.Collection markers) {
+        this.map = map;
+        this.markers = markers;
+        markers.setOnMarkerDragListener(this);
+    }
+
+    // Rep un avís cada vegada que la forma es torna a dibuixar (per mostrar-ne les mesures).
+    public void setOnShapeChangedListener(OnShapeChangedListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Comença una forma nova: un polígon si 'closed' és true o una línia si és false.
+     */
+    public void start(boolean closed) {
+        clear();
+        this.closed = closed;
+    }
+
+    // Afegeix un vèrtex al final de la forma.
+    public void addVertex(LatLng position) {
+        Marker marker = markers.addMarker(new MarkerOptions().position(position).draggable(true));
+        if (marker == null) {
+            return;
+        }
+        Vertex vertex = new Vertex(points.size(), marker);
+        marker.setTag(vertex);
+        vertices.add(vertex);
+        points.add(position);
+        measure.addVertex(position.latitude, position.longitude);
+        redraw();
+    }
+
+    /**
+     * Elimina el vèrtex d'un marcador. Retorna false si el marcador no és un vèrtex d'aquesta forma.
+     */
+    public boolean removeVertex(Marker marker) {
+        Vertex vertex = getVertex(marker);
+        if (vertex == null) {
+            return false;
+        }
+        int index = vertex.index;
+        vertices.remove(index);
+        points.remove(index);
+        measure.removeVertex(index);
+        for (int i = index; i < vertices.size(); i++) {
+            vertices.get(i).index = i;
+        }
+        markers.remove(marker);
+        redraw();
+        return true;
+    }
+
+    // Indica si el marcador és un vèrtex de la forma que s'està editant.
+    public boolean isVertex(Marker marker) {
+        return getVertex(marker) != null;
+    }
+
+    // Nombre de vèrtexs de la forma.
+    public int size() {
+        return points.size();
+    }
+
+    // Indica si la forma és un polígon (true) o una línia (false).
+    public boolean isClosed() {
+        return closed;
+    }
+
+    // Longitud de la línia, en metres.
+    public double getLength() {
+        return measure.getLength();
+    }
+
+    // Perímetre del polígon, en metres.
+    public double getPerimeter() {
+        return measure.getPerimeter();
+    }
+
+    // Àrea del polígon, en metres quadrats.
+    public double getArea() {
+        return measure.getArea();
+    }
+
+    // Còpia dels vèrtexs de la forma, per guardar-la.
+    public List<LatLng> getPoints() {
+        return new ArrayList<>(points);
+    }
+
+    /**
+     * Treu del mapa la forma i els marcadors i buida l'editor.
+     */
+    public void clear() {
+        for (Vertex vertex : vertices) {
+            markers.remove(vertex.marker);
+        }
+        if (polygon != null) polygon.remove();
+        if (polyline != null) polyline.remove();
+        reset();
+    }
+
+    /**
+     * Oblida la forma sense treure-la del mapa (per quan s'ha cridat GoogleMap.clear()).
+     */
+    public void reset() {
+        markers.clear();
+        vertices.clear();
+        points.clear();
+        measure.clear();
+        polygon = null;
+        polyline = null;
+        mainHandler.removeCallbacks(redrawRunnable);
+        redrawPending = false;
+        notifyChanged();
+    }
+
+    @Override
+    public void onMarkerDragStart(Marker marker) {
+        onMarkerDrag(marker);
+    }
+
+    @Override
+    public void onMarkerDrag(Marker marker) {
+        Vertex vertex = getVertex(marker);
+        if (vertex == null) {
+            return;
+        }
+        LatLng position = marker.getPosition();
+        points.set(vertex.index, position);
+        measure.moveVertex(vertex.index, position.latitude, position.longitude);
+        if (!redrawPending) {
+            redrawPending = true;
+            mainHandler.post(redrawRunnable);
+        }
+    }
+
+    @Override
+    public void onMarkerDragEnd(Marker marker) {
+        onMarkerDrag(marker);
+    }
+
+    private final Runnable redrawRunnable = () -> {
+        redrawPending = false;
+        redraw();
+    };
+
+    // Actualitza la forma del mapa amb els vèrtexs actuals, creant-la la primera vegada.
+    private void redraw() {
+        if (closed) {
+            if (points.isEmpty()) {
+                if (polygon != null) {
+                    polygon.remove();
+                    polygon = null;
+                }
+            } else if (polygon == null) {
+                polygon = map.addPolygon(new PolygonOptions()
+                        .addAll(points)
+                        .strokeColor(Color.RED)
+                        .fillColor(Color.argb(50, 255, 0, 0))
+                        .strokeWidth(5));
+            } else {
+                polygon.setPoints(points);
+            }
+        } else {
+            if (points.isEmpty()) {
+                if (polyline != null) {
+                    polyline.remove();
+                    polyline = null;
+                }
+            } else if (polyline == null) {
+                polyline = map.addPolyline(new PolylineOptions()
+                        .addAll(points)
+                        .color(Color.RED)
+                        .width(5));
+            } else {
+                polyline.setPoints(points);
+            }
+        }
+        notifyChanged();
+    }
+
+    private void notifyChanged() {
+        if (listener != null) {
+            listener.onShapeChanged(this);
+        }
+    }
+
+    // Retorna el vèrtex d'un marcador, o null si el marcador no és d'aquesta forma.
+    private Vertex getVertex(Marker marker) {
+        Object tag = marker.getTag();
+        if (!(tag instanceof Vertex)) {
+            return null;
+        }
+        Vertex vertex = (Vertex) tag;
+        return vertex.index < vertices.size() && vertices.get(vertex.index) == vertex ? vertex : null;
+    }
+}
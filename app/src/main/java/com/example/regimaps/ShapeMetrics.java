@@ -0,0 +1,108 @@
+package com.example.regimaps;
+
+/**
+ * Mesures d'una línia o polígon que es calculen una sola vegada en desar-lo i es guarden com a
+ * columnes de saved_polygons: rectangle envolupant, centroide, perímetre (o longitud, per a les
+ * línies) i nombre de vèrtexs. Així centrar la càmera, prefiltrar per àrea o mostrar la llista
+ * no necessiten llegir la geometria.
+ */
+public final class ShapeMetrics {
+
+    public final double minLat;
+    public final double maxLat;
+    public final double minLng;
+    public final double maxLng;
+    public final double centroidLat;
+    public final double centroidLng;
+    // Perímetre del polígon o longitud de la línia, en metres.
+    public final double perimeter;
+    public final int vertexCount;
+
+    private ShapeMetrics(double minLat, double maxLat, double minLng, double maxLng,
+                         double centroidLat, double centroidLng, double perimeter, int vertexCount) {
+        this.minLat = minLat;
+        this.maxLat = maxLat;
+        this.minLng = minLng;
+        this.maxLng = maxLng;
+        this.centroidLat = centroidLat;
+        this.centroidLng = centroidLng;
+        this.perimeter = perimeter;
+        this.vertexCount = vertexCount;
+    }
+
+    /**
+     * Calcula les mesures d'unes coordenades [lat0, lng0, lat1, lng1, ...].
+     * 'closed' indica si és un polígon (anell tancat) o una línia.
+     * Una geometria sense vèrtexs té totes les mesures a 0.
+     */
+    public static ShapeMetrics of(double[] coords, boolean closed) {
+        int count = coords != null ? coords.length / 2 : 0;
+        if (count == 0) {
+            return new ShapeMetrics(0, 0, 0, 0, 0, 0, 0, 0);
+        }
+        double minLat = Double.MAX_VALUE, maxLat = -Double.MAX_VALUE;
+        double minLng = Double.MAX_VALUE, maxLng = -Double.MAX_VALUE;
+        IncrementalMeasure measure = new IncrementalMeasure();
+        for (int i = 0; i < count; i++) {
+            double lat = coords[2 * i];
+            double lng = coords[2 * i + 1];
+            minLat = Math.min(minLat, lat);
+            maxLat = Math.max(maxLat, lat);
+            minLng = Math.min(minLng, lng);
+            maxLng = Math.max(maxLng, lng);
+            measure.addVertex(lat, lng);
+        }
+        double[] centroid = closed && count >= 3 ? areaCentroid(coords, count) : null;
+        if (centroid == null) {
+            centroid = lineCentroid(coords, count);
+        }
+        double perimeter = closed ? measure.getPerimeter() : measure.getLength();
+        return new ShapeMetrics(minLat, maxLat, minLng, maxLng, centroid[0], centroid[1], perimeter, count);
+    }
+
+    // Centroide de l'àrea del polígon (fórmula del sabater en graus, relativa al primer vèrtex
+    // per no perdre precisió). Retorna null si el polígon no té àrea.
+    private static double[] areaCentroid(double[] coords, int count) {
+        double lat0 = coords[0];
+        double lng0 = coords[1];
+        double area = 0, sumLat = 0, sumLng = 0;
+        for (int i = 0; i < count; i++) {
+            int j = (i + 1) % count;
+            double y1 = coords[2 * i] - lat0, x1 = coords[2 * i + 1] - lng0;
+            double y2 = coords[2 * j] - lat0, x2 = coords[2 * j + 1] - lng0;
+            double cross = x1 * y2 - x2 * y1;
+            area += cross;
+            sumLat += (y1 + y2) * cross;
+            sumLng += (x1 + x2) * cross;
+        }
+        if (Math.abs(area) < 1e-18) {
+            return null;
+        }
+        return new double[]{lat0 + sumLat / (3 * area), lng0 + sumLng / (3 * area)};
+    }
+
+    // Centroide de la línia: mitjana dels punts mitjos dels segments ponderada per la seva longitud.
+    // Si tots els vèrtexs coincideixen, és la mitjana dels vèrtexs.
+    private static double[] lineCentroid(double[] coords, int count) {
+        double total = 0, sumLat = 0, sumLng = 0;
+        for (int i = 1; i < count; i++) {
+            double lat1 = coords[2 * i - 2], lng1 = coords[2 * i - 1];
+            double lat2 = coords[2 * i], lng2 = coords[2 * i + 1];
+            double dx = (lng2 - lng1) * Math.cos(Math.toRadians((lat1 + lat2) / 2));
+            double dy = lat2 - lat1;
+            double length = Math.sqrt(dx * dx + dy * dy);
+            total += length;
+            sumLat += length * (lat1 + lat2) / 2;
+            sumLng += length * (lng1 + lng2) / 2;
+        }
+        if (total > 0) {
+            return new double[]{sumLat / total, sumLng / total};
+        }
+        double lat = 0, lng = 0;
+        for (int i = 0; i < count; i++) {
+            lat += coords[2 * i];
+            lng += coords[2 * i + 1];
+        }
+        return new double[]{lat / count, lng / count};
+    }
+}
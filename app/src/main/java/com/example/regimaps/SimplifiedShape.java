@@ -0,0 +1,92 @@
+package com.example.regimaps;
+
+import com.google.android.gms.maps.GoogleMap;
+import com.google.android.gms.maps.model.LatLng;
+import com.google.android.gms.maps.model.LatLngBounds;
+import com.google.android.gms.maps.model.Polygon;
+import com.google.android.gms.maps.model.Polyline;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Un polígon o línia dibuixat al mapa que canvia de nivell de detall segons el zoom.
+ * Es fa servir per mostrar una sola forma (per exemple, des de la llista de polígons):
+ * els nivells són els precalculats a saved_polygon_lods (vegeu {@link PolygonLod#toLevels}) i,
+ * cada cop que la càmera s'atura, es canvien els vèrtexs amb setPoints si el zoom correspon a
+ * un altre nivell.
+ */
+class SimplifiedShape implements GoogleMap.OnCameraIdleListener {
+
+    private final GoogleMap map;
+    private final double[] coordinates;
+    private final double[][] levels;
+    private Polygon polygon;
+    private Polyline polyline;
+    private int shownLevel;
+
+    // 'levels' té una posició per nivell; les que són null es substitueixen pel següent més detallat.
+    SimplifiedShape(GoogleMap map, double[] coordinates, double[][] levels) {
+        this.map = map;
+        this.coordinates = coordinates;
+        this.levels = levels;
+        this.shownLevel = 0;
+    }
+
+    // Vèrtexs per dibuixar la forma abans de saber el zoom final: el nivell menys detallat.
+    List<LatLng> initialPoints() {
+        return toLatLngs(coordinatesFor(shownLevel));
+    }
+
+    void attach(Polygon polygon) {
+        this.polygon = polygon;
+    }
+
+    void attach(Polyline polyline) {
+        this.polyline = polyline;
+    }
+
+    // Rectangle envolupant de la geometria completa.
+    LatLngBounds getBounds() {
+        LatLngBounds.Builder builder = new LatLngBounds.Builder();
+        for (int i = 0; i + 1 < coordinates.length; i += 2) {
+            builder.include(new LatLng(coordinates[i], coordinates[i + 1]));
+        }
+        return builder.build();
+    }
+
+    @Override
+    public void onCameraIdle() {
+        int level = GeometrySimplifier.levelForZoom(map.getCameraPosition().zoom);
+        if (level == shownLevel) {
+            return;
+        }
+        shownLevel = level;
+        List<LatLng> points = toLatLngs(coordinatesFor(level));
+        if (polygon != null) {
+            polygon.setPoints(points);
+        } else if (polyline != null) {
+            polyline.setPoints(points);
+        }
+    }
+
+    // Coordenades del nivell demanat o, si no existeix, del següent més detallat.
+    private double[] coordinatesFor(int level) {
+        if (level != GeometrySimplifier.FULL_DETAIL) {
+            for (int i = level; i < levels.length; i++) {
+                if (levels[i] != null) {
+                    return levels[i];
+                }
+            }
+        }
+        return coordinates;
+    }
+
+    private static List<LatLng> toLatLngs(double[] coords) {
+        List<LatLng> points = new ArrayList<>(coords.length / 2);
+        for (int i = 0; i + 1 < coords.length; i += 2) {
+            points.add(new LatLng(coords[i], coords[i + 1]));
+        }
+        return points;
+    }
+}
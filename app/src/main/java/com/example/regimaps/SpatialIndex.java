@@ -0,0 +1,457 @@
+package com.example.regimaps;
+
+import androidx.sqlite.db.SimpleSQLiteQuery;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+import androidx.sqlite.db.SupportSQLiteQuery;
+
+import com.google.android.gms.maps.model.LatLngBounds;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Índex espacial R*Tree (mòdul rtree de SQLite) sobre els punts i polígons guardats.
+ * Cada entrada guarda el rectangle envolupant (min/max lat, min/max lng) d'un element,
+ * de manera que les consultes per àrea visible no necessiten recórrer tota la taula.
+ *
+ * L'índex es manté amb triggers SQL. Els punts fan servir les seves coordenades i els polígons
+ * les columnes del rectangle envolupant de saved_polygons, que es calculen en desar-los
+ * ({@link SavedPolygonEntity#updateMetrics}). Per això els polígons s'han de desar amb
+ * {@link #insertPolygon}, {@link #insertPolygons} o {@link #updatePolygons}, que calculen
+ * aquestes columnes i els nivells de detall dins la mateixa transacció.
+ */
+public final class SpatialIndex {
+
+    static final String POINTS_RTREE = "saved_points_rtree";
+    static final String POLYGONS_RTREE = "saved_polygons_rtree";
+
+    // Mida de les pàgines en què es llegeixen els punts i els polígons per a la unió espacial.
+    private static final int POINT_PAGE_SIZE = 10_000;
+    private static final int JOIN_PAGE_SIZE = 500;
+
+    // Columnes de SavedPolygonDao.ShapeSummary: tot el que necessita el mapa d'una forma menys la geometria.
+    private static final String SHAPE_SUMMARY_COLUMNS = "`id`, `tipus`, `name`, `area`, `distancia`, `vertex_count`";
+
+    private SpatialIndex() {}
+
+    /**
+     * Crea les taules R*Tree i els triggers que les mantenen. Es pot cridar més d'un cop.
+     */
+    static void create(SupportSQLiteDatabase db) {
+        createPointIndex(db);
+        createPolygonIndex(db);
+    }
+
+    /**
+     * Crea l'R*Tree dels punts i els seus triggers.
+     */
+    static void createPointIndex(SupportSQLiteDatabase db) {
+        db.execSQL("CREATE VIRTUAL TABLE IF NOT EXISTS `" + POINTS_RTREE + "` "
+                + "USING rtree(id, min_lat, max_lat, min_lng, max_lng)");
+
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS `saved_points_rtree_insert` AFTER INSERT ON `saved_points` BEGIN "
+                + "INSERT OR REPLACE INTO `" + POINTS_RTREE + "` "
+                + "VALUES (NEW.`id`, NEW.`latitude`, NEW.`latitude`, NEW.`longitude`, NEW.`longitude`); END");
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS `saved_points_rtree_update` AFTER UPDATE OF `latitude`, `longitude` "
+                + "ON `saved_points` BEGIN "
+                + "INSERT OR REPLACE INTO `" + POINTS_RTREE + "` "
+                + "VALUES (NEW.`id`, NEW.`latitude`, NEW.`latitude`, NEW.`longitude`, NEW.`longitude`); END");
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS `saved_points_rtree_delete` AFTER DELETE ON `saved_points` BEGIN "
+                + "DELETE FROM `" + POINTS_RTREE + "` WHERE `id` = OLD.`id`; END");
+    }
+
+    /**
+     * Crea l'R*Tree dels polígons i els triggers que el mantenen a partir de les columnes del
+     * rectangle envolupant. Les geometries buides (vertex_count = 0) no s'indexen.
+     */
+    static void createPolygonIndex(SupportSQLiteDatabase db) {
+        db.execSQL("CREATE VIRTUAL TABLE IF NOT EXISTS `" + POLYGONS_RTREE + "` "
+                + "USING rtree(id, min_lat, max_lat, min_lng, max_lng)");
+
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS `saved_polygons_rtree_insert` AFTER INSERT ON `saved_polygons` "
+                + "WHEN NEW.`vertex_count` > 0 BEGIN "
+                + "INSERT OR REPLACE INTO `" + POLYGONS_RTREE + "` "
+                + "VALUES (NEW.`id`, NEW.`min_lat`, NEW.`max_lat`, NEW.`min_lng`, NEW.`max_lng`); END");
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS `saved_polygons_rtree_update` AFTER UPDATE OF "
+                + "`min_lat`, `max_lat`, `min_lng`, `max_lng`, `vertex_count` ON `saved_polygons` BEGIN "
+                + "DELETE FROM `" + POLYGONS_RTREE + "` WHERE `id` = OLD.`id`; "
+                + "INSERT INTO `" + POLYGONS_RTREE + "` "
+                + "SELECT NEW.`id`, NEW.`min_lat`, NEW.`max_lat`, NEW.`min_lng`, NEW.`max_lng` "
+                + "WHERE NEW.`vertex_count` > 0; END");
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS `saved_polygons_rtree_delete` AFTER DELETE ON `saved_polygons` BEGIN "
+                + "DELETE FROM `" + POLYGONS_RTREE + "` WHERE `id` = OLD.`id`; END");
+    }
+
+    /**
+     * Esborra i torna a crear l'índex (per exemple després d'una migració destructiva).
+     */
+    static void recreate(SupportSQLiteDatabase db) {
+        db.execSQL("DROP TABLE IF EXISTS `" + POINTS_RTREE + "`");
+        db.execSQL("DROP TABLE IF EXISTS `" + POLYGONS_RTREE + "`");
+        create(db);
+    }
+
+    /**
+     * Omple l'índex a partir de les dades existents.
+     */
+    static void rebuild(SupportSQLiteDatabase db) {
+        rebuildPoints(db);
+        rebuildPolygons(db);
+    }
+
+    static void rebuildPoints(SupportSQLiteDatabase db) {
+        db.execSQL("DELETE FROM `" + POINTS_RTREE + "`");
+        db.execSQL("INSERT INTO `" + POINTS_RTREE + "` "
+                + "SELECT `id`, `latitude`, `latitude`, `longitude`, `longitude` FROM `saved_points`");
+    }
+
+    // Els rectangles ja són columnes de saved_polygons, així que no cal llegir cap geometria.
+    static void rebuildPolygons(SupportSQLiteDatabase db) {
+        db.execSQL("DELETE FROM `" + POLYGONS_RTREE + "`");
+        db.execSQL("INSERT INTO `" + POLYGONS_RTREE + "` "
+                + "SELECT `id`, `min_lat`, `max_lat`, `min_lng`, `max_lng` FROM `saved_polygons` "
+                + "WHERE `vertex_count` > 0");
+    }
+
+    /**
+     * Insereix un polígon, amb les seves mesures precalculades (que els triggers copien a l'índex)
+     * i els seus nivells de detall ({@link PolygonLod}), dins d'una sola transacció.
+     * Retorna l'identificador assignat, que també es desa a l'entitat.
+     */
+    public static long insertPolygon(AppDatabase database, SavedPolygonEntity polygon) {
+        return database.runInTransaction(() -> {
+            polygon.updateMetrics();
+            long id = database.savedPolygonDao().insert(polygon);
+            polygon.id = (int) id;
+            PolygonLod.write(database, Collections.singletonList(polygon));
+            return id;
+        });
+    }
+
+    /**
+     * Insereix un lot de polígons, amb les seves mesures precalculades i nivells de detall,
+     * dins d'una sola transacció.
+     * Els ids assignats es desen a cada entitat.
+     */
+    public static void insertPolygons(AppDatabase database, List<SavedPolygonEntity> polygons) {
+        database.runInTransaction(() -> {
+            for (SavedPolygonEntity polygon : polygons) {
+                polygon.updateMetrics();
+            }
+            long[] ids = database.savedPolygonDao().insertAll(polygons);
+            for (int i = 0; i < ids.length; i++) {
+                polygons.get(i).id = (int) ids[i];
+            }
+            PolygonLod.write(database, polygons);
+        });
+    }
+
+    /**
+     * Actualitza un lot de polígons, amb les seves mesures precalculades i nivells de detall,
+     * dins d'una sola transacció.
+     */
+    public static void updatePolygons(AppDatabase database, List<SavedPolygonEntity> polygons) {
+        database.runInTransaction(() -> {
+            for (SavedPolygonEntity polygon : polygons) {
+                polygon.updateMetrics();
+            }
+            database.savedPolygonDao().update(polygons);
+            PolygonLod.replace(database, polygons);
+        });
+    }
+
+    /**
+     * Punts guardats que cauen dins d'un polígon. L'R*Tree dels punts fa el prefiltre amb el
+     * rectangle envolupant del polígon i després es fa la prova exacta ({@link SpatialJoin#contains}).
+     * Les línies i els polígons sense geometria no contenen cap punt. Cal cridar-lo en segon pla.
+     */
+    public static List<SavedPointEntity> pointsInPolygon(AppDatabase database, SavedPolygonEntity polygon) {
+        double[] ring = polygon.geometry != null ? polygon.geometry.getCoordinates() : null;
+        if (!"poligon".equals(polygon.tipus) || ring == null || ring.length < 6) {
+            return Collections.emptyList();
+        }
+        List<SavedPointEntity> inside = new ArrayList<>();
+        for (SavedPointEntity point : database.savedPointDao().getPointsInBounds(
+                polygon.minLat, polygon.minLng, polygon.maxLat, polygon.maxLng)) {
+            if (SpatialJoin.contains(ring, point.latitude, point.longitude)) {
+                inside.add(point);
+            }
+        }
+        return inside;
+    }
+
+    /**
+     * Unió espacial de tots els punts amb tots els polígons: per a cada polígon (id), els punts
+     * que hi cauen a dins, en ordre d'id de polígon. Les línies no hi surten.
+     *
+     * Es llegeixen només les coordenades dels punts, per pàgines, i els polígons de JOIN_PAGE_SIZE
+     * en JOIN_PAGE_SIZE; la prova de cada polígon es reparteix entre els fils del carril de càlcul
+     * ({@link AppExecutors#compute()}). Al final es llegeixen per lots ({@link SavedPointDao#getByIds})
+     * només les entitats dels punts que han caigut dins d'algun polígon, un cop cadascun.
+     * Cal cridar-lo en segon pla.
+     */
+    public static Map<Integer, List<SavedPointEntity>> pointsInAllPolygons(AppDatabase database)
+            throws InterruptedException {
+        SavedPointDao pointDao = database.savedPointDao();
+        double[] coords = new double[2 * Math.max(16, pointDao.countSavedPoints())];
+        int[] pointIds = new int[coords.length / 2];
+        int count = 0;
+        List<SavedPointDao.PointLocation> locations;
+        int afterId = 0;
+        while (!(locations = pointDao.getPointLocationsAfter(afterId, POINT_PAGE_SIZE)).isEmpty()) {
+            for (SavedPointDao.PointLocation location : locations) {
+                // La taula pot haver crescut des del recompte.
+                if (count == pointIds.length) {
+                    coords = Arrays.copyOf(coords, coords.length * 2);
+                    pointIds = Arrays.copyOf(pointIds, pointIds.length * 2);
+                }
+                coords[2 * count] = location.latitude;
+                coords[2 * count + 1] = location.longitude;
+                pointIds[count++] = location.id;
+            }
+            afterId = locations.get(locations.size() - 1).id;
+        }
+        SpatialJoin join = new SpatialJoin(coords, Arrays.copyOf(pointIds, count));
+
+        List<Integer> polygonIds = new ArrayList<>();
+        List<double[]> rings = new ArrayList<>();
+        List<SavedPolygonEntity> page;
+        afterId = 0;
+        while (!(page = database.savedPolygonDao().getSavedPolygonsAfter(afterId, JOIN_PAGE_SIZE)).isEmpty()) {
+            for (SavedPolygonEntity polygon : page) {
+                if ("poligon".equals(polygon.tipus) && polygon.vertexCount >= 3 && polygon.geometry != null) {
+                    polygonIds.add(polygon.id);
+                    rings.add(polygon.geometry.getCoordinates());
+                }
+            }
+            afterId = page.get(page.size() - 1).id;
+        }
+
+        LaneExecutor compute = AppExecutors.get().compute();
+        int[][] inside = join.joinAll(rings, compute, Runtime.getRuntime().availableProcessors());
+
+        // Un punt dins de diversos polígons es llegeix una sola vegada.
+        Set<Integer> seen = new HashSet<>();
+        List<Integer> insideIds = new ArrayList<>();
+        for (int[] ids : inside) {
+            for (int id : ids) {
+                if (seen.add(id)) {
+                    insideIds.add(id);
+                }
+            }
+        }
+        Map<Integer, SavedPointEntity> points = new HashMap<>();
+        for (SavedPointEntity point : pointDao.getByIds(insideIds)) {
+            points.put(point.id, point);
+        }
+
+        Map<Integer, List<SavedPointEntity>> result = new LinkedHashMap<>();
+        for (int i = 0; i < inside.length; i++) {
+            List<SavedPointEntity> polygonPoints = new ArrayList<>(inside[i].length);
+            for (int id : inside[i]) {
+                SavedPointEntity point = points.get(id);
+                // Si s'ha esborrat mentrestant, ja no hi surt.
+                if (point != null) {
+                    polygonPoints.add(point);
+                }
+            }
+            result.put(polygonIds.get(i), polygonPoints);
+        }
+        return result;
+    }
+
+    /**
+     * Polígons guardats que se superposen amb 'polygon' (l'R*Tree fa el prefiltre amb el seu
+     * rectangle envolupant), de més àrea comuna a menys. Les línies no se superposen mai.
+     * A cada resultat, A és 'polygon' i B l'altre polígon. Cal cridar-lo en segon pla.
+     */
+    public static List<NamedOverlap> overlapsOf(AppDatabase database, SavedPolygonEntity polygon) {
+        PolygonOverlap.Shape shape = overlapShape(polygon);
+        if (shape == null) {
+            return Collections.emptyList();
+        }
+        List<PolygonOverlap.Shape> candidates = new ArrayList<>();
+        Map<Integer, String> names = new HashMap<>();
+        for (SavedPolygonEntity other : database.savedPolygonDao().getPolygonsIntersecting(
+                polygon.minLat, polygon.minLng, polygon.maxLat, polygon.maxLng)) {
+            PolygonOverlap.Shape candidate = overlapShape(other);
+            if (candidate != null) {
+                candidates.add(candidate);
+                names.put(other.id, other.name);
+            }
+        }
+        List<NamedOverlap> result = new ArrayList<>();
+        for (PolygonOverlap.Overlap overlap : PolygonOverlap.shared().overlapsWith(shape, candidates)) {
+            int otherId = overlap.idA == polygon.id ? overlap.idB : overlap.idA;
+            result.add(new NamedOverlap(polygon.id, polygon.name, otherId, names.get(otherId), overlap.areaM2));
+        }
+        return result;
+    }
+
+    /**
+     * Totes les parelles de polígons guardats que se superposen (vegeu {@link PolygonOverlap}).
+     * Les àrees ja calculades per a les mateixes geometries es reaprofiten, així que després
+     * d'editar un polígon només es retallen les parelles on surt. A cada resultat, idA < idB.
+     * Cal cridar-lo en segon pla.
+     */
+    public static List<NamedOverlap> findAllOverlaps(AppDatabase database) {
+        List<PolygonOverlap.Shape> shapes = new ArrayList<>();
+        Map<Integer, String> names = new HashMap<>();
+        List<SavedPolygonEntity> page;
+        int afterId = 0;
+        while (!(page = database.savedPolygonDao().getSavedPolygonsAfter(afterId, JOIN_PAGE_SIZE)).isEmpty()) {
+            for (SavedPolygonEntity polygon : page) {
+                PolygonOverlap.Shape shape = overlapShape(polygon);
+                if (shape != null) {
+                    shapes.add(shape);
+                    names.put(polygon.id, polygon.name);
+                }
+            }
+            afterId = page.get(page.size() - 1).id;
+        }
+        List<NamedOverlap> result = new ArrayList<>();
+        for (PolygonOverlap.Overlap overlap : PolygonOverlap.shared().findOverlaps(shapes)) {
+            result.add(new NamedOverlap(overlap.idA, names.get(overlap.idA), overlap.idB, names.get(overlap.idB),
+                    overlap.areaM2));
+        }
+        return result;
+    }
+
+    // Forma per a l'anàlisi de superposicions, o null si no és un polígon amb àrea.
+    private static PolygonOverlap.Shape overlapShape(SavedPolygonEntity polygon) {
+        if (!"poligon".equals(polygon.tipus) || polygon.vertexCount < 3 || polygon.geometry == null) {
+            return null;
+        }
+        return new PolygonOverlap.Shape(polygon.id, polygon.geometry.getCoordinates());
+    }
+
+    /**
+     * Consulta dels punts continguts en un rectangle. L'R*Tree fa el prefiltre i la
+     * comparació exacta amb les coordenades descarta l'arrodoniment a float de l'índex.
+     * Si minLng > maxLng el rectangle travessa l'antimeridià.
+     */
+    static SupportSQLiteQuery pointsInBounds(double minLat, double minLng, double maxLat, double maxLng) {
+        return pointsInBounds(minLat, minLng, maxLat, maxLng, -1);
+    }
+
+    // Com l'anterior, però retornant com a màxim 'limit' punts (-1 sense límit). Amb límit, els punts
+    // van per id, perquè si n'hi ha més dels que caben el mapa mostri sempre els mateixos.
+    static SupportSQLiteQuery pointsInBounds(double minLat, double minLng, double maxLat, double maxLng, int limit) {
+        List<Object> args = new ArrayList<>();
+        String candidates = rtreeCandidates(POINTS_RTREE, minLat, minLng, maxLat, maxLng, args);
+        String lngFilter;
+        if (minLng <= maxLng) {
+            lngFilter = "`longitude` BETWEEN ? AND ?";
+            args.add(minLng);
+            args.add(maxLng);
+        } else {
+            lngFilter = "(`longitude` >= ? OR `longitude` <= ?)";
+            args.add(minLng);
+            args.add(maxLng);
+        }
+        args.add(minLat);
+        args.add(maxLat);
+        return new SimpleSQLiteQuery("SELECT * FROM `saved_points` WHERE `id` IN (" + candidates + ") AND "
+                + lngFilter + " AND `latitude` BETWEEN ? AND ?"
+                + (limit >= 0 ? " ORDER BY `id`" : "") + " LIMIT " + limit, args.toArray());
+    }
+
+    /**
+     * Consulta dels polígons i línies el rectangle envolupant dels quals intersecta el rectangle donat.
+     * Si minLng > maxLng el rectangle travessa l'antimeridià.
+     */
+    static SupportSQLiteQuery polygonsIntersecting(double minLat, double minLng, double maxLat, double maxLng) {
+        return polygonsIntersecting(minLat, minLng, maxLat, maxLng, -1);
+    }
+
+    // Com l'anterior, però retornant com a màxim 'limit' elements (-1 sense límit). Amb límit, primer
+    // els de més perímetre (i després per id): si no hi caben tots, queden les formes més grans i
+    // sempre les mateixes d'un refresc a l'altre.
+    static SupportSQLiteQuery polygonsIntersecting(double minLat, double minLng, double maxLat, double maxLng,
+                                                   int limit) {
+        return shapesIntersecting("*", minLat, minLng, maxLat, maxLng, limit);
+    }
+
+    // Ajusta uns LatLngBounds del mapa a la consulta per rectangle.
+    static SupportSQLiteQuery polygonsIntersecting(LatLngBounds bounds, int limit) {
+        return polygonsIntersecting(bounds.southwest.latitude, bounds.southwest.longitude,
+                bounds.northeast.latitude, bounds.northeast.longitude, limit);
+    }
+
+    // Mateixa consulta que polygonsIntersecting, però només amb les columnes de SavedPolygonDao.ShapeSummary.
+    static SupportSQLiteQuery shapeSummariesIntersecting(LatLngBounds bounds, int limit) {
+        return shapesIntersecting(SHAPE_SUMMARY_COLUMNS, bounds.southwest.latitude, bounds.southwest.longitude,
+                bounds.northeast.latitude, bounds.northeast.longitude, limit);
+    }
+
+    // Consulta per rectangle de saved_polygons que retorna les columnes donades.
+    private static SupportSQLiteQuery shapesIntersecting(String columns, double minLat, double minLng,
+                                                         double maxLat, double maxLng, int limit) {
+        List<Object> args = new ArrayList<>();
+        String candidates = rtreeCandidates(POLYGONS_RTREE, minLat, minLng, maxLat, maxLng, args);
+        // Comparació exacta amb les columnes del rectangle, que no tenen l'arrodoniment a float de l'índex.
+        String lngFilter;
+        if (minLng <= maxLng) {
+            lngFilter = "`max_lng` >= ? AND `min_lng` <= ?";
+        } else {
+            lngFilter = "(`max_lng` >= ? OR `min_lng` <= ?)";
+        }
+        args.add(minLng);
+        args.add(maxLng);
+        args.add(minLat);
+        args.add(maxLat);
+        return new SimpleSQLiteQuery("SELECT " + columns + " FROM `saved_polygons` WHERE `id` IN (" + candidates
+                + ") AND " + lngFilter + " AND `max_lat` >= ? AND `min_lat` <= ?"
+                + (limit >= 0 ? " ORDER BY `perimeter` DESC, `id`" : "") + " LIMIT " + limit, args.toArray());
+    }
+
+    // Construeix la subconsulta d'ids candidats a l'R*Tree, partint el rectangle en dos si travessa l'antimeridià.
+    private static String rtreeCandidates(String table, double minLat, double minLng, double maxLat, double maxLng,
+                                          List<Object> args) {
+        String range = "SELECT `id` FROM `" + table + "` WHERE `max_lat` >= ? AND `min_lat` <= ? "
+                + "AND `max_lng` >= ? AND `min_lng` <= ?";
+        if (minLng <= maxLng) {
+            args.add(minLat);
+            args.add(maxLat);
+            args.add(minLng);
+            args.add(maxLng);
+            return range;
+        }
+        args.add(minLat);
+        args.add(maxLat);
+        args.add(minLng);
+        args.add(180.0);
+        args.add(minLat);
+        args.add(maxLat);
+        args.add(-180.0);
+        args.add(maxLng);
+        return range + " UNION " + range;
+    }
+
+    /**
+     * Dos polígons guardats que se superposen, amb els seus noms (per mostrar-los sense tornar a
+     * llegir les entitats) i l'àrea comuna en metres quadrats.
+     */
+    public static final class NamedOverlap {
+        public final int idA;
+        public final String nameA;
+        public final int idB;
+        public final String nameB;
+        public final double areaM2;
+
+        NamedOverlap(int idA, String nameA, int idB, String nameB, double areaM2) {
+            this.idA = idA;
+            this.nameA = nameA;
+            this.idB = idB;
+            this.nameB = nameB;
+            this.areaM2 = areaM2;
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package com.example.regimaps;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Unió espacial entre punts i polígons: per a cada polígon, quins punts hi cauen a dins.
+ *
+ * Els punts es reparteixen en una graella uniforme sobre el seu rectangle envolupant (amb les
+ * coordenades reordenades per cel·la, contigües a memòria). Per a cada polígon només es miren les
+ * cel·les que toca el seu rectangle envolupant; dels punts d'aquestes cel·les es descarten els de
+ * fora del rectangle i a la resta es fa la prova exacta de punt dins de polígon (regla parell-senar,
+ * en graus, com la resta de càlculs de l'aplicació).
+ *
+ * Un cop construïda la graella, l'objecte és immutable i es pot consultar des de diversos fils
+ * alhora ({@link #joinAll}).
+ */
+public final class SpatialJoin {
+
+    // Punts per cel·la de mitjana: prou pocs perquè el prefiltre descarti gairebé tots els de fora.
+    static final int POINTS_PER_CELL = 8;
+    static final int MAX_CELLS_PER_SIDE = 2048;
+
+    private static final int[] NO_POINTS = new int[0];
+
+    // Coordenades i ids dels punts, ordenats per cel·la.
+    private final double[] lats;
+    private final double[] lngs;
+    private final int[] ids;
+
+    // Graella: la cel·la (fila, columna) conté els punts [cellStart[c], cellStart[c + 1]),
+    // amb c = fila * cols + columna.
+    private final double minLat;
+    private final double minLng;
+    private final double cellHeight;
+    private final double cellWidth;
+    private final int rows;
+    private final int cols;
+    private final int[] cellStart;
+
+    /**
+     * Construeix la graella a partir de les coordenades [lat0, lng0, lat1, lng1, ...] dels punts i
+     * els seus ids, en el mateix ordre.
+     */
+    public SpatialJoin(double[] coords, int[] pointIds) {
+        int count = pointIds.length;
+        if (coords.length < count * 2) {
+            throw new IllegalArgumentException("Falten coordenades: " + coords.length + " per a " + count + " punts");
+        }
+        double lo = Double.MAX_VALUE, hi = -Double.MAX_VALUE;
+        double left = Double.MAX_VALUE, right = -Double.MAX_VALUE;
+        for (int i = 0; i < count; i++) {
+            lo = Math.min(lo, coords[2 * i]);
+            hi = Math.max(hi, coords[2 * i]);
+            left = Math.min(left, coords[2 * i + 1]);
+            right = Math.max(right, coords[2 * i + 1]);
+        }
+        int side = (int) Math.max(1, Math.min(MAX_CELLS_PER_SIDE, Math.sqrt((double) count / POINTS_PER_CELL)));
+        rows = side;
+        cols = side;
+        minLat = count > 0 ? lo : 0;
+        minLng = count > 0 ? left : 0;
+        // Una cel·la mai fa 0 graus, encara que tots els punts estiguin a la mateixa latitud o longitud.
+        cellHeight = count > 0 ? Math.max((hi - lo) / rows, 1e-9) : 1;
+        cellWidth = count > 0 ? Math.max((right - left) / cols, 1e-9) : 1;
+
+        // Ordenació per recompte: primer quants punts hi ha a cada cel·la, després on va cada un.
+        int[] cellOfPoint = new int[count];
+        cellStart = new int[rows * cols + 1];
+        for (int i = 0; i < count; i++) {
+            int cell = row(coords[2 * i]) * cols + col(coords[2 * i + 1]);
+            cellOfPoint[i] = cell;
+            cellStart[cell + 1]++;
+        }
+        for (int c = 0; c < rows * cols; c++) {
+            cellStart[c + 1] += cellStart[c];
+        }
+        int[] next = Arrays.copyOf(cellStart, rows * cols);
+        lats = new double[count];
+        lngs = new double[count];
+        ids = new int[count];
+        for (int i = 0; i < count; i++) {
+            int pos = next[cellOfPoint[i]]++;
+            lats[pos] = coords[2 * i];
+            lngs[pos] = coords[2 * i + 1];
+            ids[pos] = pointIds[i];
+        }
+    }
+
+    // Nombre de punts de la graella.
+    public int getPointCount() {
+        return ids.length;
+    }
+
+    /**
+     * Ids dels punts que cauen dins l'anell [lat0, lng0, lat1, lng1, ...] (tancat implícitament
+     * entre l'últim vèrtex i el primer), en l'ordre de la graella.
+     * Un anell amb menys de tres vèrtexs no conté cap punt.
+     */
+    public int[] pointsIn(double[] ring) {
+        int vertices = ring != null ? ring.length / 2 : 0;
+        if (vertices < 3 || ids.length == 0) {
+            return NO_POINTS;
+        }
+        double lo = Double.MAX_VALUE, hi = -Double.MAX_VALUE;
+        double left = Double.MAX_VALUE, right = -Double.MAX_VALUE;
+        for (int i = 0; i < vertices; i++) {
+            lo = Math.min(lo, ring[2 * i]);
+            hi = Math.max(hi, ring[2 * i]);
+            left = Math.min(left, ring[2 * i + 1]);
+            right = Math.max(right, ring[2 * i + 1]);
+        }
+        int rowFrom = row(lo), rowTo = row(hi);
+        int colFrom = col(left), colTo = col(right);
+
+        int[] found = new int[16];
+        int size = 0;
+        for (int r = rowFrom; r <= rowTo; r++) {
+            // Les cel·les d'una fila són contigües: un sol rang de punts per fila.
+            int from = cellStart[r * cols + colFrom];
+            int to = cellStart[r * cols + colTo + 1];
+            for (int p = from; p < to; p++) {
+                double lat = lats[p];
+                double lng = lngs[p];
+                if (lat < lo || lat > hi || lng < left || lng > right || !contains(ring, lat, lng)) {
+                    continue;
+                }
+                if (size == found.length) {
+                    found = Arrays.copyOf(found, size * 2);
+                }
+                found[size++] = ids[p];
+            }
+        }
+        return size == found.length ? found : Arrays.copyOf(found, size);
+    }
+
+    /**
+     * Fa {@link #pointsIn} per a cada anell, repartint-los entre 'parallelism' fils: el fil que
+     * crida i 'parallelism' - 1 tasques enviades a 'executor'. Cada fil agafa el següent anell
+     * pendent, així que un polígon molt gran no deixa els altres fils aturats.
+     * El fil que crida també treballa, per això es pot cridar des d'un fil del mateix executor
+     * sense bloquejar-lo. La posició i del resultat correspon a rings.get(i).
+     */
+    public int[][] joinAll(List<double[]> rings, Executor executor, int parallelism) throws InterruptedException {
+        int total = rings.size();
+        int[][] result = new int[total][];
+        AtomicInteger next = new AtomicInteger();
+        AtomicReference<RuntimeException> failure = new AtomicReference<>();
+        CountDownLatch done = new CountDownLatch(total);
+        Runnable worker = () -> {
+            int i;
+            while ((i = next.getAndIncrement()) < total) {
+                try {
+                    result[i] = pointsIn(rings.get(i));
+                } catch (RuntimeException e) {
+                    failure.compareAndSet(null, e);
+                } finally {
+                    done.countDown();
+                }
+            }
+        };
+        for (int w = 1; w < Math.min(parallelism, total); w++) {
+            executor.execute(worker);
+        }
+        worker.run();
+        done.await();
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+        return result;
+    }
+
+    /**
+     * Prova de punt dins de polígon amb la regla parell-senar: compta quantes arestes creua un
+     * raig cap a l'est des del punt. Els punts just sobre una aresta poden quedar a dins o a fora.
+     */
+    public static boolean contains(double[] ring, double lat, double lng) {
+        int vertices = ring.length / 2;
+        boolean inside = false;
+        double lat1 = ring[2 * (vertices - 1)];
+        double lng1 = ring[2 * (vertices - 1) + 1];
+        for (int i = 0; i < vertices; i++) {
+            double lat2 = ring[2 * i];
+            double lng2 = ring[2 * i + 1];
+            if ((lat2 > lat) != (lat1 > lat)
+                    && lng < (lng1 - lng2) * (lat - lat2) / (lat1 - lat2) + lng2) {
+                inside = !inside;
+            }
+            lat1 = lat2;
+            lng1 = lng2;
+        }
+        return inside;
+    }
+
+    // Fila de la graella d'una latitud, limitada a la graella.
+    private int row(double lat) {
+        return clamp((int) ((lat - minLat) / cellHeight), rows);
+    }
+
+    // Columna de la graella d'una longitud, limitada a la graella.
+    private int col(double lng) {
+        return clamp((int) ((lng - minLng) / cellWidth), cols);
+    }
+
+    private static int clamp(int value, int size) {
+        return value < 0 ? 0 : Math.min(value, size - 1);
+    }
+}
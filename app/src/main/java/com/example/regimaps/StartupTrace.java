@@ -0,0 +1,34 @@
+package com.example.regimaps;
+
+import android.os.Build;
+import android.os.Trace;
+
+/**
+ * Seccions de traça per mesurar el temps fins al primer contingut útil de cada pantalla
+ * (vegeu el mòdul macrobenchmark). Són seccions asíncrones perquè comencen i acaben en
+ * callbacks diferents del fil principal. En versions anteriors a Android 10 no fan res.
+ */
+public final class StartupTrace {
+
+    // Des que es crea el mapa fins que ha acabat de pintar-se per primera vegada.
+    public static final String MAP_LOADED = "RegiMaps:mapLoaded";
+    // Des que es crea una llista fins que mostra el primer element (o que està buida).
+    public static final String LIST_FIRST_ITEM = "RegiMaps:listFirstItem";
+
+    // Cada pantalla té com a molt una secció oberta alhora, així que la galeta pot ser fixa.
+    private static final int COOKIE = 0;
+
+    private StartupTrace() {}
+
+    public static void begin(String section) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            Trace.beginAsyncSection(section, COOKIE);
+        }
+    }
+
+    public static void end(String section) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            Trace.endAsyncSection(section, COOKIE);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.example.regimaps;
+
+import android.database.Cursor;
+import android.database.CursorWrapper;
+
+/**
+ * Cursor que mesura una consulta de Room: el temps des que es llança fins que es tanca (Room
+ * llegeix totes les files abans de tancar-lo, així que inclou la lectura), les files retornades i
+ * els bytes llegits de les columnes. En tancar-lo ho registra a {@link QueryStats}.
+ */
+class TimedCursor extends CursorWrapper {
+
+    private final QueryStats stats;
+    private final String sql;
+    private final long startNanos;
+    private long bytes;
+    private boolean recorded;
+
+    TimedCursor(Cursor cursor, QueryStats stats, String sql, long startNanos) {
+        super(cursor);
+        this.stats = stats;
+        this.sql = sql;
+        this.startNanos = startNanos;
+    }
+
+    @Override
+    public byte[] getBlob(int columnIndex) {
+        byte[] value = super.getBlob(columnIndex);
+        if (value != null) {
+            bytes += value.length;
+        }
+        return value;
+    }
+
+    @Override
+    public String getString(int columnIndex) {
+        String value = super.getString(columnIndex);
+        if (value != null) {
+            // Aproximació: un byte per caràcter, com el text ASCII en UTF-8.
+            bytes += value.length();
+        }
+        return value;
+    }
+
+    @Override
+    public long getLong(int columnIndex) {
+        bytes += 8;
+        return super.getLong(columnIndex);
+    }
+
+    @Override
+    public int getInt(int columnIndex) {
+        bytes += 8;
+        return super.getInt(columnIndex);
+    }
+
+    @Override
+    public double getDouble(int columnIndex) {
+        bytes += 8;
+        return super.getDouble(columnIndex);
+    }
+
+    @Override
+    public float getFloat(int columnIndex) {
+        bytes += 8;
+        return super.getFloat(columnIndex);
+    }
+
+    @Override
+    public void close() {
+        if (!recorded) {
+            recorded = true;
+            int rows = isClosed() ? 0 : getCount();
+            stats.record(sql, System.nanoTime() - startNanos, Math.max(0, rows), bytes);
+        }
+        super.close();
+    }
+}
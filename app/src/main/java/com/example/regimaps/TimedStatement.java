@@ -0,0 +1,96 @@
+package com.example.regimaps;
+
+import androidx.sqlite.db.SupportSQLiteStatement;
+
+import java.io.IOException;
+
+/**
+ * Sentència compilada que mesura cada execució (insercions, actualitzacions i eliminacions dels
+ * DAO) i la registra a {@link QueryStats} amb el nombre de files afectades.
+ */
+class TimedStatement implements SupportSQLiteStatement {
+
+    private final SupportSQLiteStatement delegate;
+    private final QueryStats stats;
+    private final String sql;
+
+    TimedStatement(SupportSQLiteStatement delegate, QueryStats stats, String sql) {
+        this.delegate = delegate;
+        this.stats = stats;
+        this.sql = sql;
+    }
+
+    @Override
+    public void execute() {
+        long start = System.nanoTime();
+        delegate.execute();
+        stats.record(sql, System.nanoTime() - start, 0, 0);
+    }
+
+    @Override
+    public int executeUpdateDelete() {
+        long start = System.nanoTime();
+        int rows = delegate.executeUpdateDelete();
+        stats.record(sql, System.nanoTime() - start, rows, 0);
+        return rows;
+    }
+
+    @Override
+    public long executeInsert() {
+        long start = System.nanoTime();
+        long rowId = delegate.executeInsert();
+        stats.record(sql, System.nanoTime() - start, rowId != -1 ? 1 : 0, 0);
+        return rowId;
+    }
+
+    @Override
+    public long simpleQueryForLong() {
+        long start = System.nanoTime();
+        long value = delegate.simpleQueryForLong();
+        stats.record(sql, System.nanoTime() - start, 1, 8);
+        return value;
+    }
+
+    @Override
+    public String simpleQueryForString() {
+        long start = System.nanoTime();
+        String value = delegate.simpleQueryForString();
+        stats.record(sql, System.nanoTime() - start, 1, value != null ? value.length() : 0);
+        return value;
+    }
+
+    @Override
+    public void bindNull(int index) {
+        delegate.bindNull(index);
+    }
+
+    @Override
+    public void bindLong(int index, long value) {
+        delegate.bindLong(index, value);
+    }
+
+    @Override
+    public void bindDouble(int index, double value) {
+        delegate.bindDouble(index, value);
+    }
+
+    @Override
+    public void bindString(int index, String value) {
+        delegate.bindString(index, value);
+    }
+
+    @Override
+    public void bindBlob(int index, byte[] value) {
+        delegate.bindBlob(index, value);
+    }
+
+    @Override
+    public void clearBindings() {
+        delegate.clearBindings();
+    }
+
+    @Override
+    public void close() throws IOException {
+        delegate.close();
+    }
+}
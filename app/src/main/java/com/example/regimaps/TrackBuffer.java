@@ -0,0 +1,103 @@
+package com.example.regimaps;
+
+/**
+ * Memòria intermèdia circular de posicions GPS d'un traç en gravació.
+ * Les posicions es guarden en arrays primitius (sense un objecte per posició) fins que el
+ * servei de gravació les escriu a la base de dades en un sol lot. Si l'escriptura es queda
+ * enrere i la memòria s'omple, es descarten les posicions més antigues.
+ *
+ * La posició s'afegeix des del fil de localització i es buida des del fil d'escriptura,
+ * així que els mètodes públics estan sincronitzats.
+ */
+public final class TrackBuffer {
+
+    /**
+     * Lot de posicions tretes de la memòria, reutilitzable entre escriptures.
+     */
+    public static final class Batch {
+        final double[] lats;
+        final double[] lngs;
+        final long[] times;
+        final float[] accuracies;
+        int size;
+
+        public Batch(int capacity) {
+            lats = new double[capacity];
+            lngs = new double[capacity];
+            times = new long[capacity];
+            accuracies = new float[capacity];
+        }
+    }
+
+    private final double[] lats;
+    private final double[] lngs;
+    private final long[] times;
+    private final float[] accuracies;
+    private final int mask;
+    // Comptadors absoluts d'escriptura i de lectura; la posició a l'array és el comptador & mask.
+    private long head;
+    private long tail;
+    // Posicions descartades perquè la memòria era plena.
+    private long dropped;
+
+    /**
+     * Crea una memòria amb capacitat per a 'capacity' posicions (arrodonida a potència de 2).
+     */
+    public TrackBuffer(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        lats = new double[size];
+        lngs = new double[size];
+        times = new long[size];
+        accuracies = new float[size];
+        mask = size - 1;
+    }
+
+    // Afegeix una posició. Si la memòria és plena, es perd la més antiga.
+    public synchronized void add(double lat, double lng, long time, float accuracy) {
+        if (head - tail == lats.length) {
+            tail++;
+            dropped++;
+        }
+        int index = (int) (head & mask);
+        lats[index] = lat;
+        lngs[index] = lng;
+        times[index] = time;
+        accuracies[index] = accuracy;
+        head++;
+    }
+
+    // Nombre de posicions pendents d'escriure.
+    public synchronized int size() {
+        return (int) (head - tail);
+    }
+
+    public synchronized long getDropped() {
+        return dropped;
+    }
+
+    /**
+     * Treu fins a la capacitat del lot les posicions més antigues i les copia al lot.
+     * Retorna el nombre de posicions copiades.
+     */
+    public synchronized int drainTo(Batch batch) {
+        int count = (int) Math.min(head - tail, batch.lats.length);
+        int start = (int) (tail & mask);
+        int first = Math.min(count, lats.length - start);
+        copy(start, batch, 0, first);
+        copy(0, batch, first, count - first);
+        tail += count;
+        batch.size = count;
+        return count;
+    }
+
+    public synchronized void clear() {
+        tail = head;
+    }
+
+    private void copy(int from, Batch batch, int to, int length) {
+        System.arraycopy(lats, from, batch.lats, to, length);
+        System.arraycopy(lngs, from, batch.lngs, to, length);
+        System.arraycopy(times, from, batch.times, to, length);
+        System.arraycopy(accuracies, from, batch.accuracies, to, length);
+    }
+}
@@ -0,0 +1,36 @@
+package com.example.regimaps;
+
+import androidx.room.Dao;
+import androidx.room.Insert;
+import androidx.room.Query;
+import androidx.room.Transaction;
+
+import java.util.List;
+
+/**
+ * DAO dels traços GPS. Les posicions s'escriuen per lots amb {@link TrackStore}.
+ */
+@Dao
+public interface TrackDao {
+
+    // Crea un traç nou i en retorna l'id.
+    @Insert
+    long insert(TrackEntity track);
+
+    // Traços amb la gravació sense acabar (per exemple si el sistema ha aturat el servei).
+    @Query("SELECT * FROM tracks ORDER BY id")
+    List<TrackEntity> getUnfinishedTracks();
+
+    @Query("DELETE FROM track_points WHERE track_id = :trackId")
+    void deletePoints(int trackId);
+
+    @Query("DELETE FROM tracks WHERE id = :trackId")
+    void deleteTrackRow(int trackId);
+
+    // Esborra un traç i totes les seves posicions.
+    @Transaction
+    default void deleteTrack(int trackId) {
+        deletePoints(trackId);
+        deleteTrackRow(trackId);
+    }
+}
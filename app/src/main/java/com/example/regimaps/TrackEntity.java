@@ -0,0 +1,36 @@
+package com.example.regimaps;
+
+import androidx.room.ColumnInfo;
+import androidx.room.Entity;
+import androidx.room.PrimaryKey;
+
+/**
+ * Entitat Room d'un traç GPS gravat. Les posicions són a la taula track_points.
+ * Quan la gravació s'acaba el traç es desa com una línia a saved_polygons i s'esborra d'aquí,
+ * així que els traços d'aquesta taula són gravacions en curs o que no es van poder acabar.
+ */
+@Entity(tableName = "tracks")
+public class TrackEntity {
+    // Identificador únic autogenerat per Room.
+    @PrimaryKey(autoGenerate = true)
+    public int id;
+
+    // Inici de la gravació (mil·lisegons des de l'època).
+    @ColumnInfo(name = "start_time")
+    public long startTime;
+
+    // Hora de l'última posició desada, o 0 si encara no n'hi ha cap.
+    @ColumnInfo(name = "end_time")
+    public long endTime;
+
+    // Nombre de posicions desades a track_points.
+    @ColumnInfo(name = "point_count")
+    public int pointCount;
+
+    // Constructor buit necessari per a Room.
+    public TrackEntity() {}
+
+    public TrackEntity(long startTime) {
+        this.startTime = startTime;
+    }
+}
@@ -0,0 +1,38 @@
+package com.example.regimaps;
+
+import androidx.room.ColumnInfo;
+import androidx.room.Entity;
+
+/**
+ * Entitat Room d'una posició d'un traç GPS. La clau (track_id, seq) manté les posicions
+ * de cada traç juntes i en ordre de gravació.
+ * Les posicions s'insereixen per lots des de {@link TrackStore}, no una a una.
+ */
+@Entity(tableName = "track_points", primaryKeys = {"track_id", "seq"})
+public class TrackPointEntity {
+
+    // Id del traç a tracks.
+    @ColumnInfo(name = "track_id")
+    public int trackId;
+
+    // Posició dins del traç (0, 1, 2, ...).
+    @ColumnInfo(name = "seq")
+    public int seq;
+
+    @ColumnInfo(name = "latitude")
+    public double latitude;
+
+    @ColumnInfo(name = "longitude")
+    public double longitude;
+
+    // Hora de la posició (mil·lisegons des de l'època).
+    @ColumnInfo(name = "time")
+    public long time;
+
+    // Precisió horitzontal estimada, en metres.
+    @ColumnInfo(name = "accuracy")
+    public float accuracy;
+
+    // Constructor buit necessari per a Room.
+    public TrackPointEntity() {}
+}
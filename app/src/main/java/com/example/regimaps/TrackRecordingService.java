@@ -0,0 +1,265 @@
+package com.example.regimaps;
+
+import android.Manifest;
+import android.app.Notification;
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.app.Service;
+import android.content.Context;
+import android.content.Intent;
+import android.content.pm.PackageManager;
+import android.content.pm.ServiceInfo;
+import android.location.Location;
+import android.os.Handler;
+import android.os.IBinder;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.widget.Toast;
+
+import androidx.annotation.NonNull;
+import androidx.core.app.NotificationCompat;
+import androidx.core.app.ServiceCompat;
+import androidx.core.content.ContextCompat;
+
+import com.google.android.gms.location.FusedLocationProviderClient;
+import com.google.android.gms.location.LocationCallback;
+import com.google.android.gms.location.LocationRequest;
+import com.google.android.gms.location.LocationResult;
+import com.google.android.gms.location.LocationServices;
+import com.google.android.gms.location.Priority;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executor;
+
+/**
+ * Servei en primer pla que grava un traç GPS mentre l'usuari camina.
+ *
+ * Per estalviar bateria es demana al proveïdor de localització que agrupi les posicions
+ * (setMaxUpdateDelayMillis): el GPS continua prenent posicions, però l'aplicació només es
+ * desperta un cop per lot. Les posicions es guarden en un {@link TrackBuffer} i s'escriuen a
+ * la base de dades amb {@link TrackStore} quan n'hi ha prou o ha passat prou temps, en una
+ * transacció per lot. En acabar, el traç es desa com una línia.
+ */
+public class TrackRecordingService extends Service {
+
+    public static final String ACTION_START = "com.example.regimaps.action.START_TRACK";
+    public static final String ACTION_STOP = "com.example.regimaps.action.STOP_TRACK";
+    // Nom de la línia en acabar la gravació; si no n'hi ha, el traç es descarta.
+    public static final String EXTRA_TRACK_NAME = "track_name";
+
+    // Interval entre posicions i distància mínima entre posicions consecutives.
+    private static final long UPDATE_INTERVAL_MS = 5_000;
+    private static final float MIN_DISTANCE_METERS = 5;
+    // Temps màxim que el proveïdor pot acumular posicions abans de lliurar-les.
+    private static final long MAX_UPDATE_DELAY_MS = 2 * 60_000;
+    // Les posicions amb una precisió pitjor que aquesta es descarten.
+    private static final float MAX_ACCURACY_METERS = 30;
+    // Es desa un lot quan hi ha aquestes posicions pendents o ha passat aquest temps des de l'últim.
+    private static final int FLUSH_THRESHOLD = 120;
+    private static final long FLUSH_INTERVAL_MS = 5 * 60_000;
+    // Capacitat de la memòria intermèdia (uns 85 minuts de posicions cada 5 segons).
+    private static final int BUFFER_CAPACITY = 1024;
+
+    private static final String CHANNEL_ID = "track_recording";
+    private static final int NOTIFICATION_ID = 1;
+
+    // Si hi ha una gravació en curs (per mostrar l'estat del botó al mapa).
+    private static volatile boolean recording;
+
+    private final TrackBuffer buffer = new TrackBuffer(BUFFER_CAPACITY);
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    // Escriptures a la base de dades, en ordre, sobre el carril d'entrada/sortida compartit.
+    private final Executor writer = AppExecutors.get().io().newSerialExecutor();
+    // Lot reutilitzat pel fil d'escriptura.
+    private final TrackBuffer.Batch batch = new TrackBuffer.Batch(FLUSH_THRESHOLD);
+
+    private AppDatabase db;
+    private FusedLocationProviderClient fusedLocationClient;
+    private long lastFlush;
+    // Només es fan servir des del fil d'escriptura.
+    private int trackId;
+    private int nextSeq;
+
+    private final LocationCallback locationCallback = new LocationCallback() {
+        @Override
+        public void onLocationResult(@NonNull LocationResult result) {
+            List<Location> locations = result.getLocations();
+            for (Location location : locations) {
+                if (location.hasAccuracy() && location.getAccuracy() > MAX_ACCURACY_METERS) {
+                    continue;
+                }
+                buffer.add(location.getLatitude(), location.getLongitude(), location.getTime(),
+                        location.getAccuracy());
+            }
+            if (buffer.size() >= FLUSH_THRESHOLD || SystemClock.elapsedRealtime() - lastFlush >= FLUSH_INTERVAL_MS) {
+                scheduleFlush();
+            }
+        }
+    };
+
+    // Indica si hi ha una gravació en curs.
+    public static boolean isRecording() {
+        return recording;
+    }
+
+    /**
+     * Comença a gravar un traç.
+     */
+    public static void start(Context context) {
+        Intent intent = new Intent(context, TrackRecordingService.class).setAction(ACTION_START);
+        ContextCompat.startForegroundService(context, intent);
+    }
+
+    /**
+     * Acaba la gravació. Si 'name' no és null el traç es desa com una línia amb aquest nom;
+     * si és null es descarta.
+     */
+    public static void stop(Context context, String name) {
+        Intent intent = new Intent(context, TrackRecordingService.class).setAction(ACTION_STOP);
+        intent.putExtra(EXTRA_TRACK_NAME, name);
+        context.startService(intent);
+    }
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        db = AppDatabase.getDatabase(this);
+        fusedLocationClient = LocationServices.getFusedLocationProviderClient(this);
+    }
+
+    @Override
+    public int onStartCommand(Intent intent, int flags, int startId) {
+        String action = intent != null ? intent.getAction() : null;
+        if (ACTION_STOP.equals(action)) {
+            stopRecording(intent.getStringExtra(EXTRA_TRACK_NAME));
+        } else if (ACTION_START.equals(action) && !recording) {
+            startRecording();
+        }
+        return START_NOT_STICKY;
+    }
+
+    @Override
+    public IBinder onBind(Intent intent) {
+        return null;
+    }
+
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+        if (recording) {
+            // El sistema atura el servei: es desa el que hi ha a memòria i el traç queda
+            // sense acabar, per recuperar-lo a la gravació següent.
+            recording = false;
+            fusedLocationClient.removeLocationUpdates(locationCallback);
+            writer.execute(this::flushAll);
+        }
+    }
+
+    /**
+     * Passa el servei a primer pla, crea el traç i demana les posicions.
+     */
+    private void startRecording() {
+        if (ContextCompat.checkSelfPermission(this, Manifest.permission.ACCESS_FINE_LOCATION)
+                != PackageManager.PERMISSION_GRANTED) {
+            stopSelf();
+            return;
+        }
+        ServiceCompat.startForeground(this, NOTIFICATION_ID, buildNotification(),
+                ServiceInfo.FOREGROUND_SERVICE_TYPE_LOCATION);
+        recording = true;
+        lastFlush = SystemClock.elapsedRealtime();
+        buffer.clear();
+
+        writer.execute(() -> {
+            recoverUnfinishedTracks();
+            trackId = TrackStore.startTrack(db, System.currentTimeMillis());
+            nextSeq = 0;
+        });
+
+        LocationRequest request = new LocationRequest.Builder(Priority.PRIORITY_HIGH_ACCURACY, UPDATE_INTERVAL_MS)
+                .setMinUpdateDistanceMeters(MIN_DISTANCE_METERS)
+                .setMaxUpdateDelayMillis(MAX_UPDATE_DELAY_MS)
+                .build();
+        try {
+            fusedLocationClient.requestLocationUpdates(request, locationCallback, Looper.getMainLooper());
+        } catch (SecurityException e) {
+            stopRecording(null);
+        }
+    }
+
+    /**
+     * Deixa de demanar posicions, desa les pendents i acaba el traç.
+     */
+    private void stopRecording(String name) {
+        if (!recording) {
+            stopSelf();
+            return;
+        }
+        recording = false;
+        fusedLocationClient.removeLocationUpdates(locationCallback);
+        writer.execute(() -> {
+            boolean saved = false;
+            if (name != null) {
+                flushAll();
+                saved = TrackStore.finish(db, trackId, name) != null;
+            } else {
+                buffer.clear();
+                db.trackDao().deleteTrack(trackId);
+            }
+            boolean lineSaved = saved;
+            mainHandler.post(() -> {
+                if (lineSaved) {
+                    Toast.makeText(this, "Traç guardat com a '" + name + "'!", Toast.LENGTH_SHORT).show();
+                } else if (name != null) {
+                    Toast.makeText(this, "El traç no té prou posicions per guardar-lo.", Toast.LENGTH_SHORT).show();
+                }
+                ServiceCompat.stopForeground(this, ServiceCompat.STOP_FOREGROUND_REMOVE);
+                stopSelf();
+            });
+        });
+    }
+
+    // Programa l'escriptura de les posicions pendents al fil d'escriptura.
+    private void scheduleFlush() {
+        lastFlush = SystemClock.elapsedRealtime();
+        writer.execute(this::flushAll);
+    }
+
+    // Escriu totes les posicions pendents, en lots de com a màxim FLUSH_THRESHOLD posicions.
+    private void flushAll() {
+        while (buffer.drainTo(batch) > 0) {
+            TrackStore.appendPoints(db, trackId, nextSeq, batch);
+            nextSeq += batch.size;
+        }
+    }
+
+    // Desa com a línies els traços que van quedar sense acabar (per exemple si el sistema va aturar el servei).
+    private void recoverUnfinishedTracks() {
+        SimpleDateFormat format = new SimpleDateFormat("dd/MM/yyyy HH:mm", Locale.getDefault());
+        for (TrackEntity track : db.trackDao().getUnfinishedTracks()) {
+            TrackStore.finish(db, track.id, "Traç " + format.format(new Date(track.startTime)));
+        }
+    }
+
+    private Notification buildNotification() {
+        NotificationManager manager = getSystemService(NotificationManager.class);
+        if (manager != null && manager.getNotificationChannel(CHANNEL_ID) == null) {
+            manager.createNotificationChannel(new NotificationChannel(CHANNEL_ID, "Gravació de traços",
+                    NotificationManager.IMPORTANCE_LOW));
+        }
+        PendingIntent openMap = PendingIntent.getActivity(this, 0,
+                new Intent(this, MapsActivity.class).addFlags(Intent.FLAG_ACTIVITY_SINGLE_TOP),
+                PendingIntent.FLAG_IMMUTABLE);
+        return new NotificationCompat.Builder(this, CHANNEL_ID)
+                .setSmallIcon(R.drawable.ic_my_location)
+                .setContentTitle("Gravant traç")
+                .setContentText("S'està gravant la ruta amb el GPS.")
+                .setContentIntent(openMap)
+                .setOngoing(true)
+                .build();
+    }
+}
@@ -0,0 +1,103 @@
+package com.example.regimaps;
+
+import android.database.Cursor;
+
+import androidx.sqlite.db.SupportSQLiteDatabase;
+import androidx.sqlite.db.SupportSQLiteStatement;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+
+/**
+ * Escriptura dels traços GPS a la base de dades.
+ * Les posicions es desen per lots: cada lot de {@link TrackBuffer} és una sola transacció
+ * amb una sentència compilada, de manera que una gravació llarga fa poques escriptures a disc
+ * en lloc d'una per posició.
+ */
+public final class TrackStore {
+
+    private TrackStore() {}
+
+    /**
+     * Crea un traç nou i en retorna l'id.
+     */
+    static int startTrack(AppDatabase database, long startTime) {
+        return (int) database.trackDao().insert(new TrackEntity(startTime));
+    }
+
+    /**
+     * Desa un lot de posicions al traç, numerades a partir de 'firstSeq', en una sola transacció.
+     */
+    static void appendPoints(AppDatabase database, int trackId, int firstSeq, TrackBuffer.Batch batch) {
+        if (batch.size == 0) {
+            return;
+        }
+        database.runInTransaction(() -> {
+            // La sentència es compila a través d'AppDatabase perquè compti a QueryStats.
+            try (SupportSQLiteStatement insert = database.compileStatement(
+                    "INSERT OR REPLACE INTO `track_points` (`track_id`, `seq`, `latitude`, `longitude`, `time`, `accuracy`) "
+                            + "VALUES (?, ?, ?, ?, ?, ?)")) {
+                for (int i = 0; i < batch.size; i++) {
+                    insert.bindLong(1, trackId);
+                    insert.bindLong(2, firstSeq + i);
+                    insert.bindDouble(3, batch.lats[i]);
+                    insert.bindDouble(4, batch.lngs[i]);
+                    insert.bindLong(5, batch.times[i]);
+                    insert.bindDouble(6, batch.accuracies[i]);
+                    insert.executeInsert();
+                }
+            } catch (IOException e) {
+                // Només ho pot llançar el close() de la sentència.
+                throw new UncheckedIOException(e);
+            }
+            database.getOpenHelper().getWritableDatabase().execSQL(
+                    "UPDATE `tracks` SET `point_count` = ?, `end_time` = ? WHERE `id` = ?",
+                    new Object[]{firstSeq + batch.size, batch.times[batch.size - 1], trackId});
+        });
+    }
+
+    /**
+     * Acaba un traç: el desa com una línia a saved_polygons (amb l'índex espacial i els nivells de
+     * detall) i n'esborra les posicions, tot en una transacció. Retorna la línia desada, o null
+     * si el traç no tenia prou posicions per fer una línia (llavors només s'esborra).
+     */
+    static SavedPolygonEntity finish(AppDatabase database, int trackId, String name) {
+        return database.runInTransaction(() -> {
+            double[] coords = readCoordinates(database.getOpenHelper().getWritableDatabase(), trackId);
+            SavedPolygonEntity line = null;
+            if (coords.length >= 4) {
+                IncrementalMeasure measure = new IncrementalMeasure();
+                for (int i = 0; i < coords.length; i += 2) {
+                    measure.addVertex(coords[i], coords[i + 1]);
+                }
+                line = new SavedPolygonEntity();
+                line.tipus = "linia";
+                line.name = name;
+                line.geometry = Geometry.fromCoordinates(coords);
+                line.distancia = measure.getLength();
+                line.area = 0.0;
+                SpatialIndex.insertPolygon(database, line);
+            }
+            database.trackDao().deleteTrack(trackId);
+            return line;
+        });
+    }
+
+    // Llegeix les coordenades del traç en ordre de gravació: [lat0, lng0, lat1, lng1, ...].
+    private static double[] readCoordinates(SupportSQLiteDatabase db, int trackId) {
+        double[] coords = new double[256];
+        int length = 0;
+        try (Cursor cursor = db.query("SELECT `latitude`, `longitude` FROM `track_points` WHERE `track_id` = ? "
+                + "ORDER BY `seq`", new Object[]{trackId})) {
+            while (cursor.moveToNext()) {
+                if (length + 2 > coords.length) {
+                    coords = Arrays.copyOf(coords, coords.length * 2);
+                }
+                coords[length++] = cursor.getDouble(0);
+                coords[length++] = cursor.getDouble(1);
+            }
+        }
+        return Arrays.copyOf(coords, length);
+    }
+}
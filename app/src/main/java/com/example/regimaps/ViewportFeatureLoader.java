@@ -0,0 +1,387 @@
+package com.example.regimaps;
+
+import android.graphics.Color;
+import android.os.Handler;
+import android.os.Looper;
+
+import androidx.annotation.NonNull;
+import androidx.room.InvalidationTracker;
+
+import com.google.android.gms.maps.GoogleMap;
+import com.google.android.gms.maps.model.LatLng;
+import com.google.android.gms.maps.model.LatLngBounds;
+import com.google.android.gms.maps.model.Marker;
+import com.google.android.gms.maps.model.MarkerOptions;
+import com.google.android.gms.maps.model.Polygon;
+import com.google.android.gms.maps.model.PolygonOptions;
+import com.google.android.gms.maps.model.Polyline;
+import com.google.android.gms.maps.model.PolylineOptions;
+
+import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
+/**
+ * Carrega al mapa només els punts, línies i polígons guardats que intersecten l'àrea visible.
+ * Cada cop que la càmera s'atura es consulta l'índex espacial en segon pla i es compara el
+ * resultat amb el que ja hi ha dibuixat: només s'afegeixen els elements nous i s'eliminen els
+ * que han sortit de la vista. Així el nombre d'objectes al mapa depèn de la vista, no de la
+ * mida de la base de dades.
+ *
+ * Les línies i polígons grans es dibuixen amb el nivell de detall precalculat que correspon al
+ * zoom (taula saved_polygon_lods); quan el zoom canvia de nivell, les formes ja dibuixades
+ * s'actualitzen amb setPoints en lloc de tornar-les a crear.
+ *
+ * Les opcions de dibuix es preparen en segon pla i els addMarker/addPolygon/setPoints es reparteixen
+ * entre fotogrames amb un FrameBudgetRenderer, així que carregar una vista plena d'elements no
+ * bloqueja el fil principal.
+ *
+ * També observa l'InvalidationTracker de Room: quan les taules de punts o polígons canvien
+ * (des de qualsevol pantalla o fil) es torna a carregar la vista, una sola vegada per ràfega de canvis.
+ */
+public class ViewportFeatureLoader implements GoogleMap.OnCameraIdleListener {
+
+    // Màxim d'elements de cada tipus que es mostren alhora.
+    static final int MAX_VISIBLE_POINTS = 2000;
+    static final int MAX_VISIBLE_SHAPES = 500;
+    // Amb l'agrupament actiu el mapa només dibuixa els clústers, així que es poden carregar més punts.
+    static final int MAX_CLUSTERED_POINTS = 50000;
+
+    private final GoogleMap map;
+    private final SavedPointDao pointDao;
+    private final SavedPolygonDao polygonDao;
+    private final PolygonLodDao lodDao;
+    private final Executor executor;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final InvalidationTracker invalidationTracker;
+    // Afegeix els elements al mapa per trams que càpiguen en cada fotograma.
+    private final FrameBudgetRenderer renderer = new FrameBudgetRenderer();
+
+    // Elements dibuixats actualment, indexats per l'id de la base de dades.
+    private final Map<Integer, Marker> markers = new HashMap<>();
+    private final Map<Integer, Polygon> polygons = new HashMap<>();
+    private final Map<Integer, Polyline> polylines = new HashMap<>();
+    // Nivell de detall amb què s'ha dibuixat cada forma (vegeu GeometrySimplifier).
+    private final Map<Integer, Integer> shapeLevels = new HashMap<>();
+
+    // Si no és null, els punts es mostren agrupats en clústers enlloc de marcadors individuals.
+    private PointClusterController clusterController;
+
+    // Comptador per descartar resultats d'una càmera que ja no és la actual.
+    private int generation;
+
+    public ViewportFeatureLoader(GoogleMap map, AppDatabase db, Executor executor) {
+        this.map = map;
+        this.pointDao = db.savedPointDao();
+        this.polygonDao = db.savedPolygonDao();
+        this.lodDao = db.polygonLodDao();
+        this.executor = executor;
+        this.invalidationTracker = db.getInvalidationTracker();
+        invalidationTracker.addObserver(tablesObserver);
+    }
+
+    // Avisa quan canvien les taules d'elements guardats. Es crida en un fil de Room.
+    private final InvalidationTracker.Observer tablesObserver =
+            new InvalidationTracker.Observer("saved_points", "saved_polygons") {
+                @Override
+                public void onInvalidated(@NonNull Set<String> tables) {
+                    // Es treu qualsevol recàrrega pendent perquè diversos canvis seguits en facin només una.
+                    mainHandler.removeCallbacks(refreshRunnable);
+                    mainHandler.post(refreshRunnable);
+                }
+            };
+
+    private final Runnable refreshRunnable = this::refresh;
+
+    /**
+     * Deixa d'observar la base de dades. S'ha de cridar quan es destrueix l'activitat del mapa.
+     */
+    public void release() {
+        invalidationTracker.removeObserver(tablesObserver);
+        mainHandler.removeCallbacks(refreshRunnable);
+        renderer.cancelPending();
+        generation++;
+    }
+
+    // Activa el mode d'agrupament de punts. S'ha de cridar abans de la primera càrrega.
+    public void setClusterController(PointClusterController clusterController) {
+        this.clusterController = clusterController;
+    }
+
+    @Override
+    public void onCameraIdle() {
+        if (clusterController != null) {
+            clusterController.onCameraIdle();
+        }
+        refresh();
+    }
+
+    /**
+     * Torna a consultar els elements de l'àrea visible i actualitza el mapa amb la diferència.
+     * S'ha de cridar des del fil principal.
+     */
+    public void refresh() {
+        final int requestGeneration = ++generation;
+        final LatLngBounds bounds = map.getProjection().getVisibleRegion().latLngBounds;
+        final int level = GeometrySimplifier.levelForZoom(map.getCameraPosition().zoom);
+        // Còpia dels ids ja dibuixats, per preparar en segon pla només les opcions dels nous.
+        final PointClusterController clusters = clusterController;
+        final Set<Integer> shownPoints = new HashSet<>(clusters != null ? clusters.getShownIds() : markers.keySet());
+        final Map<Integer, Integer> shownShapes = new HashMap<>(shapeLevels);
+
+        executor.execute(() -> {
+            List<SavedPointEntity> points = pointDao.getPointsInBounds(bounds,
+                    clusters != null ? MAX_CLUSTERED_POINTS : MAX_VISIBLE_POINTS);
+            // Les formes es llegeixen sense geometria: els vèrtexs només es llegeixen per a les que cal dibuixar.
+            List<SavedPolygonDao.ShapeSummary> shapes =
+                    polygonDao.getShapeSummariesIntersecting(bounds, MAX_VISIBLE_SHAPES);
+
+            Set<Integer> visiblePoints = new HashSet<>();
+            Map<Integer, MarkerOptions> newMarkers = new HashMap<>();
+            List<SavedPointClusterItem> newClusterItems = new ArrayList<>();
+            for (SavedPointEntity point : points) {
+                visiblePoints.add(point.id);
+                if (shownPoints.contains(point.id)) {
+                    continue;
+                }
+                if (clusters != null) {
+                    newClusterItems.add(new SavedPointClusterItem(point));
+                } else {
+                    newMarkers.put(point.id, new MarkerOptions().position(point.getLatLng()).title(point.name));
+                }
+            }
+
+            // Formes que cal dibuixar (noves) o redibuixar (dibuixades amb un altre nivell de detall).
+            Set<Integer> visibleShapes = new HashSet<>();
+            Map<Integer, Integer> targetLevels = new HashMap<>();
+            List<SavedPolygonDao.ShapeSummary> pending = new ArrayList<>();
+            List<Integer> lodIds = new ArrayList<>();
+            for (SavedPolygonDao.ShapeSummary shape : shapes) {
+                visibleShapes.add(shape.id);
+                int target = shape.vertexCount < GeometrySimplifier.MIN_VERTICES
+                        ? GeometrySimplifier.FULL_DETAIL : level;
+                Integer shownLevel = shownShapes.get(shape.id);
+                if (shownLevel != null && shownLevel == target) {
+                    continue;
+                }
+                targetLevels.put(shape.id, target);
+                pending.add(shape);
+                if (target != GeometrySimplifier.FULL_DETAIL) {
+                    lodIds.add(shape.id);
+                }
+            }
+            Map<Integer, Geometry> geometries = loadGeometries(pending, lodIds, level);
+
+            Map<Integer, Object> newShapes = new HashMap<>();
+            Map<Integer, List<LatLng>> updatedShapes = new HashMap<>();
+            Map<Integer, String> newTags = new HashMap<>();
+            for (SavedPolygonDao.ShapeSummary shape : pending) {
+                Geometry geometry = geometries.get(shape.id);
+                if (geometry == null) {
+                    continue;
+                }
+                List<LatLng> points = geometry.toLatLngs();
+                if (shownShapes.containsKey(shape.id)) {
+                    updatedShapes.put(shape.id, points);
+                    continue;
+                }
+                Object options = buildShapeOptions(shape, points);
+                if (options != null) {
+                    newShapes.put(shape.id, options);
+                    newTags.put(shape.id, describe(shape));
+                }
+            }
+
+            mainHandler.post(() -> {
+                if (requestGeneration != generation) {
+                    return; // La càmera s'ha mogut mentrestant; el resultat ja no és vàlid.
+                }
+                // Les altes pendents del resultat anterior es descarten: com que encara no eren al mapa,
+                // aquest resultat ja les torna a incloure si continuen sent visibles.
+                renderer.cancelPending();
+                if (clusters != null) {
+                    clusters.applyDiff(visiblePoints, newClusterItems);
+                }
+                applyDiff(visiblePoints, newMarkers, visibleShapes, newShapes, newTags, targetLevels);
+                applyLevels(updatedShapes, targetLevels);
+            });
+        });
+    }
+
+    /**
+     * Oblida els elements dibuixats sense treure'ls del mapa (per quan s'ha cridat GoogleMap.clear()).
+     */
+    public void reset() {
+        generation++;
+        renderer.cancelPending();
+        markers.clear();
+        polygons.clear();
+        polylines.clear();
+        shapeLevels.clear();
+        if (clusterController != null) {
+            clusterController.reset();
+        }
+    }
+
+    // Elimina els elements que ja no són visibles i posa a la cua del renderer els nous.
+    private void applyDiff(Set<Integer> visiblePoints, Map<Integer, MarkerOptions> newMarkers,
+                           Set<Integer> visibleShapes, Map<Integer, Object> newShapes, Map<Integer, String> newTags,
+                           Map<Integer, Integer> targetLevels) {
+        for (Iterator<Map.Entry<Integer, Marker>> it = markers.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<Integer, Marker> entry = it.next();
+            if (!visiblePoints.contains(entry.getKey())) {
+                entry.getValue().remove();
+                it.remove();
+            }
+        }
+        for (Iterator<Map.Entry<Integer, Polygon>> it = polygons.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<Integer, Polygon> entry = it.next();
+            if (!visibleShapes.contains(entry.getKey())) {
+                entry.getValue().remove();
+                it.remove();
+            }
+        }
+        for (Iterator<Map.Entry<Integer, Polyline>> it = polylines.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<Integer, Polyline> entry = it.next();
+            if (!visibleShapes.contains(entry.getKey())) {
+                entry.getValue().remove();
+                it.remove();
+            }
+        }
+        shapeLevels.keySet().retainAll(visibleShapes);
+
+        for (Map.Entry<Integer, MarkerOptions> entry : newMarkers.entrySet()) {
+            int id = entry.getKey();
+            MarkerOptions options = entry.getValue();
+            renderer.post(() -> {
+                if (!markers.containsKey(id)) {
+                    markers.put(id, map.addMarker(options));
+                }
+            });
+        }
+        for (Map.Entry<Integer, Object> entry : newShapes.entrySet()) {
+            int id = entry.getKey();
+            Object options = entry.getValue();
+            String tag = newTags.get(id);
+            Integer level = targetLevels.get(id);
+            renderer.post(() -> addShape(id, options, tag, level));
+        }
+    }
+
+    // Dibuixa una forma nova. Si mentrestant ja s'ha dibuixat (amb el resultat d'una càmera
+    // anterior), només se n'actualitzen els vèrtexs si el nivell de detall és diferent.
+    private void addShape(int id, Object options, String tag, Integer level) {
+        Polygon existingPolygon = polygons.get(id);
+        Polyline existingPolyline = polylines.get(id);
+        if (existingPolygon != null || existingPolyline != null) {
+            if (level != null && !level.equals(shapeLevels.get(id))) {
+                if (existingPolygon != null && options instanceof PolygonOptions) {
+                    existingPolygon.setPoints(((PolygonOptions) options).getPoints());
+                    shapeLevels.put(id, level);
+                } else if (existingPolyline != null && options instanceof PolylineOptions) {
+                    existingPolyline.setPoints(((PolylineOptions) options).getPoints());
+                    shapeLevels.put(id, level);
+                }
+            }
+            return;
+        }
+        if (options instanceof PolygonOptions) {
+            Polygon polygon = map.addPolygon((PolygonOptions) options);
+            polygon.setClickable(true);
+            polygon.setTag(tag);
+            polygons.put(id, polygon);
+        } else {
+            Polyline polyline = map.addPolyline((PolylineOptions) options);
+            polyline.setClickable(true);
+            polyline.setTag(tag);
+            polylines.put(id, polyline);
+        }
+        if (level != null) {
+            shapeLevels.put(id, level);
+        }
+    }
+
+    // Canvia els vèrtexs de les formes ja dibuixades i recorda el nivell de detall de cada forma.
+    private void applyLevels(Map<Integer, List<LatLng>> updatedShapes, Map<Integer, Integer> targetLevels) {
+        for (Map.Entry<Integer, List<LatLng>> entry : updatedShapes.entrySet()) {
+            int id = entry.getKey();
+            List<LatLng> points = entry.getValue();
+            Integer level = targetLevels.get(id);
+            renderer.post(() -> {
+                Polygon polygon = polygons.get(id);
+                Polyline polyline = polylines.get(id);
+                if (polygon != null) {
+                    polygon.setPoints(points);
+                } else if (polyline != null) {
+                    polyline.setPoints(points);
+                } else {
+                    return; // S'ha tret del mapa abans d'arribar-hi.
+                }
+                if (level != null) {
+                    shapeLevels.put(id, level);
+                }
+            });
+        }
+    }
+
+    /**
+     * Llegeix els vèrtexs amb què s'ha de dibuixar cada forma (en segon pla): el nivell de detall més
+     * proper a 'level' de les formes de 'lodIds' i, per a la resta o si no en tenen cap, la geometria completa.
+     */
+    private Map<Integer, Geometry> loadGeometries(List<SavedPolygonDao.ShapeSummary> shapes, List<Integer> lodIds,
+                                                  int level) {
+        Map<Integer, Geometry> geometries = new HashMap<>();
+        if (!lodIds.isEmpty()) {
+            for (PolygonLodEntity lod : lodDao.getLods(lodIds, level)) {
+                if (lod.geometry != null) {
+                    geometries.put(lod.polygonId, lod.geometry);
+                }
+            }
+        }
+        List<Integer> fullIds = new ArrayList<>();
+        for (SavedPolygonDao.ShapeSummary shape : shapes) {
+            if (!geometries.containsKey(shape.id)) {
+                fullIds.add(shape.id);
+            }
+        }
+        if (!fullIds.isEmpty()) {
+            for (SavedPolygonDao.ShapeGeometry shape : polygonDao.getGeometries(fullIds)) {
+                if (shape.geometry != null) {
+                    geometries.put(shape.id, shape.geometry);
+                }
+            }
+        }
+        return geometries;
+    }
+
+    // Prepara les opcions de dibuix d'un polígon o línia guardada (es pot fer fora del fil principal).
+    private static Object buildShapeOptions(SavedPolygonDao.ShapeSummary shape, List<LatLng> points) {
+        if ("poligon".equals(shape.tipus) && points.size() >= 3) {
+            return new PolygonOptions()
+                    .addAll(points)
+                    .strokeColor(Color.BLUE)
+                    .fillColor(Color.argb(70, 0, 0, 255));
+        } else if ("linia".equals(shape.tipus) && points.size() >= 2) {
+            return new PolylineOptions()
+                    .addAll(points)
+                    .color(Color.RED)
+                    .width(5);
+        }
+        return null;
+    }
+
+    // Text que es mostra en clicar una forma, amb el mateix format que la resta del mapa.
+    private static String describe(SavedPolygonDao.ShapeSummary shape) {
+        DecimalFormat df = new DecimalFormat("#.##");
+        if ("poligon".equals(shape.tipus)) {
+            return shape.name + " - Àrea: " + df.format(shape.area) + " m²";
+        }
+        return shape.name + " - Distància: " + df.format(shape.distancia) + " m";
+    }
+}
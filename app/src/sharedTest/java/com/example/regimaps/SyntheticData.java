@@ -0,0 +1,127 @@
+package com.example.regimaps;
+
+import java.util.Random;
+
+/**
+ * Generador de dades sintètiques reproduïbles per als bancs de proves (mòdul benchmark i proves
+ * instrumentades). Amb la mateixa llavor sempre genera les mateixes coordenades i noms, així que
+ * els resultats de dues execucions es poden comparar.
+ *
+ * Les coordenades són arrays plans [lat0, lng0, lat1, lng1, ...], com a la resta de l'aplicació,
+ * i cauen al voltant de Lleida per semblar-se a les dades reals.
+ */
+public final class SyntheticData {
+
+    // Llavor per defecte dels bancs de proves.
+    public static final long DEFAULT_SEED = 20240601L;
+
+    // Centre i mida de la zona on es generen les dades, en graus.
+    public static final double CENTER_LAT = 41.62;
+    public static final double CENTER_LNG = 0.62;
+    public static final double SPAN = 0.5;
+
+    private final Random random;
+
+    public SyntheticData() {
+        this(DEFAULT_SEED);
+    }
+
+    public SyntheticData(long seed) {
+        this.random = new Random(seed);
+    }
+
+    /**
+     * Anell de polígon simple (sense autointerseccions) amb 'vertices' vèrtexs al voltant del centre.
+     * Els vèrtexs van en ordre d'angle; el radi ondula suaument entre el 70% i el 100% de 'radius'
+     * amb un soroll petit, com una parcel·la digitalitzada, de manera que el perímetre no creix
+     * desmesuradament amb el nombre de vèrtexs.
+     */
+    public double[] ring(int vertices, double centerLat, double centerLng, double radius) {
+        double[] coords = new double[vertices * 2];
+        double lngScale = 1 / Math.cos(Math.toRadians(centerLat));
+        int lobes = 3 + random.nextInt(5);
+        double phase = random.nextDouble() * 2 * Math.PI;
+        for (int i = 0; i < vertices; i++) {
+            double angle = 2 * Math.PI * i / vertices;
+            double wave = 0.5 + 0.5 * Math.sin(lobes * angle + phase);
+            double r = radius * (0.72 + 0.26 * wave + 0.02 * random.nextDouble() / Math.sqrt(vertices));
+            coords[2 * i] = centerLat + r * Math.sin(angle);
+            coords[2 * i + 1] = centerLng + r * Math.cos(angle) * lngScale;
+        }
+        return coords;
+    }
+
+    // Anell de la mida donada en una posició aleatòria de la zona.
+    public double[] ring(int vertices, double radius) {
+        return ring(vertices, randomLat(), randomLng(), radius);
+    }
+
+    /**
+     * Línia amb 'vertices' vèrtexs: un passeig aleatori des d'un punt de la zona, amb passos
+     * de fins a 'step' graus, com un traç GPS.
+     */
+    public double[] walk(int vertices, double step) {
+        double[] coords = new double[vertices * 2];
+        double lat = randomLat();
+        double lng = randomLng();
+        double heading = random.nextDouble() * 2 * Math.PI;
+        for (int i = 0; i < vertices; i++) {
+            coords[2 * i] = lat;
+            coords[2 * i + 1] = lng;
+            heading += (random.nextDouble() - 0.5) * 0.6;
+            double distance = step * random.nextDouble();
+            lat += distance * Math.sin(heading);
+            lng += distance * Math.cos(heading);
+        }
+        return coords;
+    }
+
+    // 'count' punts repartits uniformement per la zona.
+    public double[] points(int count) {
+        double[] coords = new double[count * 2];
+        for (int i = 0; i < count; i++) {
+            coords[2 * i] = randomLat();
+            coords[2 * i + 1] = randomLng();
+        }
+        return coords;
+    }
+
+    // Nom d'element amb accents i caràcters que el KML ha d'escapar.
+    public String name(int index) {
+        switch (random.nextInt(4)) {
+            case 0:
+                return "Parcel·la " + index;
+            case 1:
+                return "Sèquia & rec " + index;
+            case 2:
+                return "Hidrant <" + index + ">";
+            default:
+                return "Punt " + index;
+        }
+    }
+
+    // Codi curt com els que es posen als punts.
+    public String code(int index) {
+        return "H-" + (index % 1000) + "-" + (char) ('A' + random.nextInt(26));
+    }
+
+    /**
+     * Escriu les coordenades en el format de text antic "lat,lng;lat,lng;..." que llegeix
+     * GeometryCodec.parseLegacyPoints.
+     */
+    public static String toLegacyPoints(double[] coords) {
+        StringBuilder text = new StringBuilder(coords.length * 10);
+        for (int i = 0; i + 1 < coords.length; i += 2) {
+            text.append(coords[i]).append(',').append(coords[i + 1]).append(';');
+        }
+        return text.toString();
+    }
+
+    private double randomLat() {
+        return CENTER_LAT + (random.nextDouble() - 0.5) * SPAN;
+    }
+
+    private double randomLng() {
+        return CENTER_LNG + (random.nextDouble() - 0.5) * SPAN;
+    }
+}
@@ -0,0 +1,29 @@
+package com.example.regimaps;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Proves locals de la conversió del text de cerca a una expressió MATCH.
+ */
+public class FtsQueryTest {
+
+    @Test
+    public void prefixMatch_makesEveryWordAPrefix() {
+        assertEquals("camp* d* en* roca*", FtsQuery.prefixMatch("Camp  d'en Roca"));
+        assertEquals("plaça*", FtsQuery.prefixMatch("Plaça"));
+    }
+
+    @Test
+    public void prefixMatch_dropsOperatorsAndQuotes() {
+        assertEquals("a* or* b*", FtsQuery.prefixMatch("\"A\" OR (b)*"));
+        assertEquals("a* 12*", FtsQuery.prefixMatch("A-12"));
+    }
+
+    @Test
+    public void prefixMatch_returnsNullWithoutWords() {
+        assertNull(FtsQuery.prefixMatch(null));
+        assertNull(FtsQuery.prefixMatch("  -*\" "));
+    }
+}
@@ -0,0 +1,44 @@
+package com.example.regimaps;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Proves locals de la codificació binària de geometries.
+ */
+public class GeometryCodecTest {
+
+    @Test
+    public void encodeDecode_roundTripsAtE7Precision() {
+        double[] coords = {41.1234567, 2.1234567, 41.1234999, 2.1230001, -33.5, -70.25, 89.9999999, -180.0};
+        double[] decoded = GeometryCodec.decode(GeometryCodec.encode(coords));
+        assertArrayEquals(coords, decoded, 1e-9);
+    }
+
+    @Test
+    public void encode_rejectsOutOfRangeAndNonFiniteCoordinates() {
+        double[][] invalid = {{1e300, 2}, {41, 180.0000001}, {-90.5, 0}, {Double.NaN, 2}, {41, Double.POSITIVE_INFINITY}};
+        for (double[] coords : invalid) {
+            try {
+                GeometryCodec.encode(coords);
+                fail("S'havia d'haver rebutjat " + coords[0] + "," + coords[1]);
+            } catch (IllegalArgumentException expected) {
+                // Correcte.
+            }
+        }
+    }
+
+    @Test
+    public void vertexCount_readsHeaderOnly() {
+        byte[] blob = GeometryCodec.encode(new double[]{1, 2, 3, 4, 5, 6});
+        assertEquals(3, GeometryCodec.vertexCount(blob));
+        assertEquals(0, GeometryCodec.vertexCount(null));
+    }
+
+    @Test
+    public void parseLegacyPoints_skipsMalformedFragments() {
+        double[] coords = GeometryCodec.parseLegacyPoints("41.1,2.2;bad;41.3,2.4;95,2;41.5,NaN;");
+        assertArrayEquals(new double[]{41.1, 2.2, 41.3, 2.4}, coords, 0);
+    }
+}
@@ -0,0 +1,50 @@
+package com.example.regimaps;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Proves locals de la simplificació per nivells de detall.
+ */
+public class GeometrySimplifierTest {
+
+    @Test
+    public void simplify_dropsCollinearVerticesAndKeepsEnds() {
+        double[] line = new double[200];
+        for (int i = 0; i < 100; i++) {
+            line[2 * i] = 41.0;
+            line[2 * i + 1] = 2.0 + i * 0.001;
+        }
+        double[] simplified = GeometrySimplifier.simplify(line, GeometrySimplifier.toleranceForZoom(15), false);
+        assertArrayEquals(new double[]{41.0, 2.0, 41.0, 2.0 + 99 * 0.001}, simplified, 1e-12);
+    }
+
+    @Test
+    public void buildLevels_coarserLevelsHaveFewerVertices() {
+        // Cercle de 2000 vèrtexs amb un radi d'uns 10 km.
+        int count = 2000;
+        double[] ring = new double[count * 2];
+        for (int i = 0; i < count; i++) {
+            double angle = 2 * Math.PI * i / count;
+            ring[2 * i] = 41.0 + 0.09 * Math.sin(angle);
+            ring[2 * i + 1] = 2.0 + 0.12 * Math.cos(angle);
+        }
+        double[][] levels = GeometrySimplifier.buildLevels(ring, true);
+        int previous = 0;
+        for (double[] level : levels) {
+            assertNotNull(level);
+            assertTrue(level.length / 2 >= 3);
+            assertTrue(level.length > previous);
+            previous = level.length;
+        }
+        assertTrue(previous < ring.length);
+    }
+
+    @Test
+    public void levelForZoom_usesFullDetailWhenZoomedIn() {
+        assertEquals(0, GeometrySimplifier.levelForZoom(5f));
+        assertEquals(1, GeometrySimplifier.levelForZoom(10.5f));
+        assertEquals(GeometrySimplifier.FULL_DETAIL, GeometrySimplifier.levelForZoom(18f));
+    }
+}
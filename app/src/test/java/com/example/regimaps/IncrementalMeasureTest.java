@@ -0,0 +1,62 @@
+package com.example.regimaps;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Proves locals de les mesures incrementals de la forma en edició.
+ */
+public class IncrementalMeasureTest {
+
+    @Test
+    public void square_matchesKnownAreaAndPerimeter() {
+        // Quadrat d'una centèsima de grau a l'equador: uns 1113 m de costat.
+        IncrementalMeasure measure = new IncrementalMeasure();
+        measure.addVertex(0, 0);
+        measure.addVertex(0, 0.01);
+        measure.addVertex(0.01, 0.01);
+        measure.addVertex(0.01, 0);
+        double side = Math.toRadians(0.01) * IncrementalMeasure.EARTH_RADIUS;
+        assertEquals(side * side, measure.getArea(), side * side * 1e-4);
+        assertEquals(4 * side, measure.getPerimeter(), 4 * side * 1e-4);
+        assertEquals(3 * side, measure.getLength(), 3 * side * 1e-4);
+    }
+
+    @Test
+    public void moveAndRemove_matchFreshMeasure() {
+        IncrementalMeasure edited = new IncrementalMeasure();
+        edited.addVertex(41.0, 2.0);
+        edited.addVertex(41.0, 2.1);
+        edited.addVertex(41.5, 2.3);
+        edited.addVertex(41.1, 2.05);
+        edited.addVertex(41.1, 2.0);
+        edited.moveVertex(2, 41.1, 2.1);
+        edited.removeVertex(3);
+
+        IncrementalMeasure fresh = new IncrementalMeasure();
+        fresh.addVertex(41.0, 2.0);
+        fresh.addVertex(41.0, 2.1);
+        fresh.addVertex(41.1, 2.1);
+        fresh.addVertex(41.1, 2.0);
+
+        assertEquals(4, edited.size());
+        assertEquals(fresh.getLength(), edited.getLength(), 1e-6);
+        assertEquals(fresh.getPerimeter(), edited.getPerimeter(), 1e-6);
+        assertEquals(fresh.getArea(), edited.getArea(), 1e-3);
+    }
+
+    @Test
+    public void removingAllVertices_resetsSums() {
+        IncrementalMeasure measure = new IncrementalMeasure();
+        measure.addVertex(41.0, 2.0);
+        measure.addVertex(41.0, 2.1);
+        measure.addVertex(41.1, 2.1);
+        measure.removeVertex(1);
+        measure.removeVertex(0);
+        measure.removeVertex(0);
+        assertEquals(0, measure.size());
+        assertEquals(0, measure.getLength(), 0);
+        assertEquals(0, measure.getArea(), 0);
+    }
+}
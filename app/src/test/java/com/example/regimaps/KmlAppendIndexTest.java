@@ -0,0 +1,184 @@
+package com.example.regimaps;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Proves locals de l'índex de placemarks dels fitxers KML exportats.
+ */
+public class KmlAppendIndexTest {
+
+    @Test
+    public void load_withoutSidecar_rebuildsTheSameHashesThatWereWritten() throws IOException {
+        File kml = tempKml();
+        List<Long> written = writeKml(kml, 0, 50);
+        KmlAppendIndex.sidecarFor(kml).delete();
+
+        KmlAppendIndex rebuilt = KmlAppendIndex.load(kml);
+        assertEquals(written.size(), rebuilt.size());
+        for (long hash : written) {
+            assertTrue(rebuilt.contains(hash));
+        }
+        // La reconstrucció es pot desar i tornar a llegir sense canvis.
+        rebuilt.save(kml.length());
+        KmlAppendIndex reloaded = KmlAppendIndex.load(kml);
+        assertEquals(written.size(), reloaded.size());
+        for (long hash : written) {
+            assertTrue(reloaded.contains(hash));
+        }
+    }
+
+    @Test
+    public void load_withValidSidecar_readsTheSavedHashes() throws IOException {
+        File kml = tempKml();
+        List<Long> written = writeKml(kml, 0, 20);
+
+        KmlAppendIndex index = KmlAppendIndex.load(kml);
+        assertEquals(written.size(), index.size());
+        for (long hash : written) {
+            assertTrue(index.contains(hash));
+        }
+        assertFalse(index.add(written.get(0)));
+    }
+
+    @Test
+    public void load_withStaleSidecar_rebuildsFromTheKml() throws IOException {
+        File kml = tempKml();
+        writeKml(kml, 0, 10);
+        // Una altra eina reescriu el KML amb altres placemarks i no toca el sidecar.
+        List<Long> current = new ArrayList<>();
+        try (Writer out = new OutputStreamWriter(new FileOutputStream(kml, false), StandardCharsets.UTF_8)) {
+            KmlWriter writer = new KmlWriter(out);
+            writer.writeHeader("Proves");
+            for (int i = 100; i < 115; i++) {
+                String text = placemark(i);
+                out.write(text);
+                current.add(KmlAppendIndex.hash(text));
+            }
+            writer.writeFooter();
+        }
+
+        KmlAppendIndex index = KmlAppendIndex.load(kml);
+        assertEquals(current.size(), index.size());
+        for (long hash : current) {
+            assertTrue(index.contains(hash));
+        }
+        assertFalse(index.contains(KmlAppendIndex.hash(placemark(0))));
+    }
+
+    @Test
+    public void load_withCorruptSidecar_rebuildsFromTheKml() throws IOException {
+        File kml = tempKml();
+        List<Long> written = writeKml(kml, 0, 5);
+        try (FileOutputStream out = new FileOutputStream(KmlAppendIndex.sidecarFor(kml), false)) {
+            out.write(new byte[]{1, 2, 3});
+        }
+
+        KmlAppendIndex index = KmlAppendIndex.load(kml);
+        assertEquals(written.size(), index.size());
+        for (long hash : written) {
+            assertTrue(index.contains(hash));
+        }
+    }
+
+    @Test
+    public void save_afterAppend_writesOnlyTheNewHashes() throws IOException {
+        File kml = tempKml();
+        writeKml(kml, 0, 10);
+        KmlAppendIndex index = KmlAppendIndex.load(kml);
+        long added = KmlAppendIndex.hash(placemark(10));
+        assertTrue(index.add(added));
+        index.save(kml.length());
+
+        assertEquals(16 + 11 * 8, KmlAppendIndex.sidecarFor(kml).length());
+        KmlAppendIndex reloaded = KmlAppendIndex.load(kml);
+        assertEquals(11, reloaded.size());
+        assertTrue(reloaded.contains(added));
+    }
+
+    @Test
+    public void findClosingTagOffset_findsATagSplitAcrossTheReadWindow() throws IOException {
+        // El bloc final són els últims 4096 bytes: l'etiqueta comença 5 bytes abans i hi acaba a dins.
+        int prefix = 10_000;
+        int suffix = 4096 + 5 - "</Document>".length();
+        File file = tempKml();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.write(repeat('a', prefix));
+            raf.write("</Document>".getBytes(StandardCharsets.US_ASCII));
+            raf.write(repeat(' ', suffix));
+
+            assertEquals(prefix, KmlAppendIndex.findClosingTagOffset(raf));
+        }
+    }
+
+    @Test
+    public void findClosingTagOffset_returnsTheLastTagOrMinusOne() throws IOException {
+        File file = tempKml();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.write(repeat(' ', 300));
+            assertEquals(-1, KmlAppendIndex.findClosingTagOffset(raf));
+
+            raf.write("</Document>".getBytes(StandardCharsets.US_ASCII));
+            raf.write(repeat(' ', 9000));
+            raf.write("</Document>\n</kml>\n".getBytes(StandardCharsets.US_ASCII));
+            assertEquals(300 + 11 + 9000, KmlAppendIndex.findClosingTagOffset(raf));
+        }
+    }
+
+    // Escriu un KML amb els placemarks [from, to) i desa el seu índex, com fa l'exportació.
+    private static List<Long> writeKml(File kml, int from, int to) throws IOException {
+        List<Long> hashes = new ArrayList<>();
+        KmlAppendIndex index = KmlAppendIndex.empty(kml);
+        try (Writer out = new OutputStreamWriter(new FileOutputStream(kml, false), StandardCharsets.UTF_8)) {
+            KmlWriter writer = new KmlWriter(out);
+            writer.writeHeader("Proves");
+            for (int i = from; i < to; i++) {
+                String text = placemark(i);
+                out.write(text);
+                long hash = KmlAppendIndex.hash(text);
+                index.add(hash);
+                hashes.add(hash);
+            }
+            writer.writeFooter();
+        }
+        index.save(kml.length());
+        return hashes;
+    }
+
+    private static String placemark(int i) throws IOException {
+        StringWriter text = new StringWriter();
+        KmlWriter writer = new KmlWriter(text);
+        if (i % 2 == 0) {
+            writer.writePoint("Punt " + i, "Descripció <" + i + ">", 41.0 + i * 0.001, 2.0 - i * 0.001);
+        } else {
+            writer.writeShape("Forma " + i, "", true, new double[]{41, 2, 41.01, 2, 41.01, 2.0 + i * 0.001});
+        }
+        return text.toString();
+    }
+
+    private static File tempKml() throws IOException {
+        File kml = File.createTempFile("export", ".kml");
+        kml.deleteOnExit();
+        KmlAppendIndex.sidecarFor(kml).deleteOnExit();
+        return kml;
+    }
+
+    private static byte[] repeat(char c, int count) {
+        byte[] bytes = new byte[count];
+        Arrays.fill(bytes, (byte) c);
+        return bytes;
+    }
+}
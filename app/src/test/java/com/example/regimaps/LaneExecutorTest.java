@@ -0,0 +1,74 @@
+package com.example.regimaps;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Proves locals dels carrils d'execució compartits.
+ */
+public class LaneExecutorTest {
+
+    @Test
+    public void serialExecutor_runsTasksInOrderOneAtATime() throws InterruptedException {
+        LaneExecutor lane = new LaneExecutor("test", 4, Thread::new);
+        Executor serial = lane.newSerialExecutor();
+        List<Integer> order = Collections.synchronizedList(new ArrayList<>());
+        int[] running = new int[1];
+        boolean[] overlapped = new boolean[1];
+        CountDownLatch done = new CountDownLatch(200);
+        for (int i = 0; i < 200; i++) {
+            int n = i;
+            serial.execute(() -> {
+                synchronized (running) {
+                    overlapped[0] |= ++running[0] > 1;
+                }
+                order.add(n);
+                synchronized (running) {
+                    running[0]--;
+                }
+                done.countDown();
+            });
+        }
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertFalse(overlapped[0]);
+        for (int i = 0; i < 200; i++) {
+            assertEquals(i, (int) order.get(i));
+        }
+    }
+
+    @Test
+    public void metrics_countQueuedTasksAndWaitTime() throws InterruptedException {
+        LaneExecutor lane = new LaneExecutor("test", 1, Thread::new);
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(3);
+        lane.execute(() -> {
+            running.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            done.countDown();
+        });
+        // Amb l'únic fil ocupat, les dues tasques següents han d'esperar a la cua.
+        assertTrue(running.await(10, TimeUnit.SECONDS));
+        lane.execute(done::countDown);
+        lane.execute(done::countDown);
+        assertEquals(2, lane.getQueueDepth());
+        release.countDown();
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertEquals(3, lane.getStartedCount());
+        assertEquals(0, lane.getQueueDepth());
+        assertTrue(lane.getMaxWaitMillis() > 0);
+        assertTrue(lane.getAverageWaitMillis() <= lane.getMaxWaitMillis());
+    }
+}
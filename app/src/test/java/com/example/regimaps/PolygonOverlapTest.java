@@ -0,0 +1,114 @@
+package com.example.regimaps;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Proves locals de la detecció de superposicions entre polígons.
+ */
+public class PolygonOverlapTest {
+
+    @Test
+    public void intersectionArea_halfOverlappingSquares() {
+        PolygonOverlap overlap = new PolygonOverlap();
+        PolygonOverlap.Shape a = new PolygonOverlap.Shape(1, rect(41.600, 0.600, 41.601, 0.601));
+        PolygonOverlap.Shape b = new PolygonOverlap.Shape(2, rect(41.600, 0.6005, 41.601, 0.6015));
+        double expected = area(rect(41.600, 0.6005, 41.601, 0.601));
+        assertEquals(expected, overlap.intersectionArea(a, b), expected * 1e-6);
+        assertEquals(expected, overlap.intersectionArea(b, a), expected * 1e-6);
+    }
+
+    @Test
+    public void intersectionArea_concaveClipPolygon() {
+        // U de 8 vèrtexs dins d'un quadrat amb els costats subdividits (més vèrtexs), de manera
+        // que la U és la que es triangula.
+        double[] u = {41.600, 0.600, 41.600, 0.601, 41.601, 0.601, 41.601, 0.6007,
+                41.6005, 0.6007, 41.6005, 0.6003, 41.601, 0.6003, 41.601, 0.600};
+        double[] square = subdivide(rect(41.5999, 0.5999, 41.6011, 0.6011), 10);
+        double area = PolygonOverlap.computeIntersectionArea(
+                new PolygonOverlap.Shape(1, u), new PolygonOverlap.Shape(2, square));
+        assertEquals(area(u), area, area(u) * 1e-6);
+
+        // Un quadrat dins del forat de la U no la toca.
+        double[] hole = rect(41.6006, 0.6004, 41.6009, 0.6006);
+        assertEquals(0, PolygonOverlap.computeIntersectionArea(
+                new PolygonOverlap.Shape(1, u), new PolygonOverlap.Shape(2, subdivide(hole, 5))), 1e-9);
+    }
+
+    @Test
+    public void findOverlaps_ignoresNeighboursSharingAnEdge() {
+        List<PolygonOverlap.Shape> shapes = grid(10);
+        // Una parcel·la que trepitja les de id 1 i 2.
+        shapes.add(new PolygonOverlap.Shape(1000, rect(41.6000, 0.6005, 41.6010, 0.6015)));
+        List<PolygonOverlap.Overlap> overlaps = new PolygonOverlap().findOverlaps(shapes);
+        assertEquals(2, overlaps.size());
+        assertEquals(1, overlaps.get(0).idA);
+        assertEquals(1000, overlaps.get(0).idB);
+        assertEquals(2, overlaps.get(1).idA);
+        assertEquals(1000, overlaps.get(1).idB);
+    }
+
+    @Test
+    public void findOverlaps_recomputesOnlyChangedPairs() {
+        PolygonOverlap overlap = new PolygonOverlap();
+        List<PolygonOverlap.Shape> shapes = grid(10);
+        overlap.findOverlaps(shapes);
+        long first = overlap.getClippedPairs();
+        assertTrue(first > 0);
+
+        overlap.findOverlaps(shapes);
+        assertEquals(first, overlap.getClippedPairs());
+
+        // S'eixampla la parcel·la 45 (fila 4, columna 4): només es recalculen les seves parelles.
+        PolygonOverlap.Shape old = shapes.get(44);
+        shapes.set(44, new PolygonOverlap.Shape(old.id, rect(41.6040, 0.6040, 41.6052, 0.6052)));
+        List<PolygonOverlap.Overlap> overlaps = overlap.findOverlaps(shapes);
+        long recomputed = overlap.getClippedPairs() - first;
+        assertTrue(recomputed > 0 && recomputed <= 8 + 4);
+        assertEquals(3, overlaps.size());
+    }
+
+    // Quadrícula de n x n parcel·les contigües de 0,001 graus, amb ids 1..n*n.
+    private static List<PolygonOverlap.Shape> grid(int n) {
+        List<PolygonOverlap.Shape> shapes = new ArrayList<>();
+        for (int row = 0; row < n; row++) {
+            for (int col = 0; col < n; col++) {
+                double lat = 41.600 + row * 0.001;
+                double lng = 0.600 + col * 0.001;
+                shapes.add(new PolygonOverlap.Shape(row * n + col + 1, rect(lat, lng, lat + 0.001, lng + 0.001)));
+            }
+        }
+        return shapes;
+    }
+
+    private static double[] rect(double minLat, double minLng, double maxLat, double maxLng) {
+        return new double[]{minLat, minLng, minLat, maxLng, maxLat, maxLng, maxLat, minLng};
+    }
+
+    // Afegeix 'parts' - 1 vèrtexs a cada costat de l'anell.
+    private static double[] subdivide(double[] ring, int parts) {
+        int n = ring.length / 2;
+        double[] out = new double[n * parts * 2];
+        for (int i = 0; i < n; i++) {
+            int j = (i + 1) % n;
+            for (int k = 0; k < parts; k++) {
+                double t = (double) k / parts;
+                out[2 * (i * parts + k)] = ring[2 * i] + t * (ring[2 * j] - ring[2 * i]);
+                out[2 * (i * parts + k) + 1] = ring[2 * i + 1] + t * (ring[2 * j + 1] - ring[2 * i + 1]);
+            }
+        }
+        return out;
+    }
+
+    private static double area(double[] ring) {
+        IncrementalMeasure measure = new IncrementalMeasure();
+        for (int i = 0; i < ring.length; i += 2) {
+            measure.addVertex(ring[i], ring[i + 1]);
+        }
+        return measure.getArea();
+    }
+}
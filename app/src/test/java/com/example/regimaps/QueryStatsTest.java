@@ -0,0 +1,92 @@
+package com.example.regimaps;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Proves locals de les estadístiques de consultes.
+ */
+public class QueryStatsTest {
+
+    private static final long MS = 1_000_000L;
+
+    @Test
+    public void bucketOf_usesUpperExclusiveLimits() {
+        assertEquals(0, QueryStats.bucketOf(0));
+        assertEquals(0, QueryStats.bucketOf(MS - 1));
+        assertEquals(1, QueryStats.bucketOf(MS));
+        assertEquals(2, QueryStats.bucketOf(3 * MS));
+        assertEquals(QueryStats.BUCKET_LIMITS_MILLIS.length, QueryStats.bucketOf(5000 * MS));
+    }
+
+    @Test
+    public void record_accumulatesPerStatement() {
+        QueryStats stats = new QueryStats();
+        stats.record("SELECT 1", 2 * MS, 1, 8);
+        stats.record("SELECT 1", 4 * MS, 3, 24);
+        stats.record("SELECT 2", 10 * MS, 0, 0);
+
+        List<QueryStats.Entry> entries = stats.getEntries();
+        assertEquals(2, entries.size());
+        QueryStats.Entry first = entries.get(0);
+        assertEquals("SELECT 2", first.sql);
+        QueryStats.Entry second = entries.get(1);
+        assertEquals(2, second.count);
+        assertEquals(6 * MS, second.totalNanos);
+        assertEquals(4 * MS, second.maxNanos);
+        assertEquals(4, second.rows);
+        assertEquals(32, second.bytes);
+    }
+
+    @Test
+    public void percentile_returnsBucketUpperLimit() {
+        QueryStats stats = new QueryStats();
+        for (int i = 0; i < 90; i++) {
+            stats.record("q", MS / 2, 0, 0);
+        }
+        for (int i = 0; i < 10; i++) {
+            stats.record("q", 20 * MS, 0, 0);
+        }
+        QueryStats.Entry entry = stats.getEntries().get(0);
+        assertEquals(1, entry.percentileMillis(0.5), 0);
+        assertEquals(32, entry.percentileMillis(0.95), 0);
+    }
+
+    @Test
+    public void slowLog_keepsOnlyTheLatestQueries() {
+        QueryStats stats = new QueryStats(50, 3);
+        stats.record("fast", 10 * MS, 0, 0);
+        for (int i = 0; i < 5; i++) {
+            stats.record("slow " + i, 60 * MS, 0, 0);
+        }
+        assertEquals(5, stats.getSlowQueryCount());
+        List<QueryStats.SlowQuery> slow = stats.getSlowQueries();
+        assertEquals(3, slow.size());
+        assertEquals("slow 2", slow.get(0).sql);
+        assertEquals("slow 4", slow.get(2).sql);
+
+        stats.reset();
+        assertTrue(stats.getSlowQueries().isEmpty());
+        assertTrue(stats.getEntries().isEmpty());
+    }
+
+    @Test
+    public void record_groupsStatementsBeyondTheLimit() {
+        QueryStats stats = new QueryStats();
+        for (int i = 0; i < QueryStats.MAX_QUERIES + 10; i++) {
+            stats.record("SELECT " + i, MS, 0, 0);
+        }
+        List<QueryStats.Entry> entries = stats.getEntries();
+        assertEquals(QueryStats.MAX_QUERIES + 1, entries.size());
+        long others = 0;
+        for (QueryStats.Entry entry : entries) {
+            if (QueryStats.OTHER_QUERIES.equals(entry.sql)) {
+                others = entry.count;
+            }
+        }
+        assertEquals(10, others);
+    }
+}
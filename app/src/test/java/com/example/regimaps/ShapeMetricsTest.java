@@ -0,0 +1,47 @@
+package com.example.regimaps;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Proves locals de les mesures precalculades de línies i polígons.
+ */
+public class ShapeMetricsTest {
+
+    @Test
+    public void square_hasBoundsCentroidAndPerimeter() {
+        double[] square = {41.0, 2.0, 41.0, 2.02, 41.02, 2.02, 41.02, 2.0};
+        ShapeMetrics metrics = ShapeMetrics.of(square, true);
+        assertEquals(41.0, metrics.minLat, 0);
+        assertEquals(41.02, metrics.maxLat, 0);
+        assertEquals(2.0, metrics.minLng, 0);
+        assertEquals(2.02, metrics.maxLng, 0);
+        assertEquals(41.01, metrics.centroidLat, 1e-9);
+        assertEquals(2.01, metrics.centroidLng, 1e-9);
+        assertEquals(4, metrics.vertexCount);
+
+        IncrementalMeasure measure = new IncrementalMeasure();
+        for (int i = 0; i < square.length; i += 2) {
+            measure.addVertex(square[i], square[i + 1]);
+        }
+        assertEquals(measure.getPerimeter(), metrics.perimeter, 1e-6);
+    }
+
+    @Test
+    public void line_usesLengthAndLengthWeightedCentroid() {
+        // Dos trams: un de 0.02 graus i un de 0 graus (vèrtex repetit), que no ha de comptar.
+        double[] line = {0.0, 0.0, 0.0, 0.02, 0.0, 0.02};
+        ShapeMetrics metrics = ShapeMetrics.of(line, false);
+        assertEquals(0.01, metrics.centroidLng, 1e-12);
+        assertEquals(Math.toRadians(0.02) * IncrementalMeasure.EARTH_RADIUS, metrics.perimeter, 1e-3);
+        assertEquals(3, metrics.vertexCount);
+    }
+
+    @Test
+    public void emptyGeometry_hasNoVertices() {
+        ShapeMetrics metrics = ShapeMetrics.of(new double[0], true);
+        assertEquals(0, metrics.vertexCount);
+        assertEquals(0, metrics.perimeter, 0);
+    }
+}
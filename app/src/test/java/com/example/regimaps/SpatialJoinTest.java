@@ -0,0 +1,105 @@
+package com.example.regimaps;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.*;
+
+/**
+ * Proves locals de la unió espacial entre punts i polígons.
+ */
+public class SpatialJoinTest {
+
+    // Quadrat de 41.0 a 42.0 de latitud i de 1.0 a 2.0 de longitud.
+    private static final double[] SQUARE = {41.0, 1.0, 41.0, 2.0, 42.0, 2.0, 42.0, 1.0};
+
+    @Test
+    public void contains_square() {
+        assertTrue(SpatialJoin.contains(SQUARE, 41.5, 1.5));
+        assertFalse(SpatialJoin.contains(SQUARE, 42.5, 1.5));
+        assertFalse(SpatialJoin.contains(SQUARE, 41.5, 0.5));
+    }
+
+    @Test
+    public void contains_concavePolygon() {
+        // Forma de U: el forat del mig (41.5-42.0, 1.3-1.7) queda fora.
+        double[] u = {41.0, 1.0, 41.0, 2.0, 42.0, 2.0, 42.0, 1.7, 41.5, 1.7, 41.5, 1.3, 42.0, 1.3, 42.0, 1.0};
+        assertTrue(SpatialJoin.contains(u, 41.2, 1.5));
+        assertTrue(SpatialJoin.contains(u, 41.8, 1.1));
+        assertFalse(SpatialJoin.contains(u, 41.8, 1.5));
+    }
+
+    @Test
+    public void pointsIn_matchesBruteForce() {
+        SyntheticData data = new SyntheticData(7);
+        double[] coords = data.points(20_000);
+        int[] ids = new int[coords.length / 2];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = i + 1;
+        }
+        SpatialJoin join = new SpatialJoin(coords, ids);
+        for (int k = 0; k < 20; k++) {
+            double[] ring = data.ring(50, 0.03);
+            int[] found = join.pointsIn(ring);
+            Arrays.sort(found);
+            assertArrayEquals(bruteForce(coords, ids, ring), found);
+        }
+    }
+
+    @Test
+    public void pointsIn_degenerateInput() {
+        SpatialJoin empty = new SpatialJoin(new double[0], new int[0]);
+        assertEquals(0, empty.pointsIn(SQUARE).length);
+
+        // Tots els punts a la mateixa latitud: la graella no pot tenir cel·les de 0 graus.
+        SpatialJoin line = new SpatialJoin(new double[]{41.5, 1.2, 41.5, 1.8, 41.5, 2.5}, new int[]{1, 2, 3});
+        int[] found = line.pointsIn(SQUARE);
+        Arrays.sort(found);
+        assertArrayEquals(new int[]{1, 2}, found);
+        assertEquals(0, line.pointsIn(new double[]{41.0, 1.0, 42.0, 2.0}).length);
+    }
+
+    @Test
+    public void joinAll_parallelMatchesSequential() throws InterruptedException {
+        SyntheticData data = new SyntheticData(11);
+        double[] coords = data.points(50_000);
+        int[] ids = new int[coords.length / 2];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = i;
+        }
+        SpatialJoin join = new SpatialJoin(coords, ids);
+        List<double[]> rings = new ArrayList<>();
+        for (int k = 0; k < 300; k++) {
+            rings.add(data.ring(20, 0.01));
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            int[][] parallel = join.joinAll(rings, executor, 4);
+            assertEquals(rings.size(), parallel.length);
+            for (int k = 0; k < rings.size(); k++) {
+                assertArrayEquals(join.pointsIn(rings.get(k)), parallel[k]);
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static int[] bruteForce(double[] coords, int[] ids, double[] ring) {
+        int[] inside = new int[ids.length];
+        int size = 0;
+        for (int i = 0; i < ids.length; i++) {
+            if (SpatialJoin.contains(ring, coords[2 * i], coords[2 * i + 1])) {
+                inside[size++] = ids[i];
+            }
+        }
+        int[] result = Arrays.copyOf(inside, size);
+        Arrays.sort(result);
+        return result;
+    }
+}
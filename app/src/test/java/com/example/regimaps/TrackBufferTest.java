@@ -0,0 +1,47 @@
+package com.example.regimaps;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Proves locals de la memòria circular de posicions dels traços.
+ */
+public class TrackBufferTest {
+
+    @Test
+    public void drainTo_returnsPositionsInOrderAcrossTheWrap() {
+        TrackBuffer buffer = new TrackBuffer(8);
+        TrackBuffer.Batch batch = new TrackBuffer.Batch(5);
+        for (int i = 0; i < 6; i++) {
+            buffer.add(i, -i, i, 1f);
+        }
+        assertEquals(5, buffer.drainTo(batch));
+        for (int i = 6; i < 12; i++) {
+            buffer.add(i, -i, i, 1f);
+        }
+        assertEquals(7, buffer.size());
+        assertEquals(5, buffer.drainTo(batch));
+        for (int i = 0; i < 5; i++) {
+            assertEquals(5 + i, batch.lats[i], 0);
+            assertEquals(-(5 + i), batch.lngs[i], 0);
+            assertEquals(5 + i, batch.times[i]);
+        }
+        assertEquals(2, buffer.drainTo(batch));
+        assertEquals(0, buffer.drainTo(batch));
+    }
+
+    @Test
+    public void add_dropsOldestWhenFull() {
+        TrackBuffer buffer = new TrackBuffer(4);
+        for (int i = 0; i < 6; i++) {
+            buffer.add(i, i, i, 1f);
+        }
+        assertEquals(4, buffer.size());
+        assertEquals(2, buffer.getDropped());
+        TrackBuffer.Batch batch = new TrackBuffer.Batch(8);
+        assertEquals(4, buffer.drainTo(batch));
+        assertEquals(2, batch.times[0]);
+        assertEquals(5, batch.times[3]);
+    }
+}
@@ -0,0 +1,50 @@
+package com.example.regimaps;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lectura del format de text antic "lat,lng;" i codificació binària de les geometries.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class GeometryCodecBenchmark {
+
+    @Param({"1000", "100000"})
+    public int vertices;
+
+    private double[] coords;
+    private String legacyText;
+    private byte[] blob;
+
+    @Setup
+    public void setUp() {
+        coords = new SyntheticData().ring(vertices, 0.01);
+        legacyText = SyntheticData.toLegacyPoints(coords);
+        blob = GeometryCodec.encode(coords);
+    }
+
+    @Benchmark
+    public double[] parseLegacyPoints() {
+        return GeometryCodec.parseLegacyPoints(legacyText);
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        return GeometryCodec.encode(coords);
+    }
+
+    @Benchmark
+    public double[] decode() {
+        return GeometryCodec.decode(blob);
+    }
+}
@@ -0,0 +1,82 @@
+package com.example.regimaps;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Generació d'un document KML sencer, amb la mateixa barreja que una exportació real:
+ * quatre punts per cada polígon o línia. La sortida es descarta per mesurar només el KmlWriter.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class KmlWriterBenchmark {
+
+    // Vèrtexs de cada polígon o línia.
+    private static final int SHAPE_VERTICES = 40;
+
+    @Param({"10000", "100000"})
+    public int placemarks;
+
+    private String[] names;
+    private double[] pointCoords;
+    private double[][] shapes;
+
+    @Setup
+    public void setUp() {
+        SyntheticData data = new SyntheticData();
+        names = new String[placemarks];
+        for (int i = 0; i < placemarks; i++) {
+            names[i] = data.name(i);
+        }
+        pointCoords = data.points(placemarks);
+        shapes = new double[placemarks / 5 + 1][];
+        for (int i = 0; i < shapes.length; i++) {
+            shapes[i] = i % 2 == 0 ? data.ring(SHAPE_VERTICES, 0.002) : data.walk(SHAPE_VERTICES, 0.0005);
+        }
+    }
+
+    @Benchmark
+    public long writeDocument() throws IOException {
+        CountingWriter sink = new CountingWriter();
+        try (KmlWriter writer = new KmlWriter(new BufferedWriter(sink, 64 * 1024))) {
+            writer.writeHeader("Banc de proves");
+            for (int i = 0; i < placemarks; i++) {
+                if (i % 5 == 4) {
+                    writer.writeShape(names[i], "Descripció " + i, i % 2 == 0, shapes[i / 5]);
+                } else {
+                    writer.writePoint(names[i], "Descripció " + i, pointCoords[2 * i], pointCoords[2 * i + 1]);
+                }
+            }
+            writer.writeFooter();
+        }
+        return sink.count;
+    }
+
+    // Writer que només compta els caràcters, perquè el disc no afecti la mesura.
+    private static final class CountingWriter extends Writer {
+        long count;
+
+        @Override
+        public void write(char[] buffer, int offset, int length) {
+            count += length;
+        }
+
+        @Override
+        public void flush() {}
+
+        @Override
+        public void close() {}
+    }
+}
@@ -0,0 +1,64 @@
+package com.example.regimaps;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Càlculs de mesura sobre anells i línies grans: àrea i longitud geodèsiques (les mateixes
+ * fórmules que SphericalUtil, vegeu IncrementalMeasure), mesures precalculades i nivells de detall.
+ * SphericalUtil depèn d'Android; el seu banc de proves és a les proves instrumentades de l'app.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MeasureBenchmark {
+
+    @Param({"10000", "100000"})
+    public int vertices;
+
+    private double[] ring;
+    private double[] line;
+
+    @Setup
+    public void setUp() {
+        SyntheticData data = new SyntheticData();
+        ring = data.ring(vertices, 0.05);
+        line = data.walk(vertices, 0.0002);
+    }
+
+    @Benchmark
+    public double ringArea() {
+        IncrementalMeasure measure = new IncrementalMeasure();
+        for (int i = 0; i < ring.length; i += 2) {
+            measure.addVertex(ring[i], ring[i + 1]);
+        }
+        return measure.getArea();
+    }
+
+    @Benchmark
+    public double lineLength() {
+        IncrementalMeasure measure = new IncrementalMeasure();
+        for (int i = 0; i < line.length; i += 2) {
+            measure.addVertex(line[i], line[i + 1]);
+        }
+        return measure.getLength();
+    }
+
+    @Benchmark
+    public ShapeMetrics shapeMetrics() {
+        return ShapeMetrics.of(ring, true);
+    }
+
+    @Benchmark
+    public double[][] simplifierLevels() {
+        return GeometrySimplifier.buildLevels(ring, true);
+    }
+}
@@ -0,0 +1,76 @@
+package com.example.regimaps;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Unió espacial de 200.000 punts amb 5.000 parcel·les (quants punts de mostreig hi ha a cada
+ * parcel·la): construcció de la graella i prova de tots els polígons, amb un fil o amb tots els
+ * nuclis. La lectura de la base de dades no hi entra.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class SpatialJoinBenchmark {
+
+    @Param({"200000"})
+    public int points;
+
+    @Param({"5000"})
+    public int parcels;
+
+    private double[] coords;
+    private int[] ids;
+    private List<double[]> rings;
+    private ExecutorService executor;
+    private int threads;
+
+    @Setup
+    public void setUp() {
+        SyntheticData data = new SyntheticData();
+        coords = data.points(points);
+        ids = new int[points];
+        for (int i = 0; i < points; i++) {
+            ids[i] = i + 1;
+        }
+        rings = new ArrayList<>(parcels);
+        for (int i = 0; i < parcels; i++) {
+            rings.add(data.ring(40, 0.004));
+        }
+        threads = Runtime.getRuntime().availableProcessors();
+        executor = Executors.newFixedThreadPool(threads);
+    }
+
+    @TearDown
+    public void tearDown() {
+        executor.shutdown();
+    }
+
+    @Benchmark
+    public SpatialJoin buildGrid() {
+        return new SpatialJoin(coords, ids);
+    }
+
+    @Benchmark
+    public int[][] joinSingleThread() throws InterruptedException {
+        return new SpatialJoin(coords, ids).joinAll(rings, Runnable::run, 1);
+    }
+
+    @Benchmark
+    public int[][] joinAllCores() throws InterruptedException {
+        return new SpatialJoin(coords, ids).joinAll(rings, executor, threads);
+    }
+}
@@ -0,0 +1,63 @@
+package com.example.regimaps.macrobenchmark;
+
+import androidx.benchmark.macro.MacrobenchmarkScope;
+import androidx.test.uiautomator.By;
+import androidx.test.uiautomator.UiDevice;
+import androidx.test.uiautomator.Until;
+
+/**
+ * Recorreguts de la interfície compartits pels macrobenchmarks i pel generador del perfil de
+ * referència: des del menú principal cap al mapa i cap a les llistes.
+ */
+final class AppFlows {
+
+    static final String PACKAGE = "com.example.regimaps";
+
+    // Seccions de traça de l'app (vegeu StartupTrace al mòdul app).
+    static final String MAP_LOADED = "RegiMaps:mapLoaded";
+    static final String LIST_FIRST_ITEM = "RegiMaps:listFirstItem";
+
+    // Espera màxima perquè aparegui una pantalla, en mil·lisegons.
+    private static final long TIMEOUT = 10_000;
+
+    private AppFlows() {}
+
+    // Arrenca l'app des de la pantalla d'inici i espera el menú principal.
+    static void startMenu(MacrobenchmarkScope scope) {
+        scope.pressHome();
+        scope.startActivityAndWait();
+        scope.getDevice().wait(Until.hasObject(By.res(PACKAGE, "btn_go_to_map")), TIMEOUT);
+    }
+
+    // Obre el mapa amb tots els elements i espera que s'hagi pintat.
+    static void openMap(MacrobenchmarkScope scope) {
+        UiDevice device = scope.getDevice();
+        device.findObject(By.res(PACKAGE, "btn_go_to_map")).click();
+        device.wait(Until.hasObject(By.res(PACKAGE, "btn_tornar_menu")), TIMEOUT);
+        device.waitForIdle(TIMEOUT);
+    }
+
+    // Obre la llista de punts i espera que mostri contingut.
+    static void openPointsList(MacrobenchmarkScope scope) {
+        openList(scope, "btn_view_saved_points", "savedPointsList");
+    }
+
+    // Obre la llista de polígons i espera que mostri contingut.
+    static void openPolygonsList(MacrobenchmarkScope scope) {
+        openList(scope, "btn_view_polygons", "polygonsList");
+    }
+
+    // Torna al menú principal.
+    static void back(MacrobenchmarkScope scope) {
+        UiDevice device = scope.getDevice();
+        device.pressBack();
+        device.wait(Until.hasObject(By.res(PACKAGE, "btn_go_to_map")), TIMEOUT);
+    }
+
+    private static void openList(MacrobenchmarkScope scope, String buttonId, String listId) {
+        UiDevice device = scope.getDevice();
+        device.findObject(By.res(PACKAGE, buttonId)).click();
+        device.wait(Until.hasObject(By.res(PACKAGE, listId)), TIMEOUT);
+        device.waitForIdle(TIMEOUT);
+    }
+}
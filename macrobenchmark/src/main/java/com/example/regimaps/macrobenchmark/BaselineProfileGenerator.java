@@ -0,0 +1,40 @@
+package com.example.regimaps.macrobenchmark;
+
+import androidx.benchmark.macro.junit4.BaselineProfileRule;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import kotlin.Unit;
+
+/**
+ * Genera el perfil de referència recorrent l'arrencada i els fluxos principals. Cal un dispositiu
+ * amb Android 13 o superior (o amb root). El fitxer resultant es copia a
+ * app/src/main/baseline-prof.txt.
+ */
+@RunWith(AndroidJUnit4.class)
+public class BaselineProfileGenerator {
+
+    @Rule
+    public BaselineProfileRule baselineProfileRule = new BaselineProfileRule();
+
+    @Test
+    public void startupAndMainFlows() {
+        baselineProfileRule.collect(AppFlows.PACKAGE,
+                /* maxIterations */ 15, /* stableIterations */ 3, /* outputFilePrefix */ null,
+                /* includeInStartupProfile */ true, /* strictStability */ false,
+                name -> true,
+                scope -> {
+                    AppFlows.startMenu(scope);
+                    AppFlows.openPointsList(scope);
+                    AppFlows.back(scope);
+                    AppFlows.openPolygonsList(scope);
+                    AppFlows.back(scope);
+                    AppFlows.openMap(scope);
+                    AppFlows.back(scope);
+                    return Unit.INSTANCE;
+                });
+    }
+}
@@ -0,0 +1,97 @@
+package com.example.regimaps.macrobenchmark;
+
+import androidx.benchmark.macro.CompilationMode;
+import androidx.benchmark.macro.FrameTimingMetric;
+import androidx.benchmark.macro.Metric;
+import androidx.benchmark.macro.StartupMode;
+import androidx.benchmark.macro.StartupTimingMetric;
+import androidx.benchmark.macro.TraceSectionMetric;
+import androidx.benchmark.macro.junit4.MacrobenchmarkRule;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import kotlin.Unit;
+
+/**
+ * Temps fins al primer fotograma de l'arrencada i fins al primer contingut útil del mapa i de
+ * les llistes. Es compila amb el perfil de referència de l'app (CompilationMode.DEFAULT), igual
+ * que quan s'instal·la des de Play.
+ */
+@RunWith(AndroidJUnit4.class)
+public class StartupBenchmark {
+
+    private static final int ITERATIONS = 10;
+
+    @Rule
+    public MacrobenchmarkRule benchmarkRule = new MacrobenchmarkRule();
+
+    // Arrencada en fred fins al primer fotograma del menú principal.
+    @Test
+    public void coldStartMenu() {
+        benchmarkRule.measureRepeated(AppFlows.PACKAGE,
+                Collections.<Metric>singletonList(new StartupTimingMetric()),
+                CompilationMode.DEFAULT, StartupMode.COLD, ITERATIONS,
+                scope -> {
+                    scope.pressHome();
+                    return Unit.INSTANCE;
+                },
+                scope -> {
+                    scope.startActivityAndWait();
+                    return Unit.INSTANCE;
+                });
+    }
+
+    // Menú -> mapa amb tots els elements: temps fins que el mapa s'ha pintat i fotogrames perduts.
+    @Test
+    public void openMap() {
+        List<Metric> metrics = Arrays.asList(new TraceSectionMetric(AppFlows.MAP_LOADED), new FrameTimingMetric());
+        benchmarkRule.measureRepeated(AppFlows.PACKAGE, metrics, CompilationMode.DEFAULT, StartupMode.COLD, ITERATIONS,
+                scope -> {
+                    AppFlows.startMenu(scope);
+                    return Unit.INSTANCE;
+                },
+                scope -> {
+                    AppFlows.openMap(scope);
+                    return Unit.INSTANCE;
+                });
+    }
+
+    // Menú -> llista de punts: temps fins al primer element.
+    @Test
+    public void openPointsList() {
+        benchmarkRule.measureRepeated(AppFlows.PACKAGE,
+                Collections.<Metric>singletonList(new TraceSectionMetric(AppFlows.LIST_FIRST_ITEM)),
+                CompilationMode.DEFAULT, StartupMode.COLD, ITERATIONS,
+                scope -> {
+                    AppFlows.startMenu(scope);
+                    return Unit.INSTANCE;
+                },
+                scope -> {
+                    AppFlows.openPointsList(scope);
+                    return Unit.INSTANCE;
+                });
+    }
+
+    // Menú -> llista de polígons: temps fins al primer element.
+    @Test
+    public void openPolygonsList() {
+        benchmarkRule.measureRepeated(AppFlows.PACKAGE,
+                Collections.<Metric>singletonList(new TraceSectionMetric(AppFlows.LIST_FIRST_ITEM)),
+                CompilationMode.DEFAULT, StartupMode.COLD, ITERATIONS,
+                scope -> {
+                    AppFlows.startMenu(scope);
+                    return Unit.INSTANCE;
+                },
+                scope -> {
+                    AppFlows.openPolygonsList(scope);
+                    return Unit.INSTANCE;
+                });
+    }
+}